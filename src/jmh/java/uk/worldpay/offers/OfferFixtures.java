@@ -0,0 +1,135 @@
+package uk.worldpay.offers;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.ItemLocks;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class OfferFixtures
+ *
+ * Deterministic offers and repository stub shared by the benchmarks
+ *
+ * @author laurinf
+ *
+ */
+public final class OfferFixtures {
+
+    public static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * the origin of the dates: midnight (UTC) of the day of the run. It is not a constant epoch because the benchmarks
+     * need offers running, starting and ending around the current instant, as the service computes statuses and
+     * answers current lookups from the clock. Within a day every run uses the same data; across days the data is
+     * shifted as a whole, so the offers stay in the same positions relative to the current instant.
+     */
+    public static final long ORIGIN = System.currentTimeMillis() / DAY * DAY;
+
+    private OfferFixtures() {
+    }
+
+    public static Offer offer(long id, long itemId, long startDay, long endDay) {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(itemId);
+        offer.setDescription("Last units opportunity. Half Price!!!");
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(ORIGIN + startDay * DAY));
+        offer.setEndDate(new Date(ORIGIN + endDay * DAY));
+        return offer;
+    }
+
+    /**
+     * @return size running offers of the item, one day long, separated by one free day, the first one starting today
+     */
+    public static List<Offer> history(long itemId, int size) {
+        List<Offer> offers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            offers.add(offer(i + 1, itemId, 2L * i, 2L * i + 1));
+        }
+        return offers;
+    }
+
+    /**
+     * @return size offers of random items, spread over the past and future, in every status
+     */
+    public static List<Offer> catalogue(int size, long seed) {
+        Random random = new Random(seed);
+        Offer.Status[] statuses = Offer.Status.values();
+        List<Offer> offers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long start = random.nextInt(60) - 30;
+            Offer offer = offer(i + 1, random.nextInt(1000), start, start + 1 + random.nextInt(10));
+            offer.setStatus(statuses[random.nextInt(statuses.length)]);
+            offers.add(offer);
+        }
+        return offers;
+    }
+
+    /**
+     * @return an OfferRepository stub: save assigns an id, findByStatusIn returns the given offers,
+     * findById finds nothing, anything else is unsupported
+     */
+    public static OfferRepository repository(List<Offer> running) {
+        AtomicLong ids = new AtomicLong(running.size() + 1);
+        return (OfferRepository) Proxy.newProxyInstance(OfferRepository.class.getClassLoader(),
+                new Class<?>[]{OfferRepository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "save":
+                            Offer offer = (Offer) args[0];
+                            if (offer.getId() == null) {
+                                offer.setId(ids.getAndIncrement());
+                            }
+                            return offer;
+                        case "findByStatusIn":
+                            return running;
+                        case "findById":
+                            return Optional.empty();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "OfferRepository stub";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * @return item locks with in-process stripes only
+     */
+    public static ItemLocks itemLocks() {
+        return new ItemLocks(1024, Optional.empty());
+    }
+
+    /**
+     * Runs the action as if inside a transaction that commits: the synchronizations it registers,
+     * such as the release of the item locks, run when it returns
+     */
+    public static <T> T committed(Supplier<T> action) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            T result = action.get();
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                    TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_COMMITTED);
+            return result;
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
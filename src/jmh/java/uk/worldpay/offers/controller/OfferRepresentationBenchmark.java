@@ -0,0 +1,107 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import uk.worldpay.offers.OfferFixtures;
+import uk.worldpay.offers.domain.CompactOffers;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferRepresentationBenchmark
+ *
+ * Serialization and deserialization of a page of offers in each representation of GET /api/v1/offers:
+ * HAL JSON (Resources&lt;Resource&lt;Offer&gt;&gt;), and CompactOffers in CBOR and in Smile.
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OfferRepresentationBenchmark {
+
+    private static final TypeReference<Resources<Resource<Offer>>> HAL_TYPE =
+            new TypeReference<Resources<Resource<Offer>>>() {
+            };
+
+    @Param({"20", "500"})
+    public int pageSize;
+
+    @Param({"hal", "cbor", "smile"})
+    public String format;
+
+    private ObjectMapper mapper;
+    private Resources<Resource<Offer>> resources;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/offers");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        OfferResourceAssembler assembler = new OfferResourceAssembler();
+        CompactOfferModule module = new CompactOfferModule(assembler::offersUri);
+        switch (format) {
+            case "cbor":
+                mapper = Jackson2ObjectMapperBuilder.cbor().modulesToInstall(module).build();
+                break;
+            case "smile":
+                mapper = Jackson2ObjectMapperBuilder.smile().modulesToInstall(module).build();
+                break;
+            default:
+                mapper = new ObjectMapper()
+                        .registerModule(new Jackson2HalModule())
+                        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+                mapper.setHandlerInstantiator(
+                        new Jackson2HalModule.HalHandlerInstantiator(new DefaultRelProvider(), null, null));
+        }
+
+        List<Offer> offers = OfferFixtures.catalogue(pageSize, 42L);
+        resources = assembler.toResources(new OfferPage(new OfferQuery(), offers, true, false));
+        payload = mapper.writeValueAsBytes(resources);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(resources);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return format.equals("hal") ? mapper.readValue(payload, HAL_TYPE) : mapper.readValue(payload, CompactOffers.class);
+    }
+}
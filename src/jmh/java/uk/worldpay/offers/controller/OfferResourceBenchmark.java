@@ -0,0 +1,95 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.hateoas.core.DefaultRelProvider;
+import org.springframework.hateoas.hal.Jackson2HalModule;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import uk.worldpay.offers.OfferFixtures;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferResourceBenchmark
+ *
+ * HAL assembly of offers by OfferResourceAssembler and Jackson serialization of the resulting
+ * Resources&lt;Resource&lt;Offer&gt;&gt;, as done for GET /api/v1/offers
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OfferResourceBenchmark {
+
+    @Param({"20", "500"})
+    public int pageSize;
+
+    private OfferResourceAssembler assembler;
+    private ObjectMapper mapper;
+    private Offer offer;
+    private OfferPage page;
+    private Resources<Resource<Offer>> resources;
+
+    @Setup
+    public void setUp() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/offers");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        assembler = new OfferResourceAssembler();
+        mapper = new ObjectMapper()
+                .registerModule(new Jackson2HalModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mapper.setHandlerInstantiator(
+                new Jackson2HalModule.HalHandlerInstantiator(new DefaultRelProvider(), null, null));
+
+        List<Offer> offers = OfferFixtures.catalogue(pageSize, 42L);
+        offer = offers.get(0);
+        page = new OfferPage(new OfferQuery(), offers, true, false);
+        resources = assembler.toResources(page);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public Resource<Offer> toResource() {
+        return assembler.toResource(offer);
+    }
+
+    @Benchmark
+    public Resources<Resource<Offer>> toResources() {
+        return assembler.toResources(page);
+    }
+
+    @Benchmark
+    public byte[] serializeResources() throws Exception {
+        return mapper.writeValueAsBytes(resources);
+    }
+}
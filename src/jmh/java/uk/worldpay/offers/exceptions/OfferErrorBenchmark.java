@@ -0,0 +1,69 @@
+package uk.worldpay.offers.exceptions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferErrorBenchmark
+ *
+ * The error path of a lookup of an unknown id: an exception thrown under a call stack of the depth of a request
+ * handled by Spring MVC, caught and turned into the body of the response. The exception with a stack trace and a
+ * message built eagerly, as before OfferException, is compared to OfferNotFoundException and its ErrorBody.
+ * Run it with -prof gc to compare the allocations.
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OfferErrorBenchmark {
+
+    private static final ErrorBody NOT_FOUND = new ErrorBody(HttpStatus.NOT_FOUND);
+
+    @Param({"20", "150"})
+    public int stackDepth;
+
+    private long id = 1_000_000;
+
+    private RuntimeException throwAt(int depth, boolean stackless) {
+        if (depth > 0) {
+            return throwAt(depth - 1, stackless);
+        }
+        id++;
+        throw stackless ? new OfferNotFoundException(id) : new RuntimeException("Could not find offer " + id);
+    }
+
+    @Benchmark
+    public String withStackTrace() {
+        try {
+            throw throwAt(stackDepth, false);
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> stackless() {
+        try {
+            throw throwAt(stackDepth, true);
+        } catch (OfferNotFoundException e) {
+            return NOT_FOUND.of(e.getMessage());
+        }
+    }
+}
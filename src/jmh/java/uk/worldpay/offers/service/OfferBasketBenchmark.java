@@ -0,0 +1,91 @@
+package uk.worldpay.offers.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.worldpay.offers.OfferFixtures;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferBasketBenchmark
+ *
+ * Lookup of the offers in effect for the items of a basket of growing size, at once and one item at a time,
+ * at the current instant (at null, as the API does when no date is given) or at a future one. Every item of the
+ * basket has an offer in effect at both instants.
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OfferBasketBenchmark {
+
+    private static final int ITEMS = 10_000;
+    private static final int OFFERS_PER_ITEM = 10;
+
+    @Param({"1", "20", "200"})
+    public int basketSize;
+
+    @Param({"now", "future"})
+    public String instant;
+
+    private OfferServiceImpl service;
+    private List<Long> basket;
+    private Instant at;
+
+    @Setup
+    public void setUp() {
+        List<Offer> running = new ArrayList<>(ITEMS * OFFERS_PER_ITEM);
+        for (long itemId = 0; itemId < ITEMS; itemId++) {
+            running.addAll(OfferFixtures.history(itemId, OFFERS_PER_ITEM));
+        }
+        OfferRepository repository = OfferFixtures.repository(running);
+        IndexedOfferConflictChecker checker = new IndexedOfferConflictChecker(repository);
+        checker.rebuild();
+        service = new OfferServiceImpl(repository, checker, new OfferCache(1000, Duration.ofMinutes(10)),
+                OfferFixtures.itemLocks(), event -> { }, Optional.empty());
+
+        Random random = new Random(42L);
+        basket = new ArrayList<>(basketSize);
+        for (int i = 0; i < basketSize; i++) {
+            basket.add((long) random.nextInt(ITEMS));
+        }
+        // the first offer of each item runs today, the third one from the fourth day
+        at = instant.equals("now") ? null : Instant.ofEpochMilli(OfferFixtures.ORIGIN + OfferFixtures.DAY * 4 + 1);
+    }
+
+    @Benchmark
+    public Map<Long, Offer> basket() {
+        return service.findActive(basket, at);
+    }
+
+    @Benchmark
+    public void perItem(Blackhole blackhole) {
+        for (Long itemId : basket) {
+            blackhole.consume(service.findActive(itemId, at));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.worldpay.offers.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.worldpay.offers.OfferFixtures;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferCreateBenchmark
+ *
+ * Conflict detection of OfferServiceImpl.create for items with a growing history of running offers,
+ * against a linear scan of that history
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OfferCreateBenchmark {
+
+    private static final long ITEM_ID = 1L;
+
+    @Param({"10", "1000", "100000"})
+    public int historySize;
+
+    private List<Offer> history;
+    private IndexedOfferConflictChecker checker;
+    private OfferServiceImpl service;
+    private Offer free;
+    private Offer overlapping;
+
+    @Setup
+    public void setUp() {
+        history = OfferFixtures.history(ITEM_ID, historySize);
+        OfferRepository repository = OfferFixtures.repository(history);
+        checker = new IndexedOfferConflictChecker(repository);
+        checker.rebuild();
+        service = new OfferServiceImpl(repository, checker, new OfferCache(1000, Duration.ofMinutes(10)),
+                OfferFixtures.itemLocks(), event -> { }, Optional.empty());
+
+        long middle = historySize / 2 * 2L;
+        free = OfferFixtures.offer(0, ITEM_ID, 2L * historySize + 1, 2L * historySize + 2);
+        overlapping = OfferFixtures.offer(0, ITEM_ID, middle, middle + 1);
+    }
+
+    @Benchmark
+    public Offer create() {
+        free.setId(null);
+        Offer created = OfferFixtures.committed(() -> service.create(free));
+        checker.cancelled(created);
+        return created;
+    }
+
+    @Benchmark
+    public boolean indexedConflict() {
+        return checker.conflicts(overlapping);
+    }
+
+    @Benchmark
+    public boolean linearScanConflict() {
+        for (Offer offer : history) {
+            if (!overlapping.getStartDate().after(offer.getEndDate())
+                    && !offer.getStartDate().after(overlapping.getEndDate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
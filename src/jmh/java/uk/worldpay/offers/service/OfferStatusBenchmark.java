@@ -0,0 +1,64 @@
+package uk.worldpay.offers.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.worldpay.offers.OfferFixtures;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferStatusBenchmark
+ *
+ * OfferServiceImpl.updateStatus over large lists of offers in every status
+ *
+ * @author laurinf
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OfferStatusBenchmark {
+
+    @Param({"1000", "100000"})
+    public int listSize;
+
+    private List<Offer> offers;
+    private Offer.Status[] statuses;
+    private OfferServiceImpl service;
+
+    @Setup
+    public void setUp() {
+        offers = OfferFixtures.catalogue(listSize, 42L);
+        statuses = offers.stream().map(Offer::getStatus).toArray(Offer.Status[]::new);
+        OfferRepository repository = OfferFixtures.repository(offers);
+        service = new OfferServiceImpl(repository, new IndexedOfferConflictChecker(repository),
+                new OfferCache(1000, Duration.ofMinutes(10)), OfferFixtures.itemLocks(), event -> { }, Optional.empty());
+    }
+
+    @Benchmark
+    public void updateStatus(Blackhole blackhole) {
+        for (int i = 0; i < statuses.length; i++) {
+            Offer offer = offers.get(i);
+            offer.setStatus(statuses[i]);
+            blackhole.consume(service.updateStatus(offer));
+        }
+    }
+}
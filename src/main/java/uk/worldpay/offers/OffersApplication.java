@@ -2,10 +2,10 @@ package uk.worldpay.offers;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@ComponentScan("uk.worldpay.offers")
+@EnableScheduling
 public class OffersApplication {
 
 	public static void main(String[] args) {
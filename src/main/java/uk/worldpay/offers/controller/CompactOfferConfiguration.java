@@ -0,0 +1,40 @@
+package uk.worldpay.offers.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Class CompactOfferConfiguration
+ *
+ * Lets clients ask for the offers in CBOR (Accept: application/cbor) or Smile (Accept: application/x-jackson-smile),
+ * written as CompactOffers by CompactOfferModule. The converters are added after the JSON ones, so that HAL JSON
+ * stays the representation of the requests that accept any media type. Request bodies in these media types are read
+ * as the JSON ones, with the dates as epoch milliseconds.
+ *
+ * @author laurinf
+ *
+ */
+@Configuration
+@RequiredArgsConstructor
+class CompactOfferConfiguration implements WebMvcConfigurer {
+
+    private final OfferResourceAssembler assembler;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        CompactOfferModule module = new CompactOfferModule(assembler::offersUri);
+        converters.add(new MappingJackson2CborHttpMessageConverter(
+                Jackson2ObjectMapperBuilder.cbor().modulesToInstall(module).build()));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(
+                Jackson2ObjectMapperBuilder.smile().modulesToInstall(module).build()));
+    }
+}
@@ -0,0 +1,143 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import uk.worldpay.offers.domain.CompactOffers;
+import uk.worldpay.offers.domain.Offer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Class CompactOfferModule
+ *
+ * Jackson module writing the Resource&lt;Offer&gt; and Resources&lt;Resource&lt;Offer&gt;&gt; returned by
+ * OfferController as CompactOffers, for the binary media types: the links of every offer are replaced by templates
+ * sent once, and the links of the list (self, next, prev) are kept. The serializers of the Resource and Resources
+ * types are wrapped, and a resource whose content is not an offer is written by the wrapped serializer.
+ *
+ * @author laurinf
+ *
+ */
+class CompactOfferModule extends SimpleModule {
+
+    private final Supplier<String> offersUri;
+
+    /**
+     * @param offersUri the URI of the offers collection for the current request
+     */
+    CompactOfferModule(Supplier<String> offersUri) {
+        super("CompactOfferModule");
+        this.offersUri = offersUri;
+        setSerializerModifier(new BeanSerializerModifier() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription description,
+                                                      JsonSerializer<?> serializer) {
+                Class<?> type = description.getBeanClass();
+                if (Resource.class.isAssignableFrom(type) || Resources.class.isAssignableFrom(type)) {
+                    return new CompactSerializer((JsonSerializer<Object>) serializer);
+                }
+                return serializer;
+            }
+        });
+    }
+
+    /**
+     * @return the offers with the templates of their links, followed by the given links
+     */
+    CompactOffers compact(List<Offer> offers, List<Link> links) {
+        String offersUri = this.offersUri.get();
+        Map<String, String> templates = new LinkedHashMap<>();
+        templates.put("offer", offersUri + "/{id}");
+        templates.put("cancel", offersUri + "/{id}/cancel");
+        templates.put("offers", offersUri);
+        links.forEach(link -> templates.put(link.getRel(), link.getHref()));
+        List<CompactOffers.Entry> entries = new ArrayList<>(offers.size());
+        offers.forEach(offer -> entries.add(CompactOffers.Entry.of(offer)));
+        return new CompactOffers(templates, entries);
+    }
+
+    /**
+     * Writes a Resource of an offer, or Resources of resources of offers, as CompactOffers. Any other resource is
+     * written by the default serializer of its type.
+     */
+    private final class CompactSerializer extends StdSerializer<Object>
+            implements ResolvableSerializer, ContextualSerializer {
+
+        private final JsonSerializer<Object> defaultSerializer;
+
+        CompactSerializer(JsonSerializer<Object> defaultSerializer) {
+            super(Object.class);
+            this.defaultSerializer = defaultSerializer;
+        }
+
+        /**
+         * the links of a single offer are all expanded from the templates, so none is added
+         */
+        @Override
+        public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (value instanceof Resource && ((Resource<?>) value).getContent() instanceof Offer) {
+                provider.defaultSerializeValue(compact(Collections.singletonList((Offer) ((Resource<?>) value)
+                        .getContent()), Collections.emptyList()), generator);
+                return;
+            }
+            List<Offer> offers = value instanceof Resources ? offers((Resources<?>) value) : null;
+            if (offers != null) {
+                provider.defaultSerializeValue(compact(offers, ((Resources<?>) value).getLinks()), generator);
+            } else {
+                defaultSerializer.serialize(value, generator, provider);
+            }
+        }
+
+        /**
+         * @return the offers of the resources, null if one of them is not a resource of an offer
+         */
+        private List<Offer> offers(Resources<?> resources) {
+            List<Offer> offers = new ArrayList<>(resources.getContent().size());
+            for (Object resource : resources.getContent()) {
+                if (!(resource instanceof Resource) || !(((Resource<?>) resource).getContent() instanceof Offer)) {
+                    return null;
+                }
+                offers.add((Offer) ((Resource<?>) resource).getContent());
+            }
+            return offers;
+        }
+
+        @Override
+        public void resolve(SerializerProvider provider) throws JsonMappingException {
+            if (defaultSerializer instanceof ResolvableSerializer) {
+                ((ResolvableSerializer) defaultSerializer).resolve(provider);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property)
+                throws JsonMappingException {
+            if (!(defaultSerializer instanceof ContextualSerializer)) {
+                return this;
+            }
+            JsonSerializer<?> contextual = ((ContextualSerializer) defaultSerializer).createContextual(provider, property);
+            return contextual == defaultSerializer ? this : new CompactSerializer((JsonSerializer<Object>) contextual);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.worldpay.offers.domain.OfferChange;
+import uk.worldpay.offers.domain.OfferEvent;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class OfferChangeFeed
+ *
+ * Server-Sent Events feed of the OfferEvents, once their transaction has committed.
+ *
+ * Each change is numbered and serialized once, when it is published, and the last offers.changes.history changes are
+ * kept in a ring buffer, so that a client reconnecting with the sequence of the last change it received is sent
+ * the changes it missed. A client that has missed more is sent a reset event, telling it to read the offers again.
+ *
+ * Publishing never blocks: each subscriber has a queue of at most offers.changes.buffer changes, drained to its
+ * connection by a pool of offers.changes.senders threads. A subscriber whose queue is full is disconnected;
+ * it can reconnect and resume from the last change it received.
+ *
+ * The feed lock is only held to number, record and queue a change, and to copy the missed changes of a new
+ * subscriber: the changes are serialized before it is taken, and the missed changes are sent by the senders,
+ * ahead of the changes queued since.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+class OfferChangeFeed {
+
+    static final String RESET = "reset";
+
+    private final ObjectMapper mapper;
+
+    private final int bufferSize;
+
+    private final Executor senders;
+
+    /**
+     * the last published changes, by sequence modulo the size of the history
+     */
+    private final Change[] history;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * the sequence of the last published change
+     */
+    private long sequence;
+
+    @Autowired
+    OfferChangeFeed(ObjectMapper mapper,
+                    @Value("${offers.changes.history:10000}") int historySize,
+                    @Value("${offers.changes.buffer:1000}") int bufferSize,
+                    @Value("${offers.changes.senders:4}") int senders) {
+        this(mapper, historySize, bufferSize, Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "offer-changes");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    OfferChangeFeed(ObjectMapper mapper, int historySize, int bufferSize, Executor senders) {
+        this.mapper = mapper;
+        this.history = new Change[historySize];
+        this.bufferSize = bufferSize;
+        this.senders = senders;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (senders instanceof ExecutorService) {
+            ((ExecutorService) senders).shutdownNow();
+        }
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * Numbers, records and sends a change to every subscriber, once its transaction has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOfferEvent(OfferEvent event) {
+        String name = event.getType().name().toLowerCase();
+        // serialized without its sequence, the first property, which is only known under the lock
+        String json = json(new OfferChange(0, event.getType(), event.getOffer()));
+        String afterSequence = json.substring(json.indexOf(','));
+        synchronized (this) {
+            long next = sequence + 1;
+            Change change = new Change(next, name, "{\"sequence\":" + next + afterSequence);
+            history[(int) (next % history.length)] = change;
+            sequence = next;
+            subscribers.forEach(subscriber -> subscriber.offer(change));
+        }
+    }
+
+    private String json(OfferChange change) {
+        try {
+            return mapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Subscribes to the changes published from now on, after the changes following the given sequence if any
+     *
+     * @param since the sequence of the last change received, null to receive only the new changes
+     * @return the emitter of the changes
+     */
+    SseEmitter subscribe(Long since) {
+        SseEmitter emitter = new SseEmitter();
+        Subscriber subscriber;
+        synchronized (this) {
+            long oldest = Math.max(1, sequence - history.length + 1);
+            boolean replay = since != null && since < sequence;
+            boolean reset = replay && since + 1 < oldest || since != null && since > sequence;
+            int missed = replay && !reset ? (int) (sequence - since) : 0;
+
+            Change[] missedChanges = new Change[missed];
+            for (int i = 0; i < missed; i++) {
+                missedChanges[i] = history[(int) ((since + 1 + i) % history.length)];
+            }
+            subscriber = new Subscriber(emitter, reset
+                    ? Collections.singletonList(new Change(sequence, RESET, "{\"sequence\":" + sequence + "}"))
+                    : Arrays.asList(missedChanges));
+            subscribers.add(subscriber);
+        }
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscriber.replay();
+        return emitter;
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * A change, serialized once for every subscriber
+     */
+    private static final class Change {
+
+        private final long sequence;
+        private final String name;
+        private final String data;
+
+        Change(long sequence, String name, String data) {
+            this.sequence = sequence;
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        /**
+         * the changes missed before subscribing, or the reset event, sent before the queue
+         */
+        private final List<Change> missed;
+
+        /**
+         * the number of missed changes sent, only read and written by the sender draining the subscriber
+         */
+        private int replayed;
+
+        private final Queue<Change> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, List<Change> missed) {
+            this.emitter = emitter;
+            this.missed = missed;
+            this.queue = new ArrayBlockingQueue<>(bufferSize + 1);
+        }
+
+        /**
+         * Starts sending the missed changes, if any
+         */
+        void replay() {
+            if (!missed.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * Queues a change without blocking, disconnecting the subscriber if its queue is full
+         */
+        void offer(Change change) {
+            if (!queue.offer(change)) {
+                log.info("Disconnecting a slow subscriber of the offer changes at sequence {}", change.sequence);
+                subscribers.remove(this);
+                emitter.complete();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private Change next() {
+            return replayed < missed.size() ? missed.get(replayed++) : queue.poll();
+        }
+
+        private void drain() {
+            try {
+                Change change;
+                while ((change = next()) != null) {
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.sequence))
+                            .name(change.name)
+                            .data(change.data, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
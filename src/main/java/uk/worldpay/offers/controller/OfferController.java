@@ -1,21 +1,56 @@
 package uk.worldpay.offers.controller;
 
 import org.springframework.hateoas.Resource;
+import uk.worldpay.offers.domain.ItemPrice;
+import uk.worldpay.offers.domain.ItemPriceQuery;
 import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferImportReport;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.hateoas.Resources;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import uk.worldpay.offers.exceptions.ActiveOfferNotFoundException;
 import uk.worldpay.offers.exceptions.CancelNotAllowedException;
 import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.exceptions.IdempotencyKeyReusedException;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
 import uk.worldpay.offers.exceptions.OfferNotFoundException;
+import uk.worldpay.offers.exceptions.OfferVersionMismatchException;
+import uk.worldpay.offers.service.OfferIdempotency;
+import uk.worldpay.offers.service.OfferImporter;
 import uk.worldpay.offers.service.OfferService;
 
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
@@ -39,6 +74,15 @@ class OfferController {
 
     private final OfferService service;
     private final OfferResourceAssembler assembler;
+    private final ObjectMapper mapper;
+    private final OfferChangeFeed changeFeed;
+    private final OfferImporter importer;
+    private final OfferIdempotency idempotency;
+
+    /**
+     * media type of newline delimited JSON: one JSON document per line
+     */
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
 
     /**
@@ -55,80 +99,409 @@ class OfferController {
 
 
     /**
-     * returns the complete list of offers no matter what the status is
+     * returns a page of offers no matter what the status is, unless filtered.
+     * Pages are ordered by id and linked with next and prev links.
+     * The page has an ETag; if it matches the If-None-Match header, status 304 is returned without a body.
+     * The ETag is the same in every representation of the page, so the response varies by the Accept header.
      *
-     * HTTP GET /api/v1/offers
+     * HTTP GET /api/v1/offers?itemId={itemId}&status={status}&activeAt={date}&after={id}&before={id}&size={size}
      *
-     * @return a list of resources containing the offers
+     * @param query the optional filters (itemId, status, activeAt), cursor (after or before) and size of the page
+     * @return a list of resources containing the offers of the page. Status 304 if the page has not changed.
+     *         Status 400 if both cursors are sent.
      */
     @GetMapping("/offers")
-    Resources<Resource<Offer>> all() {
+    ResponseEntity<Resources<Resource<Offer>>> all(OfferQuery query, WebRequest request,
+                                                   HttpServletResponse response) {
 
-        List<Resource<Offer>> offers = service.findAll().stream()
-                .map(assembler::toResource)
-                .collect(Collectors.toList());
+        OfferPage page = service.findPage(query);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(etag(page))) {
+            return null;
+        }
+        return ResponseEntity.ok(assembler.toResources(page));
+    }
 
-        return new Resources<>(offers,
-                linkTo(methodOn(OfferController.class).all()).withSelfRel());
+    /**
+     * exports every offer as newline delimited JSON, one offer per line in id order.
+     * The offers are read from a database cursor and written to the response as they are read,
+     * so the memory used does not depend on the number of offers.
+     *
+     * HTTP GET /api/v1/offers/export
+     *
+     * @return status 200 and a body streaming the offers
+     */
+    @GetMapping(value = "/offers/export", produces = "application/x-ndjson")
+    ResponseEntity<StreamingResponseBody> export() {
+
+        StreamingResponseBody body = out -> writeNdjson(out, service::forEachOffer);
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
     }
 
     /**
-     * Returns the offer corresponding to the given id
+     * Writes the offers passed by the source to its action as newline delimited JSON, one offer per line
+     */
+    private void writeNdjson(OutputStream out, Consumer<Consumer<Offer>> source) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(new BufferedOutputStream(out))) {
+            generator.setRootValueSeparator(null);
+            source.accept(offer -> {
+                try {
+                    generator.writeObject(offer);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * streams the changes of the offers (created, cancelled, activated, expired) as Server-Sent Events,
+     * each with its sequence as id and the change as JSON data. A client that reconnects with the id of the last
+     * event it received, in the Last-Event-ID header or the since parameter, first receives the changes it missed,
+     * or a reset event if they are no longer available.
+     *
+     * HTTP GET /api/v1/offers/changes?since={sequence}
+     *
+     * @param lastEventId the sequence of the last change received, sent by EventSource clients when reconnecting
+     * @param since the sequence of the last change received
+     * @return status 200 and the stream of changes
+     */
+    @GetMapping(value = "/offers/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter changes(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                       @RequestParam(required = false) Long since) {
+
+        return changeFeed.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    /**
+     * Returns the offer corresponding to the given id, with its ETag. If the ETag matches the If-None-Match header,
+     * status 304 is returned without serializing the offer. The ETag is the same in every representation of the offer,
+     * so the response varies by the Accept header.
      *
      * GET /api/v1/offers/{id}
      *
      * @param id the id of the offer
-     * @return Status 200 and the offer corresponding with the given id if present. Status 404 if not found.
+     * @return Status 200 and the offer corresponding with the given id if present. Status 304 if the offer has not
+     *         changed. Status 404 if not found.
      * @throws OfferNotFoundException if the offer can not be found
      */
     @GetMapping("/offers/{id}")
-    Resource<Offer> getOffer(@PathVariable Long id) throws OfferNotFoundException {
+    ResponseEntity<Resource<Offer>> getOffer(@PathVariable Long id, WebRequest request, HttpServletResponse response)
+            throws OfferNotFoundException {
 
         Offer offer = service.findById(id);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(etag(offer))) {
+            return null;
+        }
+        return ResponseEntity.ok(assembler.toResource(offer));
+    }
+
+    /**
+     * @return the strong ETag of an offer: its version and its status, which also changes without a new version
+     *         when the status is computed from the dates at read time
+     */
+    static String etag(Offer offer) {
+        return "\"" + offer.getVersion() + "." + offer.getStatus().getShortStatus() + "\"";
+    }
+
+    /**
+     * @return the strong ETag of a page of offers: a hash of the id, version and status of its offers
+     *         and of the existence of the next and previous pages
+     */
+    static String etag(OfferPage page) {
+        long hash = page.hasNext() ? 1 : 0;
+        hash = mix(hash ^ (page.hasPrevious() ? 2 : 0));
+        for (Offer offer : page.getOffers()) {
+            hash = mix(hash ^ offer.getId());
+            hash = mix(hash ^ offer.getVersion());
+            hash = mix(hash ^ offer.getStatus().ordinal());
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * @return the versions in the comma-separated ETags of an If-Match header, null if it is absent or holds the
+     *         wildcard, -1 for an ETag that is not a strong ETag of an offer
+     */
+    static Set<Long> versions(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        Set<Long> versions = new TreeSet<>();
+        int from = 0;
+        while (from < ifMatch.length()) {
+            char c = ifMatch.charAt(from);
+            if (c == ',' || Character.isWhitespace(c)) {
+                from++;
+                continue;
+            }
+            int quote = ifMatch.indexOf('"', from);
+            int end = c == '"' || ifMatch.startsWith("W/\"", from) ? ifMatch.indexOf('"', quote + 1) + 1
+                    : ifMatch.indexOf(',', from);
+            if (end <= 0) {
+                end = ifMatch.length();
+            }
+            String etag = ifMatch.substring(from, end).trim();
+            if (etag.equals("*")) {
+                return null;
+            }
+            versions.add(version(etag));
+            from = end;
+        }
+        return versions;
+    }
+
+    /**
+     * @return the version in a strong ETag of an offer, -1 if the ETag is not a strong ETag of an offer
+     */
+    static Long version(String etag) {
+        int dot = etag.indexOf('.');
+        try {
+            return Long.valueOf(etag.substring(etag.startsWith("\"") ? 1 : 0, dot < 0 ? etag.length() : dot));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+
+    /**
+     * Returns the offer, and so the price, of an item at an instant
+     *
+     * GET /api/v1/items/{itemId}/price?at={instant}
+     *
+     * @param itemId the id of the item
+     * @param at the instant, as an ISO-8601 instant; the current instant if absent
+     * @return Status 200 and the offer in effect at the instant. Status 404 if there is none.
+     * @throws ActiveOfferNotFoundException if no offer of the item is in effect at the instant
+     */
+    @GetMapping("/items/{itemId}/price")
+    Resource<Offer> price(@PathVariable Long itemId, @RequestParam(required = false) Instant at)
+            throws ActiveOfferNotFoundException {
+
+        Offer offer = service.findActive(itemId, at);
 
         return assembler.toResource(offer);
     }
 
 
     /**
-     * creates a new offer from the offer received in the body of the HTTP request
+     * Returns every offer of an item, including the archived ones, in id order
+     *
+     * GET /api/v1/items/{itemId}/history
+     *
+     * @param itemId the id of the item
+     * @return Status 200 and the offers of the item
+     */
+    @GetMapping("/items/{itemId}/history")
+    Resources<Resource<Offer>> history(@PathVariable Long itemId) {
+
+        List<Resource<Offer>> offers = service.findHistory(itemId).stream()
+                .map(assembler::toResource)
+                .collect(Collectors.toList());
+
+        return new Resources<>(offers, linkTo(methodOn(OfferController.class).history(itemId)).withSelfRel());
+    }
+
+
+    /**
+     * Returns the offers of an item whose period overlaps a window, including the archived ones,
+     * ordered by starting date. The offers are held in memory to be rendered, so a window is refused once more
+     * than OfferQuery.MAX_SIZE offers have been read: larger windows are to be streamed as newline delimited JSON.
+     *
+     * GET /api/v1/items/{itemId}/offers?from={instant}&to={instant}
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window, as an ISO-8601 instant
+     * @param to the end of the window, as an ISO-8601 instant
+     * @return Status 200 and the offers of the item in the window. Status 400 if the window ends before it starts,
+     *         or holds more than OfferQuery.MAX_SIZE offers.
+     */
+    @GetMapping("/items/{itemId}/offers")
+    Resources<Resource<Offer>> timeline(@PathVariable Long itemId,
+                                        @RequestParam Instant from,
+                                        @RequestParam Instant to) {
+
+        List<Resource<Offer>> offers = new ArrayList<>();
+        service.forEachOfferOfItem(itemId, from, to, offer -> {
+            if (offers.size() == OfferQuery.MAX_SIZE) {
+                throw new InvalidOfferRequestException("More than " + OfferQuery.MAX_SIZE + " offers in the window: "
+                        + "narrow it, or read it as " + APPLICATION_NDJSON);
+            }
+            offers.add(assembler.toResource(offer));
+        });
+
+        return new Resources<>(offers, linkTo(methodOn(OfferController.class).timeline(itemId, from, to))
+                .withSelfRel());
+    }
+
+    /**
+     * streams the offers of an item whose period overlaps a window as newline delimited JSON, one offer per line
+     * in starting date order, written to the response as they are read (see export)
+     *
+     * GET /api/v1/items/{itemId}/offers?from={instant}&to={instant} with Accept: application/x-ndjson
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window, as an ISO-8601 instant
+     * @param to the end of the window, as an ISO-8601 instant
+     * @return status 200 and a body streaming the offers. Status 400 if the window ends before it starts.
+     */
+    @GetMapping(value = "/items/{itemId}/offers", produces = "application/x-ndjson")
+    ResponseEntity<StreamingResponseBody> exportTimeline(@PathVariable Long itemId,
+                                                         @RequestParam Instant from,
+                                                         @RequestParam Instant to) {
+
+        // checked before the status of the response is sent
+        if (to.isBefore(from)) {
+            throw new InvalidOfferRequestException("The end of the window is before its start");
+        }
+        StreamingResponseBody body = out -> writeNdjson(out, action -> service.forEachOfferOfItem(itemId, from, to,
+                action));
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+
+    /**
+     * Returns the offers, and so the prices, of the items of a basket at an instant, looked up all at once
+     *
+     * HTTP POST /api/v1/items/prices
+     *
+     * @param query the ids of the items and the optional date (the current date if absent)
+     * @return Status 200 and, for each item in the order of the query, the offer in effect, null if there is none
+     */
+    @PostMapping("/items/prices")
+    List<ItemPrice> prices(@RequestBody ItemPriceQuery query) {
+
+        Map<Long, Offer> offers = service.findActive(query.getItemIds(),
+                query.getAt() != null ? query.getAt().toInstant() : null);
+
+        return query.getItemIds().stream()
+                .map(itemId -> new ItemPrice(itemId, offers.get(itemId)))
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * creates a new offer from the offer received in the body of the HTTP request.
+     * With an Idempotency-Key header, the offer is created at most once per key: a request repeating the key is
+     * answered with the first result of the key, the offer created (with the Idempotent-Replayed header) or its
+     * rejection, without creating the offer again.
      *
      * HTTP POST /api/v1/offers
      *
      *
      * @param newOffer
+     * @param idempotencyKey the optional key identifying the creation across the retries of the client
      * @return ResponseEntity with :
      *                      status 201 and the offer if the offer has correctly been created
      *                      status 405 if there is already a running offer for that item and that period
+     *                      status 422 if the idempotency key has already been used for a different offer
      *
      * @throws URISyntaxException if any link could not be parsed as a URI reference
      * @throws ExistingActiveOfferException if there already exists an offer for the given item and period
+     * @throws IdempotencyKeyReusedException if the idempotency key has already been used for a different offer
      */
     @PostMapping("/offers")
-    ResponseEntity<?> newOffer(@RequestBody Offer newOffer) throws URISyntaxException, ExistingActiveOfferException {
+    ResponseEntity<?> newOffer(@RequestBody Offer newOffer,
+                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey)
+            throws URISyntaxException, ExistingActiveOfferException {
+
+        if (idempotencyKey == null) {
+            return created(service.create(newOffer), false);
+        }
+        OfferIdempotency.Creation creation = idempotency.create(idempotencyKey, newOffer);
+        return created(creation.getOffer(), creation.isReplayed());
+    }
+
+    private ResponseEntity<?> created(Offer offer, boolean replayed) throws URISyntaxException {
+
+        Resource<Offer> resource = assembler.toResource(offer);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.created(new URI(resource.getId().expand().getHref()));
+        if (replayed) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response.body(resource);
+    }
+
+
+    /**
+     * creates a batch of offers from the list of offers received in the body of the HTTP request,
+     * in a single transaction. Offers overlapping a running offer, or an offer before them in the batch, are rejected.
+     *
+     * HTTP POST /api/v1/offers/batch
+     *
+     * @param newOffers the offers to be created
+     * @return ResponseEntity with status 200 and the outcome of the creation of each offer, in the order of the batch
+     */
+    @PostMapping("/offers/batch")
+    ResponseEntity<List<OfferCreationResult>> newOffers(@RequestBody List<Offer> newOffers) {
+
+        return ResponseEntity.ok(service.createAll(newOffers));
+    }
+
+
+    /**
+     * imports the offers of the body of the HTTP request, in CSV (text/csv, with a header line) or in newline
+     * delimited JSON (application/x-ndjson), as they are received. The offers of each item are created in the order of
+     * the body, under the same rules as a single creation; different items are created in parallel batches.
+     *
+     * HTTP POST /api/v1/offers/import
+     *
+     * @param request the request, whose body is read as a stream
+     * @return ResponseEntity with status 200 and the number of offers read, created and rejected, with the line and
+     *         the reason of the first rejected offers. Status 400 if the CSV header lacks a mandatory column
+     *         or the content type is not a format of offers.
+     */
+    @PostMapping(value = "/offers/import", consumes = {"text/csv", "application/x-ndjson"})
+    ResponseEntity<OfferImportReport> importOffers(HttpServletRequest request) throws IOException {
 
-        Resource<Offer> resource = assembler.toResource(service.create(newOffer));
+        OfferImporter.Format format = OfferImporter.Format.of(MediaType.parseMediaType(request.getContentType()));
+        return ResponseEntity.ok(importer.importOffers(Channels.newChannel(request.getInputStream()), format));
+    }
+
+
+    /**
+     * Cancels at once every running offer matching the filters: the offers of an item, the offers ending before
+     * a date, or both. At least one filter is required.
+     *
+     * DELETE /api/v1/offers/cancel?itemId={itemId}&endingBefore={date}
+     *
+     * @param query the filters
+     * @return Status 200 and the number of cancelled offers. Status 400 if no filter is given.
+     */
+    @DeleteMapping("/offers/cancel")
+    ResponseEntity<Map<String, Integer>> cancelAll(OfferCancelQuery query) {
 
-        return ResponseEntity
-                .created(new URI(resource.getId().expand().getHref()))
-                .body(resource);
+        return ResponseEntity.ok(Collections.singletonMap("cancelled", service.cancelAll(query)));
     }
 
 
     /**
-     * Cancels an offer
+     * Cancels an offer, provided that it has not changed since it was read if the If-Match header holds its ETag,
+     * or is still at one of the versions of the ETags if it holds a list of them
      *
      * DELETE /offers/{id}
      *
      * @param id the id of the offer to be cancelled
+     * @param ifMatch the ETag of the offer when it was read, or a comma-separated list of ETags, optional
      * @return Status 204 is the offer has been correctly cancelled.
      * @throws CancelNotAllowedException returns status 405 if the offer was previously cancelled or it expired.
      * @throws OfferNotFoundException returns status 404 if the given id does not correspond with any offer.
+     * @throws OfferVersionMismatchException returns status 412 if the offer is at none of the versions of the ETags.
+     *         Status 409 is returned if the offer is updated concurrently.
      */
     @DeleteMapping("/offers/{id}/cancel")
-    ResponseEntity<?> cancel(@PathVariable Long id) throws CancelNotAllowedException, OfferNotFoundException {
+    ResponseEntity<?> cancel(@PathVariable Long id, @RequestHeader(value = "If-Match", required = false) String ifMatch)
+            throws CancelNotAllowedException, OfferNotFoundException, OfferVersionMismatchException {
 
-        service.cancel(id);
+        service.cancel(id, versions(ifMatch));
         return ResponseEntity.noContent().build();
     }
 }
\ No newline at end of file
@@ -1,33 +1,117 @@
 package uk.worldpay.offers.controller;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.*;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 
+import org.springframework.hateoas.Link;
 import org.springframework.hateoas.Resource;
 import org.springframework.hateoas.ResourceAssembler;
+import org.springframework.hateoas.Resources;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.util.UriComponentsBuilder;
 import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import java.util.List;
+import java.util.stream.Collectors;
 /**
  * Class OfferResourceAssembler
  *
  * Class in charge of creating the links to comply with the HAL API model
  *
+ * The base URI of the links is resolved with ControllerLinkBuilder once per request and kept as a request attribute;
+ * the links of each offer are then expanded from it by concatenating the id of the offer.
+ *
  * @author laurinf
  *
  */
 @Component
 class OfferResourceAssembler implements ResourceAssembler<Offer, Resource<Offer>> {
 
+    private static final String BASE_URI_ATTRIBUTE = OfferResourceAssembler.class.getName() + ".BASE_URI";
+
     @Override
     public Resource<Offer> toResource(Offer offer) {
 
+        String offers = offersUri();
+        String self = offers + "/" + offer.getId();
         Resource<Offer> offerResource = new Resource<>(offer,
-                linkTo(methodOn(OfferController.class).getOffer(offer.getId())).withSelfRel(),
-                linkTo(methodOn(OfferController.class).all()).withRel("offers"));
+                new Link(self, Link.REL_SELF),
+                new Link(offers, "offers"));
         if (offer.getStatus() == Offer.Status.ACTIVE || offer.getStatus() == Offer.Status.CREATED) {
-            offerResource.add(
-                    linkTo(methodOn(OfferController.class)
-                            .cancel(offer.getId())).withRel("cancel"));
+            offerResource.add(new Link(self + "/cancel", "cancel"));
         }
         return offerResource;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the URI of the offers collection (/api/v1/offers) for the current request
+     */
+    String offersUri() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return linkTo(OfferController.class).slash("offers").toString();
+        }
+        String offers = (String) attributes.getAttribute(BASE_URI_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (offers == null) {
+            offers = linkTo(OfferController.class).slash("offers").toString();
+            attributes.setAttribute(BASE_URI_ATTRIBUTE, offers, RequestAttributes.SCOPE_REQUEST);
+        }
+        return offers;
+    }
+
+    /**
+     * Creates the resources for a page of offers, with the self link of the page and
+     * the next and prev links to the adjacent pages when they exist
+     *
+     * @param page a page of offers
+     * @return the resources of the page
+     */
+    public Resources<Resource<Offer>> toResources(OfferPage page) {
+
+        List<Resource<Offer>> offers = page.getOffers().stream()
+                .map(this::toResource)
+                .collect(Collectors.toList());
+
+        OfferQuery query = page.getQuery();
+        Resources<Resource<Offer>> resources = new Resources<>(offers,
+                pageLink(query, query.getAfter(), query.getBefore(), Link.REL_SELF));
+        if (page.hasNext()) {
+            Long lastId = offers.get(offers.size() - 1).getContent().getId();
+            resources.add(pageLink(query, lastId, null, Link.REL_NEXT));
+        }
+        if (page.hasPrevious()) {
+            Long firstId = offers.get(0).getContent().getId();
+            resources.add(pageLink(query, null, firstId, Link.REL_PREVIOUS));
+        }
+        return resources;
+    }
+
+    /**
+     * Creates a link to the list of offers keeping the filters and size of the query, with the given cursor
+     */
+    private Link pageLink(OfferQuery query, Long after, Long before, String rel) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(offersUri());
+        if (query.getItemId() != null) {
+            builder.queryParam("itemId", query.getItemId());
+        }
+        if (query.getStatus() != null) {
+            builder.queryParam("status", query.getStatus().name());
+        }
+        if (query.getActiveAt() != null) {
+            builder.queryParam("activeAt", query.getActiveAt().toInstant().toString());
+        }
+        if (after != null) {
+            builder.queryParam("after", after);
+        }
+        if (before != null) {
+            builder.queryParam("before", before);
+        }
+        if (query.getSize() != null) {
+            builder.queryParam("size", query.getPageSize());
+        }
+        return new Link(builder.build().encode().toUriString(), rel);
+    }
+}
@@ -0,0 +1,87 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Date;
+
+/**
+ * Class ArchivedOffer
+ *
+ * An offer that had been EXPIRED or CANCELLED for longer than the retention period, moved by OfferArchiveJob
+ * from the offer table to the offer_archive table. Archived offers are never modified: they keep the id, fields and
+ * version they had when archived.
+ *
+ * The archive holds the long histories of the items: it is indexed by item and starting date, for the history and
+ * the timeline of an item.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+@Entity
+@Table(name = "offer_archive", indexes = {
+        @Index(name = "idx_offer_archive_item", columnList = "item_id, start_date, end_date")
+})
+public class ArchivedOffer {
+
+    /**
+     * the id of the offer
+     */
+    @Id
+    private Long id;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    private String description;
+
+    @Column(nullable = false)
+    private Double price;
+
+    @Column(name = "creation_date")
+    private Date creationDate;
+
+    @Column(name = "start_date", nullable = false)
+    private Date startDate;
+
+    @Column(name = "end_date", nullable = false)
+    private Date endDate;
+
+    @Column(nullable = false)
+    private Offer.Status status;
+
+    @Column(name = "cancel_date")
+    private Date cancelDate;
+
+    @Column(nullable = false)
+    private Long version;
+
+    /**
+     * date the offer was archived
+     */
+    @Column(name = "archive_date", nullable = false)
+    private Date archiveDate;
+
+    /**
+     * @return the offer as it was when archived
+     */
+    public Offer toOffer() {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(itemId);
+        offer.setDescription(description);
+        offer.setPrice(price);
+        offer.setCreationDate(creationDate);
+        offer.setStartDate(startDate);
+        offer.setEndDate(endDate);
+        offer.setStatus(status);
+        offer.setCancelDate(cancelDate);
+        offer.setVersion(version);
+        return offer;
+    }
+}
@@ -0,0 +1,87 @@
+package uk.worldpay.offers.domain;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class CompactOffers
+ *
+ * Representation of offers sent for the binary media types (application/cbor, application/x-jackson-smile):
+ * the links of the offers are sent once, as templates in which {id} stands for the id of an offer, and each offer
+ * is an array of its fields in a fixed order, with its dates as epoch milliseconds and its status as its short status.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompactOffers {
+
+    /**
+     * the links by rel: the templates of the links of each offer (offer, cancel, which only applies to the CREATED
+     * and ACTIVE offers) and the links of the list (self, offers, next, prev)
+     */
+    private Map<String, String> links;
+
+    /**
+     * the offers
+     */
+    private List<Entry> offers;
+
+    /**
+     * An offer, written as the array [id, itemId, description, price, status, startDate, endDate, creationDate,
+     * cancelDate, version]
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    @JsonPropertyOrder({"id", "itemId", "description", "price", "status", "startDate", "endDate", "creationDate",
+            "cancelDate", "version"})
+    public static class Entry {
+
+        private long id;
+        private long itemId;
+        private String description;
+        private double price;
+        private String status;
+        private long startDate;
+        private long endDate;
+        private Long creationDate;
+        private Long cancelDate;
+        private Long version;
+
+        public static Entry of(Offer offer) {
+            return new Entry(offer.getId(), offer.getItemId(), offer.getDescription(), offer.getPrice(),
+                    offer.getStatus().getShortStatus(), offer.getStartDate().getTime(), offer.getEndDate().getTime(),
+                    millis(offer.getCreationDate()), millis(offer.getCancelDate()), offer.getVersion());
+        }
+
+        public Offer toOffer() {
+            Offer offer = new Offer();
+            offer.setId(id);
+            offer.setItemId(itemId);
+            offer.setDescription(description);
+            offer.setPrice(price);
+            offer.setStatus(Offer.Status.getStatus(status));
+            offer.setStartDate(new Date(startDate));
+            offer.setEndDate(new Date(endDate));
+            offer.setCreationDate(creationDate == null ? null : new Date(creationDate));
+            offer.setCancelDate(cancelDate == null ? null : new Date(cancelDate));
+            offer.setVersion(version);
+            return offer;
+        }
+
+        private static Long millis(Date date) {
+            return date == null ? null : date.getTime();
+        }
+    }
+}
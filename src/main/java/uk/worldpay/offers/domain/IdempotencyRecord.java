@@ -0,0 +1,70 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Date;
+
+/**
+ * Class IdempotencyRecord
+ *
+ * The first result of a creation of an offer sent with an Idempotency-Key header: the offer created, or none if the
+ * offer was rejected because of an existing offer of its item. The fingerprint of the offer received, a SHA-256 digest
+ * of its fields, tells a retry of the same creation from a reuse of the key for another offer.
+ * Rows are only ever inserted, so saving one inserts it without reading it first, and a key recorded concurrently
+ * fails on the primary key.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "offer_idempotency_key", indexes = @Index(name = "idx_idempotency_creation", columnList = "creation_date"))
+public class IdempotencyRecord implements Persistable<String> {
+
+    /**
+     * the value of the Idempotency-Key header
+     */
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    /**
+     * the Base64 encoded SHA-256 digest of the fields of the offer received
+     */
+    @Column(nullable = false, length = 44)
+    private String fingerprint;
+
+    /**
+     * the id of the created offer, null if the offer was rejected
+     */
+    @Column(name = "offer_id")
+    private Long offerId;
+
+    @Column(name = "creation_date", nullable = false)
+    private Date creationDate;
+
+    public IdempotencyRecord(String key, String fingerprint, Long offerId, Date creationDate) {
+        this.key = key;
+        this.fingerprint = fingerprint;
+        this.offerId = offerId;
+        this.creationDate = creationDate;
+    }
+
+    @Override
+    public String getId() {
+        return key;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Class ItemLock
+ *
+ * One row per item, locked (select for update) while offers of the item are being created,
+ * so that the creations of offers for the same item are serialized across every node sharing the database.
+ * Rows are only ever inserted, by ItemLockRepository.insertLocked in the transaction that locks them; saving one
+ * inserts it without reading it first.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "offer_item_lock")
+public class ItemLock implements Persistable<Long> {
+
+    /**
+     * the id of the item
+     */
+    @Id
+    @Column(name = "item_id")
+    private Long itemId;
+
+    public ItemLock(Long itemId) {
+        this.itemId = itemId;
+    }
+
+    @Override
+    public Long getId() {
+        return itemId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
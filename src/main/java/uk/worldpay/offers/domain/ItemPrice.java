@@ -0,0 +1,25 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+/**
+ * Class ItemPrice
+ *
+ * The offer in effect for one item of a basket
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class ItemPrice {
+
+    /**
+     * the id of the item
+     */
+    private final Long itemId;
+
+    /**
+     * the offer of the item in effect, null if there is none
+     */
+    private final Offer offer;
+}
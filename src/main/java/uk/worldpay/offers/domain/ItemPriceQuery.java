@@ -0,0 +1,29 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Class ItemPriceQuery
+ *
+ * The items of a basket whose offers are looked up at once
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class ItemPriceQuery {
+
+    /**
+     * the ids of the items
+     */
+    private List<Long> itemIds = new ArrayList<>();
+
+    /**
+     * the date at which the offers have to be in effect, the current date if null
+     */
+    private Date at;
+}
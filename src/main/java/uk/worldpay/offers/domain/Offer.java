@@ -4,6 +4,7 @@ import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.Date;
 
 /**
@@ -11,6 +12,11 @@ import java.util.Date;
  *
  * Class representing a temporal reduction in price for an item
  *
+ * Every update of an offer increments its version, which detects concurrent updates (optimistic locking).
+ *
+ * The table is indexed for its two access paths: the running offers of an item by starting date
+ * (conflict detection) and the offers of a status by expiring date (status transitions).
+ *
  * @author laurinf
  *
  */
@@ -18,13 +24,20 @@ import java.util.Date;
 @ToString
 @EqualsAndHashCode
 @Entity
+@Table(name = "offer", indexes = {
+        @Index(name = "idx_offer_item_status_start", columnList = "item_id, status, start_date"),
+        @Index(name = "idx_offer_status_end", columnList = "status, end_date")
+})
 public
 class Offer {
 
     /**
-     * the id of the offer
+     * the id of the offer, allocated from the offer_seq sequence by blocks of 50 so that inserts can be batched
      */
-    private @Id @GeneratedValue Long id;
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "offer_seq")
+    @SequenceGenerator(name = "offer_seq", sequenceName = "offer_seq", allocationSize = 50)
+    private Long id;
 
     /**
      * the id of the item associated to the offer
@@ -74,6 +87,14 @@ class Offer {
     @Column(name="cancel_date")
     private Date cancelDate;
 
+    /**
+     * version of the offer, incremented by every update, including the status transitions made in bulk.
+     * Used for optimistic locking and in the ETags of the API. Rows inserted without a version start at 0.
+     */
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     public Offer() {
         creationDate = new Date();
         this.status = Status.CREATED;
@@ -89,12 +110,57 @@ class Offer {
         this.status = Status.CREATED;
     }
 
+    /**
+     * @return a copy of the offer, with copies of its dates, not attached to any persistence context
+     */
+    public Offer copy() {
+        Offer copy = new Offer();
+        copy.setId(id);
+        copy.setItemId(itemId);
+        copy.setDescription(description);
+        copy.setPrice(price);
+        copy.setCreationDate(copyOf(creationDate));
+        copy.setStartDate(copyOf(startDate));
+        copy.setEndDate(copyOf(endDate));
+        copy.setStatus(status);
+        copy.setCancelDate(copyOf(cancelDate));
+        copy.setVersion(version);
+        return copy;
+    }
+
+    private static Date copyOf(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
     @PrePersist
     protected void onCreate() {
         creationDate = new Date();
         this.status = Status.CREATED;
     }
 
+    /**
+     * Computes the status the offer has at the given instant from its stored status and its period of applicability,
+     * without modifying the offer.
+     *
+     *   a CREATED or ACTIVE offer whose expiring date is before the instant is EXPIRED
+     *   a CREATED offer whose starting date is not after the instant is ACTIVE
+     *   otherwise the stored status is returned
+     *
+     * @param instant the instant at which the status is evaluated
+     * @return the effective status of the offer at the given instant
+     */
+    public Status statusAt(Instant instant) {
+        if (status == Status.CREATED || status == Status.ACTIVE) {
+            if (endDate.toInstant().isBefore(instant)) {
+                return Status.EXPIRED;
+            }
+            if (!startDate.toInstant().isAfter(instant)) {
+                return Status.ACTIVE;
+            }
+        }
+        return status;
+    }
+
 
     /**
      * Enumeration of the possible status for an Offer.
@@ -126,6 +192,10 @@ class Offer {
             return this.textualStatus;
         }
 
+        public String getShortStatus() {
+            return this.shortStatus;
+        }
+
         public static Status getStatus(String shortStatus) {
             switch (shortStatus) {
                 case "c":
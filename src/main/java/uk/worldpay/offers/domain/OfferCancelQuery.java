@@ -0,0 +1,36 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.util.Date;
+
+/**
+ * Class OfferCancelQuery
+ *
+ * Filters selecting the running offers to be cancelled at once. The filters are combined, and at least one is required.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class OfferCancelQuery {
+
+    /**
+     * only offers for this item
+     */
+    private Long itemId;
+
+    /**
+     * only offers whose expiring date is before this date
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private Date endingBefore;
+
+    /**
+     * @return true if no filter is set, which would select every running offer
+     */
+    public boolean isEmpty() {
+        return itemId == null && endingBefore == null;
+    }
+}
@@ -0,0 +1,33 @@
+package uk.worldpay.offers.domain;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Data;
+
+/**
+ * Class OfferChange
+ *
+ * An OfferEvent numbered in the order it was published, as sent by the change feed. The sequence comes first, so
+ * that the feed can serialize a change before numbering it.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+@JsonPropertyOrder({"sequence", "type", "offer"})
+public class OfferChange {
+
+    /**
+     * the position of the change in the feed, starting at 1
+     */
+    private final long sequence;
+
+    /**
+     * the kind of change
+     */
+    private final OfferEvent.Type type;
+
+    /**
+     * the offer, as it is after the change
+     */
+    private final Offer offer;
+}
@@ -0,0 +1,43 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+/**
+ * Class OfferCreationResult
+ *
+ * Outcome of the creation of one offer of a batch
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class OfferCreationResult {
+
+    /**
+     * the position of the offer in the batch
+     */
+    private final int index;
+
+    /**
+     * true if the offer has been created
+     */
+    private final boolean created;
+
+    /**
+     * the created offer, or the rejected offer as it was received
+     */
+    private final Offer offer;
+
+    /**
+     * the reason why the offer was rejected, null if it has been created
+     */
+    private final String error;
+
+    public static OfferCreationResult created(int index, Offer offer) {
+        return new OfferCreationResult(index, true, offer, null);
+    }
+
+    public static OfferCreationResult rejected(int index, Offer offer, String error) {
+        return new OfferCreationResult(index, false, offer, error);
+    }
+}
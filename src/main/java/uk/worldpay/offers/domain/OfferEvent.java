@@ -0,0 +1,33 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+/**
+ * Class OfferEvent
+ *
+ * Change in the lifecycle of an offer: creations and cancellations are published by OfferServiceImpl,
+ * activations and expiries by OfferTransitionScheduler
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class OfferEvent {
+
+    /**
+     * the kind of change
+     */
+    private final Type type;
+
+    /**
+     * the offer, as it is after the change
+     */
+    private final Offer offer;
+
+    public enum Type {
+        CREATED,
+        CANCELLED,
+        ACTIVATED,
+        EXPIRED
+    }
+}
@@ -0,0 +1,66 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Class OfferImportReport
+ *
+ * Outcome of the import of a file of offers
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class OfferImportReport {
+
+    /**
+     * the number of offers read from the file, valid or not
+     */
+    private final long rows;
+
+    /**
+     * the number of offers created
+     */
+    private final long created;
+
+    /**
+     * the number of offers rejected
+     */
+    private final long rejected;
+
+    /**
+     * the duration of the import, in milliseconds
+     */
+    private final long elapsedMillis;
+
+    /**
+     * the first rejected offers, with their line in the file and the reason why they were rejected
+     */
+    private final List<Rejection> rejections;
+
+    /**
+     * @return the number of offers read per second
+     */
+    public long getOffersPerSecond() {
+        return elapsedMillis == 0 ? rows : rows * 1000 / elapsedMillis;
+    }
+
+    /**
+     * A rejected offer
+     */
+    @Data
+    public static class Rejection {
+
+        /**
+         * the line of the offer in the file, starting at 1
+         */
+        private final long line;
+
+        /**
+         * the reason why the offer was rejected
+         */
+        private final String reason;
+    }
+}
@@ -0,0 +1,49 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Class OfferPage
+ *
+ * A page of offers, ordered by id, returned for an OfferQuery
+ *
+ * @author laurinf
+ *
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class OfferPage {
+
+    /**
+     * the query the page answers
+     */
+    private final OfferQuery query;
+
+    /**
+     * the offers of the page, ordered by id
+     */
+    private final List<Offer> offers;
+
+    /**
+     * true if there are offers after the last one of the page
+     */
+    private final boolean next;
+
+    /**
+     * true if there are offers before the first one of the page
+     */
+    private final boolean previous;
+
+    public boolean hasNext() {
+        return next && !offers.isEmpty();
+    }
+
+    public boolean hasPrevious() {
+        return previous && !offers.isEmpty();
+    }
+}
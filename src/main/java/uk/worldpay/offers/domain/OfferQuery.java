@@ -0,0 +1,79 @@
+package uk.worldpay.offers.domain;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.util.Date;
+
+/**
+ * Class OfferQuery
+ *
+ * Filters and keyset cursor used to list offers page by page.
+ * Pages are ordered by offer id: a page is fetched after (or before) the id of the last (or first) offer
+ * of the previous page, so every page costs the same whatever its position in the table.
+ *
+ * @author laurinf
+ *
+ */
+@Data
+public class OfferQuery {
+
+    /**
+     * the page size used when none is requested
+     */
+    public static final int DEFAULT_SIZE = 20;
+
+    /**
+     * the largest page size that can be requested
+     */
+    public static final int MAX_SIZE = 500;
+
+    /**
+     * only offers for this item
+     */
+    private Long itemId;
+
+    /**
+     * only offers with this (effective) status
+     */
+    private Offer.Status status;
+
+    /**
+     * only offers in effect at this date: their period of applicability contains it and they had not been cancelled
+     * by then
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private Date activeAt;
+
+    /**
+     * only offers whose id is greater than this one
+     */
+    private Long after;
+
+    /**
+     * only offers whose id is lower than this one; can not be combined with after
+     */
+    private Long before;
+
+    /**
+     * the requested page size
+     */
+    private Integer size;
+
+    /**
+     * @return the page size to be used, bounded by MAX_SIZE
+     */
+    public int getPageSize() {
+        if (size == null || size < 1) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * @return true if the page has to be fetched backwards, from the before cursor
+     */
+    public boolean isBackwards() {
+        return before != null && after == null;
+    }
+}
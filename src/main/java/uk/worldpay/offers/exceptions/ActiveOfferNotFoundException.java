@@ -0,0 +1,28 @@
+package uk.worldpay.offers.exceptions;
+
+import java.time.Instant;
+
+/**
+ * Class ActiveOfferNotFoundException
+ *
+ * This exception will be thrown if there is any attempt to retrieve the offer of an item at an instant
+ * when no offer of the item is in effect.
+ *
+ * @author laurinf
+ *
+ */
+public class ActiveOfferNotFoundException extends OfferException {
+
+    private final Long itemId;
+    private final Instant at;
+
+    public ActiveOfferNotFoundException(Long itemId, Instant at) {
+        this.itemId = itemId;
+        this.at = at;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Could not find any offer for item " + itemId + " at " + at;
+    }
+}
@@ -10,8 +10,18 @@ import uk.worldpay.offers.domain.Offer;
  * @author laurinf
  *
  */
-public class CancelNotAllowedException extends RuntimeException {
+public class CancelNotAllowedException extends OfferException {
+
+    private final Long id;
+    private final Offer.Status status;
+
     public CancelNotAllowedException(Long id, Offer.Status status) {
-        super("Cancellation is not allowed for offer" + id + "with status " + status.getTextualStatus());
+        this.id = id;
+        this.status = status;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Cancellation is not allowed for offer " + id + " with status " + status.getTextualStatus();
     }
 }
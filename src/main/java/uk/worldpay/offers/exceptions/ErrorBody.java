@@ -0,0 +1,86 @@
+package uk.worldpay.offers.exceptions;
+
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class ErrorBody
+ *
+ * The body of the error responses of a status, {"status": 404, "error": "Not Found", "message": "..."}, encoded once
+ * up to the message: an error response only encodes its message and copies it between the preallocated bytes,
+ * without going through an object mapper. The headers of the responses are shared.
+ *
+ * @author laurinf
+ *
+ */
+final class ErrorBody {
+
+    private static final byte[] END = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final HttpHeaders HEADERS;
+
+    static {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        HEADERS = HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+
+    private final HttpStatus status;
+
+    private final byte[] start;
+
+    ErrorBody(HttpStatus status) {
+        this.status = status;
+        this.start = ("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase() + "\",\"message\":\"")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param message the message of the error
+     * @return the error response of the status with the message
+     */
+    ResponseEntity<byte[]> of(String message) {
+        String text = message == null ? "" : message;
+        byte[] body;
+        if (plain(text)) {
+            body = allocate(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                body[start.length + i] = (byte) text.charAt(i);
+            }
+        } else {
+            byte[] quoted = BufferRecyclers.quoteAsJsonUTF8(text);
+            body = allocate(quoted.length);
+            System.arraycopy(quoted, 0, body, start.length, quoted.length);
+        }
+        return new ResponseEntity<>(body, HEADERS, status);
+    }
+
+    /**
+     * @return true if the message is printable ASCII needing no escape, which is the case of the messages of the
+     *         offer exceptions: its characters are then copied as bytes
+     */
+    private static boolean plain(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a body for a message of the given encoded length, holding the bytes of the template around it
+     */
+    private byte[] allocate(int length) {
+        byte[] body = new byte[start.length + length + END.length];
+        System.arraycopy(start, 0, body, 0, start.length);
+        System.arraycopy(END, 0, body, start.length + length, END.length);
+        return body;
+    }
+}
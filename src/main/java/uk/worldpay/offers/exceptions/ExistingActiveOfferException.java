@@ -9,8 +9,16 @@ package uk.worldpay.offers.exceptions;
  * @author laurinf
  *
  */
-public class ExistingActiveOfferException extends RuntimeException {
+public class ExistingActiveOfferException extends OfferException {
+
+    private final Long id;
+
     public ExistingActiveOfferException(Long id) {
-        super("There is already an active offer for item " + id);
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return "There is already an active offer for item " + id;
     }
 }
@@ -0,0 +1,24 @@
+package uk.worldpay.offers.exceptions;
+
+/**
+ * Class IdempotencyKeyReusedException
+ *
+ * This exception will be thrown if an Idempotency-Key already used for the creation of an offer is sent again
+ * with a different offer
+ *
+ * @author laurinf
+ *
+ */
+public class IdempotencyKeyReusedException extends OfferException {
+
+    private final String key;
+
+    public IdempotencyKeyReusedException(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public String getMessage() {
+        return "The idempotency key " + key + " has already been used for another offer";
+    }
+}
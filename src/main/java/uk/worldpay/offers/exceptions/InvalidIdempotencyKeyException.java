@@ -0,0 +1,23 @@
+package uk.worldpay.offers.exceptions;
+
+/**
+ * Class InvalidIdempotencyKeyException
+ *
+ * This exception will be thrown if an Idempotency-Key header is empty or longer than the longest key recorded
+ *
+ * @author laurinf
+ *
+ */
+public class InvalidIdempotencyKeyException extends OfferException {
+
+    private final int maxLength;
+
+    public InvalidIdempotencyKeyException(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public String getMessage() {
+        return "The Idempotency-Key header must have 1 to " + maxLength + " characters";
+    }
+}
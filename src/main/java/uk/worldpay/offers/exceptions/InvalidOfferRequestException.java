@@ -0,0 +1,24 @@
+package uk.worldpay.offers.exceptions;
+
+/**
+ * Class InvalidOfferRequestException
+ *
+ * This exception will be thrown if the parameters or the body of a request are invalid: a window ending before it
+ * starts, a bulk cancellation without filter, offers in an unknown format or a CSV header lacking a column.
+ *
+ * @author laurinf
+ *
+ */
+public class InvalidOfferRequestException extends OfferException {
+
+    private final String reason;
+
+    public InvalidOfferRequestException(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public String getMessage() {
+        return reason;
+    }
+}
@@ -1,41 +1,110 @@
 package uk.worldpay.offers.exceptions;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class ControllerAdvice
  *
  * Class in charge of creating HTTP error values for the operations in OfferController
  *
+ * The errors are returned as JSON bodies {"status", "error", "message"} written from the ErrorBody of their status.
+ * Each handled exception is counted in the offers.errors counter, tagged with the exception type; the counter of each
+ * type is looked up once.
+ *
  * @author laurinf
  *
  */
 @ControllerAdvice
+@RequiredArgsConstructor
 class OfferControllerAdvice {
 
-    @ResponseBody
+    private static final ErrorBody NOT_FOUND = new ErrorBody(HttpStatus.NOT_FOUND);
+    private static final ErrorBody METHOD_NOT_ALLOWED = new ErrorBody(HttpStatus.METHOD_NOT_ALLOWED);
+    private static final ErrorBody PRECONDITION_FAILED = new ErrorBody(HttpStatus.PRECONDITION_FAILED);
+    private static final ErrorBody CONFLICT = new ErrorBody(HttpStatus.CONFLICT);
+    private static final ErrorBody BAD_REQUEST = new ErrorBody(HttpStatus.BAD_REQUEST);
+    private static final ErrorBody UNPROCESSABLE_ENTITY = new ErrorBody(HttpStatus.UNPROCESSABLE_ENTITY);
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    private final Map<Class<?>, Counter> counters = new ConcurrentHashMap<>();
+
+    private void count(Exception ex) {
+        Counter counter = counters.computeIfAbsent(ex.getClass(), type -> {
+            MeterRegistry r = registry.getIfAvailable();
+            return r == null ? null : r.counter("offers.errors", "exception", type.getSimpleName());
+        });
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
     @ExceptionHandler(OfferNotFoundException.class)
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    String offerNotFoundHandler(OfferNotFoundException ex) {
-        return ex.getMessage();
+    ResponseEntity<byte[]> offerNotFoundHandler(OfferNotFoundException ex) {
+        count(ex);
+        return NOT_FOUND.of(ex.getMessage());
+    }
+
+    @ExceptionHandler(ActiveOfferNotFoundException.class)
+    ResponseEntity<byte[]> activeOfferNotFoundHandler(ActiveOfferNotFoundException ex) {
+        count(ex);
+        return NOT_FOUND.of(ex.getMessage());
     }
 
 
-    @ResponseBody
     @ExceptionHandler(CancelNotAllowedException.class)
-    @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
-    String cancelNotAllowedHandler(CancelNotAllowedException ex) {
-        return ex.getMessage();
+    ResponseEntity<byte[]> cancelNotAllowedHandler(CancelNotAllowedException ex) {
+        count(ex);
+        return METHOD_NOT_ALLOWED.of(ex.getMessage());
+    }
+
+    @ExceptionHandler(OfferVersionMismatchException.class)
+    ResponseEntity<byte[]> offerVersionMismatchHandler(OfferVersionMismatchException ex) {
+        count(ex);
+        return PRECONDITION_FAILED.of(ex.getMessage());
+    }
+
+    /**
+     * an offer updated by another transaction between the read and the write of an update
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    ResponseEntity<byte[]> optimisticLockingFailureHandler(OptimisticLockingFailureException ex) {
+        count(ex);
+        return CONFLICT.of("The offer has been updated concurrently, read it again");
+    }
+
+    @ExceptionHandler(InvalidOfferRequestException.class)
+    ResponseEntity<byte[]> invalidOfferRequestHandler(InvalidOfferRequestException ex) {
+        count(ex);
+        return BAD_REQUEST.of(ex.getMessage());
     }
 
-    @ResponseBody
     @ExceptionHandler(ExistingActiveOfferException.class)
-    @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
-    String existingActiveOfferHandler(ExistingActiveOfferException ex) {
-        return ex.getMessage();
+    ResponseEntity<byte[]> existingActiveOfferHandler(ExistingActiveOfferException ex) {
+        count(ex);
+        return METHOD_NOT_ALLOWED.of(ex.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    ResponseEntity<byte[]> idempotencyKeyReusedHandler(IdempotencyKeyReusedException ex) {
+        count(ex);
+        return UNPROCESSABLE_ENTITY.of(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    ResponseEntity<byte[]> invalidIdempotencyKeyHandler(InvalidIdempotencyKeyException ex) {
+        count(ex);
+        return BAD_REQUEST.of(ex.getMessage());
     }
-}
\ No newline at end of file
+}
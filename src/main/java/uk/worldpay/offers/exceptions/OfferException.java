@@ -0,0 +1,21 @@
+package uk.worldpay.offers.exceptions;
+
+/**
+ * Class OfferException
+ *
+ * Base class of the exceptions answered by OfferControllerAdvice with an error response. These are expected outcomes
+ * of a request (unknown id, offer no longer cancellable...), sent at high rates by crawlers and retrying clients:
+ * they do not capture a stack trace, and their message is only built when it is read.
+ *
+ * @author laurinf
+ *
+ */
+public abstract class OfferException extends RuntimeException {
+
+    protected OfferException() {
+        super(null, null, false, false);
+    }
+
+    @Override
+    public abstract String getMessage();
+}
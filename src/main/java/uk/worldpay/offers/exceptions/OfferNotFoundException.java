@@ -8,9 +8,16 @@ package uk.worldpay.offers.exceptions;
  * @author laurinf
  *
  */
-public class OfferNotFoundException extends RuntimeException {
+public class OfferNotFoundException extends OfferException {
+
+    private final Long id;
 
     public OfferNotFoundException(Long id) {
-        super("Could not find offer " + id);
+        this.id = id;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Could not find offer " + id;
     }
-}
\ No newline at end of file
+}
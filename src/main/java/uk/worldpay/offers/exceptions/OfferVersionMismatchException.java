@@ -0,0 +1,37 @@
+package uk.worldpay.offers.exceptions;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+/**
+ * Class OfferVersionMismatchException
+ *
+ * This exception will be thrown if there is any attempt to update an offer from a version, or from one of several
+ * versions, that is no longer its current version.
+ *
+ * @author laurinf
+ *
+ */
+public class OfferVersionMismatchException extends OfferException {
+
+    private final Long id;
+    private final Collection<Long> expected;
+    private final Long current;
+
+    public OfferVersionMismatchException(Long id, Long expected, Long current) {
+        this(id, Collections.singleton(expected), current);
+    }
+
+    public OfferVersionMismatchException(Long id, Collection<Long> expected, Long current) {
+        this.id = id;
+        this.expected = expected;
+        this.current = current;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Offer " + id + " is at version " + current + ", not at version "
+                + expected.stream().map(String::valueOf).collect(Collectors.joining(" or "));
+    }
+}
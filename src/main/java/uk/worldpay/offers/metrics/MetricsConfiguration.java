@@ -0,0 +1,26 @@
+package uk.worldpay.offers.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Class MetricsConfiguration
+ *
+ * Registers the filter recording the number of SQL statements per request
+ *
+ * @author laurinf
+ *
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public FilterRegistrationBean<StatementCountFilter> statementCountFilter(MeterRegistry registry) {
+        FilterRegistrationBean<StatementCountFilter> registration =
+                new FilterRegistrationBean<>(new StatementCountFilter(registry));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
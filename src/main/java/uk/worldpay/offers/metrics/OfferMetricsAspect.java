@@ -0,0 +1,53 @@
+package uk.worldpay.offers.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Class OfferMetricsAspect
+ *
+ * Times every call to the OfferService and OfferRepository methods:
+ *
+ *   offers.service tagged with the method and the exception thrown (none if it returned)
+ *   offers.repository tagged with the method and the exception thrown (none if it returned)
+ *
+ * Their percentiles are configured with management.metrics.distribution.percentiles.offers
+ *
+ * @author laurinf
+ *
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class OfferMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    @Around("execution(public * uk.worldpay.offers.service.OfferService+.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("offers.service", joinPoint);
+    }
+
+    @Around("execution(* *(..)) && target(uk.worldpay.offers.repository.OfferRepository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time("offers.repository", joinPoint);
+    }
+
+    private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(registry.timer(name, "method", joinPoint.getSignature().getName(), "exception", exception));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package uk.worldpay.offers.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Class StatementCounter
+ *
+ * Hibernate StatementInspector counting the SQL statements prepared by the current thread.
+ * It is registered with the property spring.jpa.properties.hibernate.session_factory.statement_inspector
+ *
+ * @author laurinf
+ *
+ */
+public class StatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Resets the count of the current thread
+     */
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    /**
+     * @return the number of statements prepared by the current thread since the last reset
+     */
+    public static int count() {
+        return COUNT.get()[0];
+    }
+}
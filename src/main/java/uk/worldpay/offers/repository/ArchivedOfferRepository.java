@@ -0,0 +1,82 @@
+package uk.worldpay.offers.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import uk.worldpay.offers.domain.ArchivedOffer;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Interface ArchivedOfferRepository
+ *
+ * Provides the archived offers, and moves the offers out of the offer table into the archive
+ *
+ * @author laurinf
+ *
+ */
+public interface ArchivedOfferRepository extends JpaRepository<ArchivedOffer, Long>, ArchivedOfferRepositoryCustom {
+
+    List<ArchivedOffer> findByItemIdOrderById(Long itemId);
+
+    /**
+     * Finds the archived offers of the item in effect at the given date (see OfferRepository.findInEffect)
+     *
+     * @param itemId the id of the item
+     * @param at the date
+     * @return the offers in effect, the most recent first
+     */
+    @Query("select o from ArchivedOffer o where o.itemId = :itemId and o.startDate <= :at and o.endDate >= :at " +
+            "and (o.cancelDate is null or o.cancelDate > :at) order by o.id desc")
+    List<ArchivedOffer> findInEffect(@Param("itemId") Long itemId, @Param("at") Date at);
+
+    /**
+     * Finds the archived offers of the given items in effect at the given date
+     *
+     * @param itemIds the ids of the items
+     * @param at the date
+     * @return the offers in effect, the most recent first
+     */
+    @Query("select o from ArchivedOffer o where o.itemId in :itemIds and o.startDate <= :at and o.endDate >= :at " +
+            "and (o.cancelDate is null or o.cancelDate > :at) order by o.id desc")
+    List<ArchivedOffer> findInEffectByItem(@Param("itemIds") Collection<Long> itemIds, @Param("at") Date at);
+
+    /**
+     * Finds the ids of the offers of the offer table that have been EXPIRED or CANCELLED since before the given date
+     *
+     * @param before the date
+     * @param page the first page of the size of a batch
+     * @return the ids of the offers to be archived, in id order
+     */
+    @Query("select o.id from Offer o where (o.status = uk.worldpay.offers.domain.Offer$Status.EXPIRED " +
+            "and o.endDate < :before) or (o.status = uk.worldpay.offers.domain.Offer$Status.CANCELLED " +
+            "and o.cancelDate < :before) order by o.id")
+    List<Long> findArchivableIds(@Param("before") Date before, Pageable page);
+
+    /**
+     * Copies offers of the offer table into the archive, in a single statement
+     *
+     * @param ids the ids of the offers
+     * @param now the archiving date
+     * @return the number of archived offers
+     */
+    @Modifying
+    @Query("insert into ArchivedOffer (id, itemId, description, price, creationDate, startDate, endDate, status, " +
+            "cancelDate, version, archiveDate) select o.id, o.itemId, o.description, o.price, o.creationDate, " +
+            "o.startDate, o.endDate, o.status, o.cancelDate, o.version, :now from Offer o where o.id in :ids")
+    int copyFromOffers(@Param("ids") Collection<Long> ids, @Param("now") Date now);
+
+    /**
+     * Deletes offers of the offer table, in a single statement
+     *
+     * @param ids the ids of the offers
+     * @return the number of deleted offers
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Offer o where o.id in :ids")
+    int deleteFromOffers(@Param("ids") Collection<Long> ids);
+}
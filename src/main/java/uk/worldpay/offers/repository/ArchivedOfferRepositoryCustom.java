@@ -0,0 +1,29 @@
+package uk.worldpay.offers.repository;
+
+import uk.worldpay.offers.domain.ArchivedOffer;
+
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * Interface ArchivedOfferRepositoryCustom
+ *
+ * Provides the ArchivedOffer queries that can not be declared with a query annotation
+ *
+ * @author laurinf
+ *
+ */
+public interface ArchivedOfferRepositoryCustom {
+
+    /**
+     * Returns the archived offers of the item whose period overlaps [from, to] (see OfferRepository.streamTimeline),
+     * ordered by starting date then id, read from a forward-only database cursor and detached as they are read.
+     * The stream has to be consumed inside a transaction and closed.
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window
+     * @param to the end of the window
+     * @return a stream of the archived offers of the item in the window
+     */
+    Stream<ArchivedOffer> streamTimeline(Long itemId, Date from, Date to);
+}
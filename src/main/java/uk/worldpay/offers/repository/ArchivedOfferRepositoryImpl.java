@@ -0,0 +1,41 @@
+package uk.worldpay.offers.repository;
+
+import org.hibernate.jpa.QueryHints;
+import uk.worldpay.offers.domain.ArchivedOffer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * Class ArchivedOfferRepositoryImpl
+ *
+ * JPA implementation of ArchivedOfferRepositoryCustom, merged by Spring Data into ArchivedOfferRepository
+ *
+ * @author laurinf
+ *
+ */
+class ArchivedOfferRepositoryImpl implements ArchivedOfferRepositoryCustom {
+
+    /**
+     * number of rows fetched from the database at a time by the cursors of the streams
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Stream<ArchivedOffer> streamTimeline(Long itemId, Date from, Date to) {
+        return entityManager.createQuery("select o from ArchivedOffer o where o.itemId = :itemId " +
+                "and o.startDate <= :to and o.endDate >= :from order by o.startDate, o.id", ArchivedOffer.class)
+                .setParameter("itemId", itemId)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .peek(entityManager::detach);
+    }
+}
@@ -0,0 +1,38 @@
+package uk.worldpay.offers.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import uk.worldpay.offers.domain.IdempotencyRecord;
+
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Interface IdempotencyRecordRepository
+ *
+ * Provides the first results of the creations of offers by idempotency key, shared by the nodes of the database
+ *
+ * @author laurinf
+ *
+ */
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * @param key the idempotency key
+     * @param after the oldest creation date still kept
+     * @return the first result recorded with the key after the date
+     */
+    Optional<IdempotencyRecord> findByKeyAndCreationDateAfter(String key, Date after);
+
+    /**
+     * Deletes the results recorded before a date
+     *
+     * @param before the date
+     * @return the number of deleted results
+     */
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.creationDate < :before")
+    int deleteCreatedBefore(@Param("before") Date before);
+}
@@ -0,0 +1,949 @@
+package uk.worldpay.offers.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.support.ExampleMatcherAccessor;
+import org.springframework.data.util.ClassTypeInformation;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Class InMemoryOfferRepository
+ *
+ * OfferRepository keeping the offers in memory instead of in a database, selected with the profile inmemory
+ * (which also leaves the DataSource and Hibernate out of the application context).
+ *
+ * The offers are kept as compact OfferRecords in a primitive long map by id, and the ids of the offers of each item
+ * in a sorted primitive set, in a primitive long map by item id: no Long, Date or map entry is allocated per offer.
+ * Ids are allocated from a counter, so that scanning the offers in id order needs no sorted structure.
+ *
+ * Reads share a lock, writes hold it exclusively. Writes are visible to every reader at once, without isolation, but
+ * the writes made in a transaction are undone if it rolls back: the record each offer had before the first write of
+ * the transaction is restored, unless another transaction has written the offer since.
+ *
+ * Sorting and query by example compare the properties of the offers as the database would, nulls first in ascending
+ * order.
+ *
+ * When offers.store.directory is set, the offers are persisted by an OfferJournal: every write appends its changes
+ * to the log of the journal before releasing the lock, and the repository is restored from the journal when created.
+ *
+ * @author laurinf
+ *
+ */
+@Repository
+@Profile("inmemory")
+public class InMemoryOfferRepository implements OfferRepository {
+
+    private final LongObjectMap<OfferRecord> offers = new LongObjectMap<>(1024);
+
+    private final LongObjectMap<SortedLongSet> offerIdsByItem = new LongObjectMap<>(1024);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * number of cancelled offers handed out at a time by cancelAll
+     */
+    private static final int CANCEL_BATCH_SIZE = 1000;
+
+    /**
+     * the properties of an offer that can be sorted on and matched by example, by name
+     */
+    private static final Map<String, Function<Offer, Object>> PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        PROPERTIES.put("id", Offer::getId);
+        PROPERTIES.put("itemId", Offer::getItemId);
+        PROPERTIES.put("description", Offer::getDescription);
+        PROPERTIES.put("price", Offer::getPrice);
+        PROPERTIES.put("creationDate", Offer::getCreationDate);
+        PROPERTIES.put("startDate", Offer::getStartDate);
+        PROPERTIES.put("endDate", Offer::getEndDate);
+        PROPERTIES.put("status", Offer::getStatus);
+        PROPERTIES.put("cancelDate", Offer::getCancelDate);
+        PROPERTIES.put("version", Offer::getVersion);
+    }
+
+    /**
+     * the last allocated id
+     */
+    private long lastId;
+
+    /**
+     * the journal persisting the offers, null if they are only kept in memory
+     */
+    private final OfferJournal journal;
+
+    public InMemoryOfferRepository() {
+        this(Optional.empty());
+    }
+
+    /**
+     * @param journal the journal to restore the offers from and to persist them to, if any
+     */
+    @Autowired
+    public InMemoryOfferRepository(Optional<OfferJournal> journal) {
+        this.journal = journal.orElse(null);
+        if (this.journal != null) {
+            this.journal.open(new JournalState());
+        }
+    }
+
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a write under the exclusive lock. Its changes are written to the journal before the lock is released,
+     * so that the log holds them in the order they were made, and synced after, so that the syncs of concurrent
+     * writes can be grouped.
+     */
+    private <T> T write(Supplier<T> action) {
+        long position = 0;
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            if (journal != null) {
+                position = journal.flush();
+            }
+            lock.writeLock().unlock();
+            if (journal != null) {
+                journal.sync(position);
+            }
+        }
+    }
+
+    /**
+     * Stores a record, replacing the record of the same id, and appends it to the journal
+     */
+    private void put(OfferRecord record) {
+        changed(record.id, offers.put(record.id, record), record);
+        if (journal != null) {
+            journal.put(record);
+        }
+    }
+
+    /**
+     * Records a write to an offer in the undo log of the current transaction, if there is one
+     *
+     * @param before the record replaced or removed, null if the offer is inserted
+     * @param after the record stored, null if the offer is removed
+     */
+    private void changed(long id, OfferRecord before, OfferRecord after) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Undo undo = null;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof Undo && ((Undo) synchronization).repository() == this) {
+                undo = (Undo) synchronization;
+            }
+        }
+        if (undo == null) {
+            undo = new Undo();
+            TransactionSynchronizationManager.registerSynchronization(undo);
+        }
+        undo.changed(id, before, after);
+    }
+
+    /**
+     * Stores a record, or removes the offer if it is null, and appends the change to the journal, without recording
+     * it in the undo log
+     */
+    private void restore(long id, OfferRecord record) {
+        OfferRecord current = record == null ? offers.remove(id) : offers.put(id, record);
+        if (current != null && (record == null || current.itemId != record.itemId)) {
+            offerIdsByItem.get(current.itemId).remove(id);
+        }
+        if (record != null) {
+            idsOfItem(record.itemId).add(id);
+        }
+        if (journal != null) {
+            if (record == null) {
+                journal.remove(id);
+            } else {
+                journal.put(record);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the offers of the item, added to the index if it has none yet
+     */
+    private SortedLongSet idsOfItem(long itemId) {
+        SortedLongSet ids = offerIdsByItem.get(itemId);
+        if (ids == null) {
+            ids = new SortedLongSet();
+            offerIdsByItem.put(itemId, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Saves an offer: an offer without id, or with an unknown id, is inserted with a new id, a creation date, the
+     * CREATED status and version 0, as JPA would do; an offer with a known id is updated and its version incremented,
+     * unless it has been updated since it was read. The given offer is returned.
+     *
+     * @throws ObjectOptimisticLockingFailureException if the version of the offer is not the stored version
+     */
+    @Override
+    public <S extends Offer> S save(S offer) {
+        return write(() -> store(offer));
+    }
+
+    private <S extends Offer> S store(S offer) {
+        if (offer.getItemId() == null || offer.getPrice() == null
+                || offer.getStartDate() == null || offer.getEndDate() == null) {
+            throw new DataIntegrityViolationException("The itemId, price, startDate and endDate of an offer are mandatory");
+        }
+        OfferRecord previous = offer.getId() == null ? null : offers.get(offer.getId());
+        if (previous == null) {
+            offer.setId(++lastId);
+            offer.setCreationDate(new Date());
+            offer.setStatus(Offer.Status.CREATED);
+            offer.setVersion(0L);
+        } else if (offer.getStatus() == null) {
+            throw new DataIntegrityViolationException("The status of an offer is mandatory");
+        } else if (offer.getVersion() != null && offer.getVersion() != previous.version) {
+            throw new ObjectOptimisticLockingFailureException(Offer.class, offer.getId());
+        } else {
+            offer.setVersion(previous.version + 1);
+            if (previous.itemId != offer.getItemId()) {
+                offerIdsByItem.get(previous.itemId).remove(previous.id);
+            }
+        }
+        put(OfferRecord.of(offer));
+        idsOfItem(offer.getItemId()).add(offer.getId());
+        return offer;
+    }
+
+    @Override
+    public <S extends Offer> List<S> saveAll(Iterable<S> entities) {
+        return write(() -> {
+            List<S> saved = new ArrayList<>();
+            entities.forEach(offer -> saved.add(store(offer)));
+            return saved;
+        });
+    }
+
+    @Override
+    public <S extends Offer> S saveAndFlush(S offer) {
+        return save(offer);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public Optional<Offer> findById(Long id) {
+        return read(() -> Optional.ofNullable(offers.get(id)).map(OfferRecord::toOffer));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return read(() -> offers.get(id) != null);
+    }
+
+    @Override
+    public Offer getOne(Long id) {
+        return findById(id).orElseThrow(() -> new EntityNotFoundException("Could not find offer " + id));
+    }
+
+    @Override
+    public List<Offer> findAll() {
+        return findAll(offer -> true, Sort.unsorted());
+    }
+
+    @Override
+    public List<Offer> findAll(Sort sort) {
+        return findAll(offer -> true, sort);
+    }
+
+    @Override
+    public Page<Offer> findAll(Pageable pageable) {
+        return page(findAll(pageable.getSort()), pageable);
+    }
+
+    /**
+     * Copies the offers accepted by the filter under the read lock, in id order, then sorts them
+     *
+     * @throws PropertyReferenceException if the sort is on a property an offer does not have
+     */
+    private List<Offer> findAll(Predicate<Offer> filter, Sort sort) {
+        Comparator<Offer> comparator = sort.isSorted() ? comparator(sort) : null;
+        List<Offer> found = read(() -> {
+            List<Offer> all = new ArrayList<>();
+            for (long id = 1; id <= lastId; id++) {
+                OfferRecord record = offers.get(id);
+                if (record != null) {
+                    Offer offer = record.toOffer();
+                    if (filter.test(offer)) {
+                        all.add(offer);
+                    }
+                }
+            }
+            return all;
+        });
+        if (comparator != null) {
+            found.sort(comparator);
+        }
+        return found;
+    }
+
+    private static <T> Page<T> page(List<T> all, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(all);
+        }
+        int from = (int) Math.min(all.size(), pageable.getOffset());
+        int to = Math.min(all.size(), from + pageable.getPageSize());
+        return new PageImpl<>(new ArrayList<>(all.subList(from, to)), pageable, all.size());
+    }
+
+    /**
+     * Compares offers by the properties of the orders of the sort in turn. Without a null handling, nulls come first
+     * in ascending order and last in descending order, as in H2.
+     */
+    private static Comparator<Offer> comparator(Sort sort) {
+        Comparator<Offer> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Object> values = order.isIgnoreCase()
+                    ? InMemoryOfferRepository::compareIgnoringCase
+                    : InMemoryOfferRepository::compare;
+            if (order.isDescending()) {
+                values = values.reversed();
+            }
+            switch (order.getNullHandling()) {
+                case NULLS_FIRST:
+                    values = Comparator.nullsFirst(values);
+                    break;
+                case NULLS_LAST:
+                    values = Comparator.nullsLast(values);
+                    break;
+                default:
+                    values = order.isAscending() ? Comparator.nullsFirst(values) : Comparator.nullsLast(values);
+            }
+            comparator = comparator.thenComparing(property(order.getProperty()), values);
+        }
+        return comparator;
+    }
+
+    private static Function<Offer, Object> property(String name) {
+        Function<Offer, Object> property = PROPERTIES.get(name);
+        if (property == null) {
+            throw new PropertyReferenceException(name, ClassTypeInformation.from(Offer.class), Collections.emptyList());
+        }
+        return property;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static int compareIgnoringCase(Object a, Object b) {
+        if (a instanceof String && b instanceof String) {
+            return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+        }
+        return compare(a, b);
+    }
+
+    @Override
+    public List<Offer> findAllById(Iterable<Long> ids) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            for (Long id : ids) {
+                OfferRecord record = offers.get(id);
+                if (record != null) {
+                    found.add(record.toOffer());
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public long count() {
+        return read(offers::size);
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        write(() -> {
+            OfferRecord record = offers.remove(id);
+            if (record != null) {
+                offerIdsByItem.get(record.itemId).remove(id);
+                changed(id, record, null);
+                if (journal != null) {
+                    journal.remove(id);
+                }
+            }
+            return record;
+        });
+    }
+
+    @Override
+    public void delete(Offer offer) {
+        deleteById(offer.getId());
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Offer> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteInBatch(Iterable<Offer> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAll() {
+        write(() -> {
+            offers.forEachValue(record -> changed(record.id, record, null));
+            offers.clear();
+            offerIdsByItem.clear();
+            if (journal != null) {
+                journal.clear();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    @Override
+    public List<Offer> findByItemIdAndStatus(Long itemId, Offer.Status status) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            forEachOfItem(itemId, record -> {
+                if (record.status() == status) {
+                    found.add(record.toOffer());
+                }
+            });
+            return found;
+        });
+    }
+
+    @Override
+    public List<Offer> findByStatusIn(Collection<Offer.Status> statuses) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            offers.forEachValue(record -> {
+                if (record.hasStatus(statuses)) {
+                    found.add(record.toOffer());
+                }
+            });
+            return found;
+        });
+    }
+
+    @Override
+    public List<Offer> findByItemIdInAndStatusIn(Collection<Long> itemIds, Collection<Offer.Status> statuses) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            for (Long itemId : itemIds) {
+                forEachOfItem(itemId, record -> {
+                    if (record.hasStatus(statuses)) {
+                        found.add(record.toOffer());
+                    }
+                });
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public List<Offer> findByItemIdOrderById(Long itemId) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            forEachOfItem(itemId, record -> found.add(record.toOffer()));
+            return found;
+        });
+    }
+
+    @Override
+    public List<Offer> findByIdInAndStatusIn(Collection<Long> ids, Collection<Offer.Status> statuses) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            for (Long id : ids) {
+                OfferRecord record = offers.get(id);
+                if (record != null && record.hasStatus(statuses)) {
+                    found.add(record.toOffer());
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public boolean existsOverlapping(Long itemId, Collection<Offer.Status> statuses, Date startDate, Date endDate,
+                                     Date now) {
+        return read(() -> {
+            SortedLongSet ids = offerIdsByItem.get(itemId);
+            for (int i = 0; ids != null && i < ids.size(); i++) {
+                OfferRecord record = offers.get(ids.get(i));
+                if (record.hasStatus(statuses) && record.startDate <= endDate.getTime()
+                        && record.endDate >= startDate.getTime() && record.endDate >= now.getTime()) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public List<Offer> findInEffect(Long itemId, Date at) {
+        return read(() -> {
+            List<Offer> found = new ArrayList<>();
+            SortedLongSet ids = offerIdsByItem.get(itemId);
+            for (int i = ids == null ? -1 : ids.size() - 1; i >= 0; i--) {
+                OfferRecord record = offers.get(ids.get(i));
+                if (record.inEffectAt(at.getTime())) {
+                    found.add(record.toOffer());
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Map<Long, Offer> findInEffectByItem(Collection<Long> itemIds, Date at) {
+        return read(() -> {
+            Map<Long, Offer> found = new HashMap<>();
+            for (Long itemId : itemIds) {
+                SortedLongSet ids = offerIdsByItem.get(itemId);
+                for (int i = ids == null ? -1 : ids.size() - 1; i >= 0; i--) {
+                    OfferRecord record = offers.get(ids.get(i));
+                    if (record.inEffectAt(at.getTime())) {
+                        found.put(itemId, record.toOffer());
+                        break;
+                    }
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public int updateStatusOfStarted(Collection<Offer.Status> statuses, Offer.Status newStatus, Date now) {
+        long t = now.getTime();
+        return updateStatus(r -> r.hasStatus(statuses) && r.startDate <= t && r.endDate >= t, newStatus);
+    }
+
+    @Override
+    public int updateStatusOfEnded(Collection<Offer.Status> statuses, Offer.Status newStatus, Date now) {
+        long t = now.getTime();
+        return updateStatus(r -> r.hasStatus(statuses) && r.endDate < t, newStatus);
+    }
+
+    @Override
+    public int updateStatusOfIds(Collection<Long> ids, Collection<Offer.Status> statuses, Offer.Status newStatus) {
+        return write(() -> {
+            int updated = 0;
+            for (Long id : ids) {
+                OfferRecord record = offers.get(id);
+                if (record != null && record.hasStatus(statuses)) {
+                    put(record.withStatus(newStatus));
+                    updated++;
+                }
+            }
+            return updated;
+        });
+    }
+
+    private int updateStatus(Predicate<OfferRecord> filter, Offer.Status newStatus) {
+        return write(() -> {
+            List<OfferRecord> updated = new ArrayList<>();
+            offers.forEachValue(record -> {
+                if (filter.test(record)) {
+                    updated.add(record.withStatus(newStatus));
+                }
+            });
+            updated.forEach(this::put);
+            return updated.size();
+        });
+    }
+
+    @Override
+    public List<Offer> findPage(OfferQuery query, Date now, int limit) {
+        return read(() -> {
+            List<Offer> page = new ArrayList<>();
+            long t = now.getTime();
+            if (query.getItemId() != null) {
+                SortedLongSet ids = offerIdsByItem.get(query.getItemId());
+                if (ids == null) {
+                    return page;
+                }
+                if (query.isBackwards()) {
+                    for (int i = ids.indexAfter(query.getBefore() - 1) - 1; i >= 0 && page.size() < limit; i--) {
+                        addIfMatches(page, offers.get(ids.get(i)), query, t);
+                    }
+                } else {
+                    int first = query.getAfter() == null ? 0 : ids.indexAfter(query.getAfter());
+                    for (int i = first; i < ids.size() && page.size() < limit; i++) {
+                        addIfMatches(page, offers.get(ids.get(i)), query, t);
+                    }
+                }
+            } else if (query.isBackwards()) {
+                for (long id = Math.min(lastId, query.getBefore() - 1); id > 0 && page.size() < limit; id--) {
+                    addIfMatches(page, offers.get(id), query, t);
+                }
+            } else {
+                long first = query.getAfter() == null ? 1 : query.getAfter() + 1;
+                for (long id = Math.max(1, first); id <= lastId && page.size() < limit; id++) {
+                    addIfMatches(page, offers.get(id), query, t);
+                }
+            }
+            return page;
+        });
+    }
+
+    private void addIfMatches(List<Offer> page, OfferRecord record, OfferQuery query, long now) {
+        if (record == null) {
+            return;
+        }
+        if (query.getStatus() != null && !hasStatusAt(record, query.getStatus(), now)) {
+            return;
+        }
+        if (query.getActiveAt() != null && !record.inEffectAt(query.getActiveAt().getTime())) {
+            return;
+        }
+        page.add(record.toOffer());
+    }
+
+    /**
+     * Same as the predicate of the JPA findPage: the effective status (see Offer.statusAt) of the stored offer
+     */
+    private boolean hasStatusAt(OfferRecord record, Offer.Status status, long now) {
+        Offer.Status stored = record.status();
+        boolean running = stored == Offer.Status.CREATED || stored == Offer.Status.ACTIVE;
+        switch (status) {
+            case CREATED:
+                return stored == Offer.Status.CREATED && record.startDate > now && record.endDate >= now;
+            case ACTIVE:
+                return running && record.startDate <= now && record.endDate >= now;
+            case EXPIRED:
+                return stored == Offer.Status.EXPIRED || (running && record.endDate < now);
+            default:
+                return stored == status;
+        }
+    }
+
+    /**
+     * Streams the offers in id order, reading each one when it is consumed, so the memory used does not depend
+     * on the number of offers
+     */
+    @Override
+    public Stream<Offer> streamAll() {
+        long last = read(() -> lastId);
+        return LongStream.rangeClosed(1, last)
+                .mapToObj(id -> read(() -> offers.get(id)))
+                .filter(Objects::nonNull)
+                .map(OfferRecord::toOffer);
+    }
+
+    /**
+     * Cancels the offers at once under the write lock, then hands them out by batches of offers created from the
+     * compact records
+     */
+    @Override
+    public int cancelAll(OfferCancelQuery query, Date now, Consumer<List<Offer>> action) {
+        long t = now.getTime();
+        List<OfferRecord> cancelled = write(() -> {
+            List<OfferRecord> records = new ArrayList<>();
+            forEachMatching(query, record -> {
+                Offer.Status stored = record.status();
+                if ((stored == Offer.Status.CREATED || stored == Offer.Status.ACTIVE) && record.endDate >= t) {
+                    records.add(record.cancelledAt(t));
+                }
+            });
+            records.forEach(this::put);
+            return records;
+        });
+        for (int from = 0; from < cancelled.size(); from += CANCEL_BATCH_SIZE) {
+            List<Offer> batch = new ArrayList<>();
+            for (OfferRecord record : cancelled.subList(from, Math.min(cancelled.size(), from + CANCEL_BATCH_SIZE))) {
+                batch.add(record.toOffer());
+            }
+            action.accept(batch);
+        }
+        return cancelled.size();
+    }
+
+    /**
+     * Copies the offers of the item overlapping the window under the read lock, then sorts them by starting date
+     */
+    @Override
+    public Stream<Offer> streamTimeline(Long itemId, Date from, Date to) {
+        long start = from.getTime();
+        long end = to.getTime();
+        return read(() -> {
+            List<OfferRecord> found = new ArrayList<>();
+            forEachOfItem(itemId, record -> {
+                if (record.startDate <= end && record.endDate >= start) {
+                    found.add(record);
+                }
+            });
+            found.sort(Comparator.comparingLong((OfferRecord record) -> record.startDate)
+                    .thenComparingLong(record -> record.id));
+            return found.stream().map(OfferRecord::toOffer);
+        });
+    }
+
+    /**
+     * Applies the action to the offers of the item of the query, or to every offer if it has none,
+     * that end before the date of the query if it has one
+     */
+    private void forEachMatching(OfferCancelQuery query, Consumer<OfferRecord> action) {
+        long before = query.getEndingBefore() == null ? Long.MAX_VALUE : query.getEndingBefore().getTime();
+        Consumer<OfferRecord> filtered = record -> {
+            if (record.endDate < before) {
+                action.accept(record);
+            }
+        };
+        if (query.getItemId() != null) {
+            forEachOfItem(query.getItemId(), filtered);
+        } else {
+            offers.forEachValue(filtered);
+        }
+    }
+
+    private void forEachOfItem(Long itemId, Consumer<OfferRecord> action) {
+        SortedLongSet ids = offerIdsByItem.get(itemId);
+        for (int i = 0; ids != null && i < ids.size(); i++) {
+            action.accept(offers.get(ids.get(i)));
+        }
+    }
+
+    /**
+     * Restores the offers read by the journal at startup, and copies them for its snapshots
+     */
+    private final class JournalState implements OfferJournal.State {
+
+        @Override
+        public void restore(OfferRecord record) {
+            OfferRecord previous = offers.put(record.id, record);
+            if (previous != null && previous.itemId != record.itemId) {
+                offerIdsByItem.get(previous.itemId).remove(previous.id);
+            }
+            idsOfItem(record.itemId).add(record.id);
+            lastId = Math.max(lastId, record.id);
+        }
+
+        @Override
+        public void restoreRemoval(long id) {
+            OfferRecord record = offers.remove(id);
+            if (record != null) {
+                offerIdsByItem.get(record.itemId).remove(id);
+            }
+        }
+
+        @Override
+        public void restoreClear() {
+            offers.clear();
+            offerIdsByItem.clear();
+        }
+
+        @Override
+        public void restoreLastId(long id) {
+            lastId = Math.max(lastId, id);
+        }
+
+        /**
+         * Copies the references of the records, which are immutable, so the lock is only held for one pass over the ids
+         */
+        @Override
+        public OfferJournal.Snapshot capture() {
+            lock.writeLock().lock();
+            try {
+                List<OfferRecord> records = new ArrayList<>(offers.size());
+                for (long id = 1; id <= lastId; id++) {
+                    OfferRecord record = offers.get(id);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+                return new OfferJournal.Snapshot(journal.startGeneration(), lastId, records);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The writes made to the offers in a transaction: the record of each offer before the first write, and the record
+     * written last. They are undone if the transaction does not commit.
+     */
+    private final class Undo extends TransactionSynchronizationAdapter {
+
+        private final Map<Long, OfferRecord[]> changes = new HashMap<>();
+
+        InMemoryOfferRepository repository() {
+            return InMemoryOfferRepository.this;
+        }
+
+        void changed(long id, OfferRecord before, OfferRecord after) {
+            changes.computeIfAbsent(id, key -> new OfferRecord[] {before, null})[1] = after;
+        }
+
+        /**
+         * Restores the offers not written by another transaction since: the records are immutable, so an offer is
+         * unchanged if it still holds the record written last by this one
+         */
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+                return;
+            }
+            write(() -> {
+                changes.forEach((id, change) -> {
+                    if (offers.get(id) == change[1]) {
+                        restore(id, change[0]);
+                    }
+                });
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public <S extends Offer> Optional<S> findOne(Example<S> example) {
+        List<S> found = findAll(example);
+        if (found.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, found.size());
+        }
+        return found.stream().findFirst();
+    }
+
+    @Override
+    public <S extends Offer> List<S> findAll(Example<S> example) {
+        return findAll(example, Sort.unsorted());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <S extends Offer> List<S> findAll(Example<S> example, Sort sort) {
+        return (List<S>) findAll(matcher(example), sort);
+    }
+
+    @Override
+    public <S extends Offer> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return page(findAll(example, pageable.getSort()), pageable);
+    }
+
+    @Override
+    public <S extends Offer> long count(Example<S> example) {
+        return findAll(example).size();
+    }
+
+    @Override
+    public <S extends Offer> boolean exists(Example<S> example) {
+        return !findAll(example).isEmpty();
+    }
+
+    /**
+     * Matches the offers against the properties of the probe of the example as its matcher specifies: the null
+     * properties are ignored unless nulls are included, the strings are matched with the string matcher of their path
+     * and the other properties by equality.
+     */
+    private static Predicate<Offer> matcher(Example<? extends Offer> example) {
+        ExampleMatcherAccessor accessor = new ExampleMatcherAccessor(example.getMatcher());
+        Offer probe = example.getProbe();
+        List<Predicate<Offer>> predicates = new ArrayList<>();
+        PROPERTIES.forEach((path, property) -> {
+            if (accessor.isIgnoredPath(path)) {
+                return;
+            }
+            Object value = accessor.getValueTransformerForPath(path)
+                    .apply(Optional.ofNullable(property.apply(probe)))
+                    .orElse(null);
+            if (value == null) {
+                if (accessor.getNullHandler() == ExampleMatcher.NullHandler.INCLUDE) {
+                    predicates.add(offer -> property.apply(offer) == null);
+                }
+            } else if (value instanceof String) {
+                predicates.add(matching(property, (String) value, accessor.getStringMatcherForPath(path),
+                        accessor.isIgnoreCaseForPath(path)));
+            } else {
+                predicates.add(offer -> Objects.equals(property.apply(offer), value));
+            }
+        });
+        if (example.getMatcher().isAnyMatching() && !predicates.isEmpty()) {
+            return offer -> predicates.stream().anyMatch(predicate -> predicate.test(offer));
+        }
+        return offer -> predicates.stream().allMatch(predicate -> predicate.test(offer));
+    }
+
+    private static Predicate<Offer> matching(Function<Offer, Object> property, String probe,
+                                             ExampleMatcher.StringMatcher matcher, boolean ignoreCase) {
+        String expected = ignoreCase ? probe.toLowerCase() : probe;
+        Predicate<String> test;
+        switch (matcher) {
+            case STARTING:
+                test = value -> value.startsWith(expected);
+                break;
+            case ENDING:
+                test = value -> value.endsWith(expected);
+                break;
+            case CONTAINING:
+                test = value -> value.contains(expected);
+                break;
+            case REGEX:
+                Pattern pattern = Pattern.compile(probe, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+                test = value -> pattern.matcher(value).matches();
+                break;
+            default:
+                test = expected::equals;
+        }
+        return offer -> {
+            Object value = property.apply(offer);
+            return value != null && test.test(ignoreCase ? ((String) value).toLowerCase() : (String) value);
+        };
+    }
+}
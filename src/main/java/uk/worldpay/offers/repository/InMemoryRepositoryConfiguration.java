@@ -0,0 +1,61 @@
+package uk.worldpay.offers.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Class InMemoryRepositoryConfiguration
+ *
+ * Beans of the inmemory profile, in which there is no database. The transaction manager keeps the transactional
+ * services and their transaction synchronizations (item locks, index and cache updates) working; the in-memory
+ * repository undoes the writes of a rolled back transaction from one of them, but does not isolate transactions.
+ * The journal persists the offers when offers.store.directory is set.
+ *
+ * @author laurinf
+ *
+ */
+@Configuration
+@Profile("inmemory")
+class InMemoryRepositoryConfiguration {
+
+    @Bean
+    PlatformTransactionManager transactionManager() {
+        return new AbstractPlatformTransactionManager() {
+            @Override
+            protected Object doGetTransaction() {
+                return new Object();
+            }
+
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+            }
+
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+            }
+
+            @Override
+            protected void doRollback(DefaultTransactionStatus status) {
+            }
+        };
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty("offers.store.directory")
+    OfferJournal offerJournal(@Value("${offers.store.directory}") String directory,
+                              @Value("${offers.store.sync-interval:0}") long syncInterval,
+                              @Value("${offers.store.snapshot-interval:600000}") long snapshotInterval)
+            throws IOException {
+        return new OfferJournal(Paths.get(directory), syncInterval, snapshotInterval);
+    }
+}
@@ -0,0 +1,50 @@
+package uk.worldpay.offers.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import uk.worldpay.offers.domain.ItemLock;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Interface ItemLockRepository
+ *
+ * Provides the row level locks of the items
+ *
+ * @author laurinf
+ *
+ */
+public interface ItemLockRepository extends JpaRepository<ItemLock, Long>, ItemLockRepositoryCustom {
+
+    /**
+     * Locks the row of the item until the end of the current transaction
+     *
+     * @param itemId the id of the item
+     * @return the locked row, empty if the item has no row yet
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select l from ItemLock l where l.itemId = :itemId")
+    Optional<ItemLock> findForUpdate(@Param("itemId") Long itemId);
+
+    /**
+     * Locks the rows of the items, in item order, until the end of the current transaction
+     *
+     * @param itemIds the ids of the items
+     * @return the locked rows; the items without a row yet have none
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select l from ItemLock l where l.itemId in :itemIds order by l.itemId")
+    List<ItemLock> findAllForUpdate(@Param("itemIds") Collection<Long> itemIds);
+
+    /**
+     * @param itemIds the ids of the items
+     * @return the ids of the items that have a row, read without locking them
+     */
+    @Query("select l.itemId from ItemLock l where l.itemId in :itemIds")
+    List<Long> findItemIds(@Param("itemIds") Collection<Long> itemIds);
+}
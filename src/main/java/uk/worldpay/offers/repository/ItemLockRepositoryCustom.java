@@ -0,0 +1,23 @@
+package uk.worldpay.offers.repository;
+
+import java.util.List;
+
+/**
+ * Interface ItemLockRepositoryCustom
+ *
+ * Provides the creation of the row level locks of the items
+ *
+ * @author laurinf
+ *
+ */
+public interface ItemLockRepositoryCustom {
+
+    /**
+     * Inserts the rows of the items in the current transaction, in the given order, which locks them until the end
+     * of the transaction. A row inserted meanwhile by another transaction is locked instead, once that transaction
+     * has committed.
+     *
+     * @param itemIds the ids of the items without a row, sorted
+     */
+    void insertLocked(List<Long> itemIds);
+}
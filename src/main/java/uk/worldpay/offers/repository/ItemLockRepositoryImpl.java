@@ -0,0 +1,59 @@
+package uk.worldpay.offers.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Class ItemLockRepositoryImpl
+ *
+ * JDBC implementation of ItemLockRepositoryCustom, merged by Spring Data into ItemLockRepository.
+ *
+ * The rows are inserted on the connection of the current transaction rather than in a transaction of their own,
+ * which would hold a second pooled connection while the first one waits: enough concurrent creations for new items
+ * would then take every connection of the pool and wait for one another. A duplicate key is caught on the
+ * connection, before Hibernate marks the transaction for rollback; the database only rolls back the failed insert.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+class ItemLockRepositoryImpl implements ItemLockRepositoryCustom {
+
+    /**
+     * SQL state of a unique constraint violation
+     */
+    private static final String DUPLICATE_KEY = "23505";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void insertLocked(List<Long> itemIds) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into offer_item_lock (item_id) values (?)");
+                 PreparedStatement lock = connection.prepareStatement(
+                         "select item_id from offer_item_lock where item_id = ? for update")) {
+                for (Long itemId : itemIds) {
+                    try {
+                        insert.setLong(1, itemId);
+                        insert.executeUpdate();
+                    } catch (SQLException e) {
+                        if (!DUPLICATE_KEY.equals(e.getSQLState())) {
+                            throw e;
+                        }
+                        log.debug("Lock row of item {} created concurrently", itemId);
+                        lock.setLong(1, itemId);
+                        lock.executeQuery().close();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,170 @@
+package uk.worldpay.offers.repository;
+
+import java.util.function.Consumer;
+
+/**
+ * Class LongObjectMap
+ *
+ * Hash map from primitive long keys to values, with open addressing and linear probing,
+ * so that no Long and no entry object is allocated per key. Not thread safe.
+ *
+ * @author laurinf
+ *
+ */
+final class LongObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * marks a free slot; the key 0 itself is kept apart
+     */
+    private static final long FREE = 0L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : null;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            }
+            if (k == FREE) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the previous value of the key, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int i = slot(key);
+        for (; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                zeroValue = null;
+                size--;
+            }
+            return previous;
+        }
+        int i = slot(key);
+        for (; keys[i] != key; i = (i + 1) & mask) {
+            if (keys[i] == FREE) {
+                return null;
+            }
+        }
+        V previous = (V) values[i];
+        size--;
+        // shift back the following keys of the probe sequence, so that no tombstone is needed
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            if (((j - slot(keys[j])) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = FREE;
+        values[hole] = null;
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        if (hasZeroKey) {
+            action.accept(zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    void clear() {
+        allocate(16);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE) {
+                int j = slot(key);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = key;
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package uk.worldpay.offers.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Class OfferJournal
+ *
+ * Persists the offers of InMemoryOfferRepository in a directory, as a snapshot of every offer and an append-only log
+ * of the changes made since, so that the repository is rebuilt at startup without reading a database.
+ *
+ * Each change (an offer stored, an offer removed, every offer removed) is appended to the current log as one binary
+ * entry: its length, its content and a CRC32 of the content. The changes of a repository operation are written with
+ * one write call. The log is forced to the disk:
+ *
+ *   offers.store.sync-interval = 0: before the operation returns; concurrent operations share one force
+ *   offers.store.sync-interval > 0: every that many milliseconds, by a background thread
+ *   offers.store.sync-interval < 0: never, the operating system writes the log when it sees fit
+ *
+ * Every offers.store.snapshot-interval milliseconds, and when the journal is closed, the offers are copied under the
+ * write lock of the repository while a new log is started (the generation of the files is incremented); the copy
+ * is then written, outside the lock, as a new snapshot, and the older snapshots and logs are deleted.
+ *
+ * At startup the latest snapshot is read through memory mapped regions of the file, then the logs of its generation
+ * and of the later ones are replayed, up to the first incomplete or corrupted entry of each.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+public class OfferJournal implements Closeable {
+
+    private static final long SNAPSHOT_MAGIC = 0x4f46464552534e50L;
+    private static final int FORMAT = 1;
+
+    private static final String LOG = ".log";
+    private static final String SNAPSHOT = ".snapshot";
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    /**
+     * largest region of a file mapped at once
+     */
+    private static final long REGION = 1L << 30;
+
+    /**
+     * size of the snapshot header: magic, format, generation, last id, number of offers
+     */
+    private static final int HEADER = 8 + 4 + 8 + 8 + 4;
+
+    /**
+     * size of an offer without its description: 8 longs or doubles, the status and the length of the description
+     */
+    private static final int RECORD = 8 * 8 + 1 + 4;
+
+    private final Path directory;
+
+    private final long syncInterval;
+
+    private final long snapshotInterval;
+
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "offer-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * the entries not yet written to the log, filled and written under the write lock of the repository
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    private FileChannel current;
+
+    private long generation;
+
+    /**
+     * the number of bytes written to the logs since the journal was opened
+     */
+    private volatile long written;
+
+    /**
+     * the number of bytes written to the logs and forced to the disk
+     */
+    private volatile long synced;
+
+    private final Object syncLock = new Object();
+
+    private State state;
+
+    /**
+     * The state of the repository: receives the offers read at startup and provides copies of the offers
+     */
+    interface State {
+
+        void restore(OfferRecord record);
+
+        void restoreRemoval(long id);
+
+        void restoreClear();
+
+        void restoreLastId(long lastId);
+
+        /**
+         * Copies the offers under the write lock, calling startGeneration before releasing it
+         */
+        Snapshot capture();
+    }
+
+    /**
+     * The offers of the repository at the start of a generation
+     */
+    static final class Snapshot {
+
+        final long generation;
+        final long lastId;
+        final List<OfferRecord> records;
+
+        Snapshot(long generation, long lastId, List<OfferRecord> records) {
+            this.generation = generation;
+            this.lastId = lastId;
+            this.records = records;
+        }
+    }
+
+    /**
+     * @param directory the directory of the snapshots and logs, created if missing
+     * @param syncInterval the interval between two forces of the log to the disk, in milliseconds (see above)
+     * @param snapshotInterval the interval between two snapshots, in milliseconds
+     */
+    public OfferJournal(Path directory, long syncInterval, long snapshotInterval) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.syncInterval = syncInterval;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Restores the state of the repository from the latest snapshot and the logs, then starts a new log
+     * and the background syncs and snapshots
+     */
+    synchronized void open(State state) {
+        try {
+            long start = System.nanoTime();
+            long snapshot = generations(SNAPSHOT).stream().reduce(0L, Math::max);
+            int offers = snapshot > 0 ? readSnapshot(file(snapshot, SNAPSHOT), state) : 0;
+            long changes = 0;
+            long last = snapshot;
+            for (long g : generations(LOG)) {
+                if (g >= snapshot) {
+                    changes += replay(file(g, LOG), state);
+                    last = Math.max(last, g);
+                }
+            }
+            startGeneration(last + 1);
+            log.info("Offer journal {} restored: {} offers from snapshot {}, {} changes from the logs, in {} ms",
+                    directory, offers, snapshot, changes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore the offers from " + directory, e);
+        }
+        this.state = state;
+        if (syncInterval > 0) {
+            background.scheduleWithFixedDelay(this::syncAll, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotInterval > 0) {
+            background.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval, snapshotInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Path file(long generation, String suffix) {
+        return directory.resolve(String.format("offers-%019d%s", generation, suffix));
+    }
+
+    private List<Long> generations(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("offers-") && name.endsWith(suffix))
+                    .map(name -> Long.valueOf(name.substring("offers-".length(), name.length() - suffix.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Starts a new generation: the current log is written and forced to the disk, and a new log is created.
+     * Called under the write lock of the repository.
+     *
+     * @return the new generation
+     */
+    synchronized long startGeneration() {
+        flush();
+        syncAll();
+        try {
+            current.close();
+            startGeneration(generation + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return generation;
+    }
+
+    private void startGeneration(long next) throws IOException {
+        current = FileChannel.open(file(next, LOG),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        generation = next;
+    }
+
+    /**
+     * Appends the storage of an offer to the pending entries
+     */
+    void put(OfferRecord record) {
+        byte[] description = record.description == null ? null : record.description.getBytes(StandardCharsets.UTF_8);
+        int start = begin(1 + RECORD + (description == null ? 0 : description.length));
+        pending.put(PUT);
+        writeRecord(pending, record, description);
+        end(start);
+    }
+
+    /**
+     * Appends the removal of an offer to the pending entries
+     */
+    void remove(long id) {
+        int start = begin(1 + 8);
+        pending.put(REMOVE).putLong(id);
+        end(start);
+    }
+
+    /**
+     * Appends the removal of every offer to the pending entries
+     */
+    void clear() {
+        int start = begin(1);
+        pending.put(CLEAR);
+        end(start);
+    }
+
+    private int begin(int length) {
+        if (pending.remaining() < 4 + length + 4) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length + 8));
+            pending.flip();
+            pending = larger.put(pending);
+        }
+        pending.putInt(length);
+        return pending.position();
+    }
+
+    private void end(int start) {
+        crc.reset();
+        crc.update(pending.array(), start, pending.position() - start);
+        pending.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Writes the pending entries to the log. Called under the write lock of the repository, so that the entries are
+     * written in the order of the changes.
+     *
+     * @return the position to sync up to for the changes to be on the disk
+     */
+    long flush() {
+        if (pending.position() == 0) {
+            return written;
+        }
+        pending.flip();
+        try {
+            long bytes = 0;
+            while (pending.hasRemaining()) {
+                bytes += current.write(pending);
+            }
+            written += bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the offer journal", e);
+        } finally {
+            pending.clear();
+            if (pending.capacity() > 1024 * 1024) {
+                pending = ByteBuffer.allocate(64 * 1024);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Forces the log to the disk up to the given position when every change has to be synced before it is
+     * acknowledged. The caller whose force covers the position of the others spares them theirs.
+     *
+     * @param position the position returned by flush
+     */
+    void sync(long position) {
+        if (syncInterval != 0 || synced >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced < position) {
+                force();
+            }
+        }
+    }
+
+    private void syncAll() {
+        synchronized (syncLock) {
+            if (synced < written) {
+                force();
+            }
+        }
+    }
+
+    private void force() {
+        long target = written;
+        try {
+            current.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync the offer journal", e);
+        }
+        synced = target;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Could not write a snapshot of the offers in {}", directory, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the offers, then deletes the older snapshots and logs
+     */
+    public void snapshot() {
+        if (state == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        Snapshot snapshot = state.capture();
+        Path target = file(snapshot.generation, SNAPSHOT);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+                buffer.putLong(SNAPSHOT_MAGIC).putInt(FORMAT).putLong(snapshot.generation).putLong(snapshot.lastId)
+                        .putInt(snapshot.records.size());
+                for (OfferRecord record : snapshot.records) {
+                    byte[] description = record.description == null
+                            ? null : record.description.getBytes(StandardCharsets.UTF_8);
+                    int length = RECORD + (description == null ? 0 : description.length);
+                    if (buffer.remaining() < 4 + length) {
+                        drain(channel, buffer);
+                        if (buffer.capacity() < 4 + length) {
+                            buffer = ByteBuffer.allocate(4 + length);
+                        }
+                    }
+                    buffer.putInt(length);
+                    writeRecord(buffer, record, description);
+                }
+                drain(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            for (long g : generations(SNAPSHOT)) {
+                if (g < snapshot.generation) {
+                    Files.deleteIfExists(file(g, SNAPSHOT));
+                }
+            }
+            for (long g : generations(LOG)) {
+                if (g < snapshot.generation) {
+                    Files.deleteIfExists(file(g, LOG));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the snapshot " + target, e);
+        }
+        log.info("Offer snapshot {} written: {} offers in {} ms", target, snapshot.records.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeRecord(ByteBuffer buffer, OfferRecord record, byte[] description) {
+        buffer.putLong(record.id).putLong(record.itemId).putDouble(record.price).putLong(record.creationDate)
+                .putLong(record.startDate).putLong(record.endDate).putLong(record.cancelDate).putLong(record.version)
+                .put(record.status)
+                .putInt(description == null ? -1 : description.length);
+        if (description != null) {
+            buffer.put(description);
+        }
+    }
+
+    private static OfferRecord readRecord(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long itemId = buffer.getLong();
+        double price = buffer.getDouble();
+        long creationDate = buffer.getLong();
+        long startDate = buffer.getLong();
+        long endDate = buffer.getLong();
+        long cancelDate = buffer.getLong();
+        long version = buffer.getLong();
+        byte status = buffer.get();
+        int length = buffer.getInt();
+        String description = null;
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            description = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new OfferRecord(id, itemId, description, price, creationDate, startDate, endDate, cancelDate, status,
+                version);
+    }
+
+    /**
+     * Reads a snapshot, region by region
+     *
+     * @return the number of offers read
+     */
+    private int readSnapshot(Path file, State state) throws IOException {
+        try (Regions regions = new Regions(file)) {
+            ByteBuffer header = regions.next(HEADER);
+            if (header == null || header.getLong() != SNAPSHOT_MAGIC || header.getInt() != FORMAT) {
+                throw new IOException("Not an offer snapshot: " + file);
+            }
+            header.getLong();
+            state.restoreLastId(header.getLong());
+            int count = header.getInt();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer length = regions.next(4);
+                ByteBuffer entry = length == null ? null : regions.next(length.getInt());
+                if (entry == null) {
+                    throw new IOException("Truncated offer snapshot: " + file);
+                }
+                state.restore(readRecord(entry));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Replays the entries of a log, up to its end or its first incomplete or corrupted entry
+     *
+     * @return the number of entries replayed
+     */
+    private long replay(Path file, State state) throws IOException {
+        long entries = 0;
+        CRC32 check = new CRC32();
+        try (Regions regions = new Regions(file)) {
+            ByteBuffer length;
+            while ((length = regions.next(4)) != null) {
+                int size = length.getInt();
+                ByteBuffer entry = size > 0 ? regions.next(size + 4) : null;
+                if (entry == null) {
+                    log.warn("Offer log {} ends with an incomplete entry after {} entries", file, entries);
+                    break;
+                }
+                ByteBuffer content = (ByteBuffer) entry.duplicate().limit(entry.position() + size);
+                check.reset();
+                check.update(content);
+                if ((int) check.getValue() != entry.getInt(entry.position() + size)) {
+                    log.warn("Offer log {} has a corrupted entry after {} entries", file, entries);
+                    break;
+                }
+                byte op = entry.get();
+                if (op == PUT) {
+                    state.restore(readRecord(entry));
+                } else if (op == REMOVE) {
+                    state.restoreRemoval(entry.getLong());
+                } else if (op == CLEAR) {
+                    state.restoreClear();
+                }
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * A file read sequentially through read-only memory mapped regions of at most REGION bytes,
+     * a new region being mapped when the next entry goes beyond the current one
+     */
+    private static final class Regions implements Closeable {
+
+        private final FileChannel channel;
+        private final long size;
+        private long base;
+        private MappedByteBuffer region;
+
+        Regions(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            region = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, REGION));
+        }
+
+        /**
+         * @return a buffer positioned at the next length bytes of the file, then skips them;
+         *         null if the file has fewer bytes left
+         */
+        ByteBuffer next(int length) throws IOException {
+            if (length < 0 || base + region.position() + length > size) {
+                return null;
+            }
+            if (region.remaining() < length) {
+                base += region.position();
+                region = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, REGION));
+            }
+            ByteBuffer entry = region.slice();
+            entry.limit(length);
+            region.position(region.position() + length);
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stops the background syncs and snapshots, writes a last snapshot and closes the log
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        background.shutdownNow();
+        if (state != null) {
+            snapshotQuietly();
+        }
+        syncAll();
+        current.close();
+    }
+
+    /**
+     * @return the current generation of the snapshot and log files
+     */
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * @return the snapshot and log files, oldest generation first
+     */
+    List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        generations(SNAPSHOT).forEach(g -> files.add(file(g, SNAPSHOT)));
+        generations(LOG).forEach(g -> files.add(file(g, LOG)));
+        return files;
+    }
+}
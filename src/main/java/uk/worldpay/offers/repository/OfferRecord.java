@@ -0,0 +1,118 @@
+package uk.worldpay.offers.repository;
+
+import uk.worldpay.offers.domain.Offer;
+
+import java.util.Date;
+
+/**
+ * Class OfferRecord
+ *
+ * Compact immutable copy of an offer kept by InMemoryOfferRepository: the identifiers, price and dates are primitives
+ * (dates as epoch milliseconds) and the status its ordinal, instead of one boxed object per field.
+ * Offers are copied into records when saved and out of them when read, so that callers never share the stored state.
+ *
+ * @author laurinf
+ *
+ */
+final class OfferRecord {
+
+    /**
+     * stands for a null date
+     */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Offer.Status[] STATUSES = Offer.Status.values();
+
+    final long id;
+    final long itemId;
+    final String description;
+    final double price;
+    final long creationDate;
+    final long startDate;
+    final long endDate;
+    final long cancelDate;
+    final byte status;
+    final long version;
+
+    OfferRecord(long id, long itemId, String description, double price, long creationDate, long startDate,
+                long endDate, long cancelDate, byte status, long version) {
+        this.id = id;
+        this.itemId = itemId;
+        this.description = description;
+        this.price = price;
+        this.creationDate = creationDate;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.cancelDate = cancelDate;
+        this.status = status;
+        this.version = version;
+    }
+
+    /**
+     * @param offer an offer with an id, a version and all of its mandatory fields
+     */
+    static OfferRecord of(Offer offer) {
+        return new OfferRecord(offer.getId(), offer.getItemId(), offer.getDescription(), offer.getPrice(),
+                millis(offer.getCreationDate()), offer.getStartDate().getTime(), offer.getEndDate().getTime(),
+                millis(offer.getCancelDate()), (byte) offer.getStatus().ordinal(), offer.getVersion());
+    }
+
+    /**
+     * @return a copy of the record with the given status and the next version
+     */
+    OfferRecord withStatus(Offer.Status newStatus) {
+        return new OfferRecord(id, itemId, description, price, creationDate, startDate, endDate, cancelDate,
+                (byte) newStatus.ordinal(), version + 1);
+    }
+
+    /**
+     * @return a copy of the record cancelled at the given date, with the next version
+     */
+    OfferRecord cancelledAt(long cancelDate) {
+        return new OfferRecord(id, itemId, description, price, creationDate, startDate, endDate, cancelDate,
+                (byte) Offer.Status.CANCELLED.ordinal(), version + 1);
+    }
+
+    Offer.Status status() {
+        return STATUSES[status];
+    }
+
+    boolean hasStatus(Iterable<Offer.Status> statuses) {
+        for (Offer.Status s : statuses) {
+            if (s.ordinal() == status) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the period of the offer contains the given date and it had not been cancelled by then
+     */
+    boolean inEffectAt(long at) {
+        return startDate <= at && endDate >= at && (cancelDate == NO_DATE || cancelDate > at);
+    }
+
+    Offer toOffer() {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(itemId);
+        offer.setDescription(description);
+        offer.setPrice(price);
+        offer.setCreationDate(date(creationDate));
+        offer.setStartDate(new Date(startDate));
+        offer.setEndDate(new Date(endDate));
+        offer.setCancelDate(date(cancelDate));
+        offer.setStatus(status());
+        offer.setVersion(version);
+        return offer;
+    }
+
+    private static long millis(Date date) {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date date(long millis) {
+        return millis == NO_DATE ? null : new Date(millis);
+    }
+}
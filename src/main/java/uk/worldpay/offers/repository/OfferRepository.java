@@ -1,8 +1,15 @@
 package uk.worldpay.offers.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import uk.worldpay.offers.domain.Offer;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -13,9 +20,105 @@ import java.util.List;
  * @author laurinf
  *
  */
-public interface OfferRepository extends JpaRepository<Offer, Long> {
+public interface OfferRepository extends JpaRepository<Offer, Long>, OfferRepositoryCustom {
 
     List<Offer> findByItemIdAndStatus(Long itemId, Offer.Status status);
 
+    List<Offer> findByItemIdOrderById(Long itemId);
 
-}
\ No newline at end of file
+    List<Offer> findByStatusIn(Collection<Offer.Status> statuses);
+
+    List<Offer> findByItemIdInAndStatusIn(Collection<Long> itemIds, Collection<Offer.Status> statuses);
+
+    /**
+     * Finds the offers with the given ids that are in one of the given statuses, and locks them
+     * until the end of the current transaction
+     *
+     * @param ids the ids of the offers
+     * @param statuses the statuses the offers have to be in
+     * @return the locked offers
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<Offer> findByIdInAndStatusIn(Collection<Long> ids, Collection<Offer.Status> statuses);
+
+    /**
+     * Tells whether an offer of the item, in one of the given statuses and not expired at the given date,
+     * has a period overlapping [startDate, endDate]
+     *
+     * @param itemId the id of the item
+     * @param statuses the statuses the offers have to be in
+     * @param startDate the starting date of the period
+     * @param endDate the expiring date of the period
+     * @param now the current date
+     * @return true if there is such an offer
+     */
+    @Query("select case when count(o) > 0 then true else false end from Offer o " +
+            "where o.itemId = :itemId and o.status in :statuses " +
+            "and o.startDate <= :endDate and o.endDate >= :startDate and o.endDate >= :now")
+    boolean existsOverlapping(@Param("itemId") Long itemId,
+                              @Param("statuses") Collection<Offer.Status> statuses,
+                              @Param("startDate") Date startDate,
+                              @Param("endDate") Date endDate,
+                              @Param("now") Date now);
+
+    /**
+     * Finds the offers of the item in effect at the given date: their period contains the date
+     * and they had not been cancelled by then. Expired offers are included, so that past dates can be looked up.
+     *
+     * @param itemId the id of the item
+     * @param at the date
+     * @return the offers in effect, the most recent first
+     */
+    @Query("select o from Offer o where o.itemId = :itemId and o.startDate <= :at and o.endDate >= :at " +
+            "and (o.cancelDate is null or o.cancelDate > :at) order by o.id desc")
+    List<Offer> findInEffect(@Param("itemId") Long itemId, @Param("at") Date at);
+
+    /**
+     * Moves to the given status, in a single statement, every offer in one of the given statuses
+     * whose period of applicability [startDate, endDate] contains the given date, incrementing their version
+     *
+     * @param statuses the statuses the offers have to be in
+     * @param newStatus the new status of the offers
+     * @param now the reference date
+     * @return the number of updated offers
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Offer o set o.status = :newStatus, o.version = o.version + 1 " +
+            "where o.status in :statuses and o.startDate <= :now and o.endDate >= :now")
+    int updateStatusOfStarted(@Param("statuses") Collection<Offer.Status> statuses,
+                              @Param("newStatus") Offer.Status newStatus,
+                              @Param("now") Date now);
+
+    /**
+     * Moves to the given status, in a single statement, the offers with the given ids that are in one of the given
+     * statuses, incrementing their version
+     *
+     * @param ids the ids of the offers
+     * @param statuses the statuses the offers have to be in
+     * @param newStatus the new status of the offers
+     * @return the number of updated offers
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Offer o set o.status = :newStatus, o.version = o.version + 1 " +
+            "where o.id in :ids and o.status in :statuses")
+    int updateStatusOfIds(@Param("ids") Collection<Long> ids,
+                          @Param("statuses") Collection<Offer.Status> statuses,
+                          @Param("newStatus") Offer.Status newStatus);
+
+    /**
+     * Moves to the given status, in a single statement, every offer in one of the given statuses
+     * whose expiring date is before the given date, incrementing their version
+     *
+     * @param statuses the statuses the offers have to be in
+     * @param newStatus the new status of the offers
+     * @param now the reference date
+     * @return the number of updated offers
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Offer o set o.status = :newStatus, o.version = o.version + 1 " +
+            "where o.status in :statuses and o.endDate < :now")
+    int updateStatusOfEnded(@Param("statuses") Collection<Offer.Status> statuses,
+                            @Param("newStatus") Offer.Status newStatus,
+                            @Param("now") Date now);
+
+}
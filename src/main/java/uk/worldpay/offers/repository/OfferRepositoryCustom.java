@@ -0,0 +1,80 @@
+package uk.worldpay.offers.repository;
+
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Interface OfferRepositoryCustom
+ *
+ * Provides the Offer queries that can not be derived from a method name
+ *
+ * @author laurinf
+ *
+ */
+public interface OfferRepositoryCustom {
+
+    /**
+     * Returns the offers matching the filters of the query, scanning the ids from its cursor:
+     * in ascending id order after the after cursor (or from the first offer), in descending id order before the
+     * before cursor. The status filter is applied on the status the offers have at the given date.
+     *
+     * @param query the filters and cursor
+     * @param now the date at which the effective status of the offers is evaluated
+     * @param limit the maximum number of offers to be returned
+     * @return at most limit offers, in scanning order
+     */
+    List<Offer> findPage(OfferQuery query, Date now, int limit);
+
+    /**
+     * Returns every offer, in id order, read from a forward-only database cursor.
+     * The offers are detached as they are read, so the memory used does not depend on the number of offers.
+     * The stream has to be consumed inside a transaction and closed.
+     *
+     * @return a stream of all the offers
+     */
+    Stream<Offer> streamAll();
+
+    /**
+     * Finds the offer of each item in effect at the given date (see OfferRepository.findInEffect),
+     * with one query per thousand items
+     *
+     * @param itemIds the ids of the items
+     * @param at the date
+     * @return the offer in effect of each item that has one, by item id
+     */
+    Map<Long, Offer> findInEffectByItem(Collection<Long> itemIds, Date at);
+
+    /**
+     * Cancels the running offers matching the filters of the query: the CREATED or ACTIVE offers that have not ended
+     * at the given date. Their cancelling date is set to the given date and their version incremented.
+     * The offers are cancelled by batches in id order, each batch of ids selected and locked first, then updated in a
+     * single statement, and handed to the action as cancelled, detached, before the next batch is selected: only one
+     * batch is held in memory.
+     *
+     * @param query the filters
+     * @param now the cancelling date
+     * @param action the action applied to each batch of cancelled offers
+     * @return the number of cancelled offers
+     */
+    int cancelAll(OfferCancelQuery query, Date now, Consumer<List<Offer>> action);
+
+    /**
+     * Returns the offers of the item whose period [startDate, endDate] overlaps [from, to], whatever their status,
+     * ordered by starting date then id, read from a forward-only database cursor and detached as they are read.
+     * The stream has to be consumed inside a transaction and closed.
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window
+     * @param to the end of the window
+     * @return a stream of the offers of the item in the window
+     */
+    Stream<Offer> streamTimeline(Long itemId, Date from, Date to);
+}
@@ -0,0 +1,211 @@
+package uk.worldpay.offers.repository;
+
+import org.hibernate.jpa.QueryHints;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Class OfferRepositoryImpl
+ *
+ * JPA implementation of OfferRepositoryCustom, merged by Spring Data into OfferRepository
+ *
+ * @author laurinf
+ *
+ */
+class OfferRepositoryImpl implements OfferRepositoryCustom {
+
+    /**
+     * number of rows fetched from the database at a time by the cursors of the streams
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * maximum number of item ids bound to one IN predicate
+     */
+    private static final int MAX_ITEMS_PER_QUERY = 1000;
+
+    /**
+     * number of offers selected, cancelled and handed out at a time by cancelAll
+     */
+    private static final int CANCEL_BATCH_SIZE = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Offer> findPage(OfferQuery query, Date now, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Offer> cq = cb.createQuery(Offer.class);
+        Root<Offer> offer = cq.from(Offer.class);
+        Path<Long> id = offer.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.getItemId() != null) {
+            predicates.add(cb.equal(offer.get("itemId"), query.getItemId()));
+        }
+        if (query.getStatus() != null) {
+            predicates.add(hasStatusAt(cb, offer, query.getStatus(), now));
+        }
+        if (query.getActiveAt() != null) {
+            // in effect at that date, as in findInEffect: cancelled, if at all, after it
+            Path<Date> cancelDate = offer.get("cancelDate");
+            predicates.add(cb.lessThanOrEqualTo(offer.get("startDate"), query.getActiveAt()));
+            predicates.add(cb.greaterThanOrEqualTo(offer.get("endDate"), query.getActiveAt()));
+            predicates.add(cb.or(cb.isNull(cancelDate), cb.greaterThan(cancelDate, query.getActiveAt())));
+        }
+        if (query.getAfter() != null) {
+            predicates.add(cb.greaterThan(id, query.getAfter()));
+        }
+        if (query.isBackwards()) {
+            predicates.add(cb.lessThan(id, query.getBefore()));
+        }
+
+        cq.select(offer)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(query.isBackwards() ? cb.desc(id) : cb.asc(id));
+
+        return entityManager.createQuery(cq)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public Stream<Offer> streamAll() {
+        return entityManager.createQuery("select o from Offer o order by o.id", Offer.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .peek(entityManager::detach);
+    }
+
+    @Override
+    public Map<Long, Offer> findInEffectByItem(Collection<Long> itemIds, Date at) {
+        Map<Long, Offer> offers = new HashMap<>();
+        List<Long> ids = new ArrayList<>(itemIds);
+        for (int from = 0; from < ids.size(); from += MAX_ITEMS_PER_QUERY) {
+            entityManager.createQuery("select o from Offer o where o.itemId in :itemIds " +
+                    "and o.startDate <= :at and o.endDate >= :at " +
+                    "and (o.cancelDate is null or o.cancelDate > :at) order by o.id desc", Offer.class)
+                    .setParameter("itemIds", ids.subList(from, Math.min(ids.size(), from + MAX_ITEMS_PER_QUERY)))
+                    .setParameter("at", at)
+                    .getResultList()
+                    .forEach(offer -> offers.putIfAbsent(offer.getItemId(), offer));
+        }
+        return offers;
+    }
+
+    /**
+     * Selects each batch of running offers after the last id of the previous one with a row lock, so that they can
+     * not be cancelled or updated concurrently, and cancels them by id: the batch read is exactly the offers updated.
+     */
+    @Override
+    public int cancelAll(OfferCancelQuery query, Date now, Consumer<List<Offer>> action) {
+        entityManager.flush();
+        entityManager.clear();
+        int cancelled = 0;
+        long after = Long.MIN_VALUE;
+        List<Offer> batch;
+        do {
+            TypedQuery<Offer> select = entityManager.createQuery("select o from Offer o where o.id > :after " +
+                    "and o.status in :running and o.endDate >= :now" + filters(query) + " order by o.id", Offer.class)
+                    .setParameter("after", after)
+                    .setParameter("running", Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE))
+                    .setParameter("now", now)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setMaxResults(CANCEL_BATCH_SIZE);
+            batch = bind(select, query).getResultList();
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Long> ids = batch.stream().map(Offer::getId).collect(Collectors.toList());
+            entityManager.createQuery("update Offer o set o.status = :cancelled, o.cancelDate = :now, " +
+                    "o.version = o.version + 1 where o.id in :ids")
+                    .setParameter("cancelled", Offer.Status.CANCELLED)
+                    .setParameter("now", now)
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            entityManager.clear();
+            for (Offer offer : batch) {
+                offer.setStatus(Offer.Status.CANCELLED);
+                offer.setCancelDate(now);
+                offer.setVersion(offer.getVersion() + 1);
+            }
+            action.accept(batch);
+            cancelled += batch.size();
+            after = ids.get(ids.size() - 1);
+        } while (batch.size() == CANCEL_BATCH_SIZE);
+        return cancelled;
+    }
+
+    @Override
+    public Stream<Offer> streamTimeline(Long itemId, Date from, Date to) {
+        return entityManager.createQuery("select o from Offer o where o.itemId = :itemId " +
+                "and o.startDate <= :to and o.endDate >= :from order by o.startDate, o.id", Offer.class)
+                .setParameter("itemId", itemId)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .peek(entityManager::detach);
+    }
+
+    private String filters(OfferCancelQuery query) {
+        return (query.getItemId() != null ? " and o.itemId = :itemId" : "")
+                + (query.getEndingBefore() != null ? " and o.endDate < :endingBefore" : "");
+    }
+
+    private <Q extends Query> Q bind(Q jpql, OfferCancelQuery query) {
+        if (query.getItemId() != null) {
+            jpql.setParameter("itemId", query.getItemId());
+        }
+        if (query.getEndingBefore() != null) {
+            jpql.setParameter("endingBefore", query.getEndingBefore());
+        }
+        return jpql;
+    }
+
+    /**
+     * Translates an effective status (see Offer.statusAt) into a predicate over the stored status and the dates
+     */
+    private Predicate hasStatusAt(CriteriaBuilder cb, Root<Offer> offer, Offer.Status status, Date now) {
+        Path<Offer.Status> stored = offer.get("status");
+        Path<Date> startDate = offer.get("startDate");
+        Path<Date> endDate = offer.get("endDate");
+        Predicate running = stored.in(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+        switch (status) {
+            case CREATED:
+                return cb.and(cb.equal(stored, Offer.Status.CREATED), cb.greaterThan(startDate, now),
+                        cb.greaterThanOrEqualTo(endDate, now));
+            case ACTIVE:
+                return cb.and(running, cb.lessThanOrEqualTo(startDate, now), cb.greaterThanOrEqualTo(endDate, now));
+            case EXPIRED:
+                return cb.or(cb.equal(stored, Offer.Status.EXPIRED), cb.and(running, cb.lessThan(endDate, now)));
+            default:
+                return cb.equal(stored, status);
+        }
+    }
+}
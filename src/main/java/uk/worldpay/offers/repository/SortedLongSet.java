@@ -0,0 +1,56 @@
+package uk.worldpay.offers.repository;
+
+import java.util.Arrays;
+
+/**
+ * Class SortedLongSet
+ *
+ * Set of primitive longs kept in a sorted array. Adding a value greater than the others, the common case for
+ * sequence allocated ids, is an append. Not thread safe.
+ *
+ * @author laurinf
+ *
+ */
+final class SortedLongSet {
+
+    private long[] values = new long[2];
+    private int size;
+
+    void add(long value) {
+        int i = size == 0 || values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+        if (i >= 0) {
+            return;
+        }
+        int at = -i - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+        System.arraycopy(values, at, values, at + 1, size - at);
+        values[at] = value;
+        size++;
+    }
+
+    void remove(long value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i >= 0) {
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the first value greater than the given one
+     */
+    int indexAfter(long value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,234 @@
+package uk.worldpay.offers.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Class IndexedOfferConflictChecker
+ *
+ * OfferConflictChecker answering from an OfferIntervalIndex of the running offers, rebuilt from the repository
+ * at startup. Created offers are added to the index and cancelled offers removed from it once the transaction
+ * commits, so that lookups never see uncommitted offers. The index is updated before the item locks of the
+ * transaction are released, so the next creation for the item is checked against it.
+ *
+ * The index only sees the offers created and cancelled on this node. When other nodes share the database
+ * (offers.index.refresh-on-lock=true, the default), the running offers of the items being created are reloaded
+ * from the repository once their rows are locked, so the check also sees the offers the other nodes committed:
+ * one indexed query per creation, or per thousand items of a batch. A single node can turn it off.
+ *
+ * The lookups of the offers in effect (/items/{id}/price, /items/prices) do not lock the items, so the whole index is
+ * also reloaded from the repository every offers.index.reload-delay milliseconds: the offers created or cancelled on
+ * other nodes are seen by these lookups after that delay at most. The items changed on this node while the reload
+ * runs keep their indexed offers, which are newer than the ones it read.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "offers.index.enabled", havingValue = "true", matchIfMissing = true)
+public class IndexedOfferConflictChecker implements OfferConflictChecker {
+
+    /**
+     * maximum number of item ids bound to one IN predicate
+     */
+    private static final int MAX_ITEMS_PER_QUERY = 1000;
+
+    private static final List<Offer.Status> RUNNING = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+    private final OfferRepository offerRepository;
+
+    private final boolean refreshOnLock;
+
+    private final OfferIntervalIndex index = new OfferIntervalIndex();
+
+    /**
+     * guards the replacement of the offers of an item by a reload against the changes made on this node
+     */
+    private final Object reloadLock = new Object();
+
+    /**
+     * ids of the items changed on this node since the running reload started, null when no reload runs
+     */
+    private volatile Set<Long> changedDuringReload;
+
+    public IndexedOfferConflictChecker(OfferRepository offerRepository) {
+        this(offerRepository, false);
+    }
+
+    @Autowired
+    public IndexedOfferConflictChecker(OfferRepository offerRepository,
+                                       @Value("${offers.index.refresh-on-lock:true}") boolean refreshOnLock) {
+        this.offerRepository = offerRepository;
+        this.refreshOnLock = refreshOnLock;
+    }
+
+    /**
+     * Rebuilds the index from the running offers in the repository
+     */
+    @PostConstruct
+    public void rebuild() {
+        index.clear();
+        Date now = new Date();
+        offerRepository.findByStatusIn(RUNNING).stream()
+                .filter(o -> !o.getEndDate().before(now))
+                .forEach(index::add);
+        log.info("Offer interval index built with {} running offers", index.size());
+    }
+
+    /**
+     * Reloads the running offers of every item from the repository, without emptying the index meanwhile
+     */
+    @Scheduled(fixedDelayString = "${offers.index.reload-delay:60000}")
+    public void reload() {
+        Set<Long> changed = ConcurrentHashMap.newKeySet();
+        changedDuringReload = changed;
+        try {
+            Date now = new Date();
+            Map<Long, List<Offer>> running = new HashMap<>();
+            index.itemIds().forEach(itemId -> running.put(itemId, new ArrayList<>()));
+            offerRepository.findByStatusIn(RUNNING).stream()
+                    .filter(o -> !o.getEndDate().before(now))
+                    .forEach(o -> running.computeIfAbsent(o.getItemId(), itemId -> new ArrayList<>()).add(o));
+            running.forEach((itemId, offers) -> {
+                synchronized (reloadLock) {
+                    if (!changed.contains(itemId)) {
+                        index.replace(itemId, offers);
+                    }
+                }
+            });
+            log.debug("Offer interval index reloaded with {} running offers", index.size());
+        } finally {
+            changedDuringReload = null;
+        }
+    }
+
+    @Override
+    public boolean conflicts(Offer offer) {
+        return index.conflicts(offer, new Date());
+    }
+
+    @Override
+    public Offer findRunning(Long itemId, Date at) {
+        return index.find(itemId, at);
+    }
+
+    @Override
+    public Map<Long, Offer> findRunning(Collection<Long> itemIds, Date at) {
+        Map<Long, Offer> offers = new HashMap<>();
+        for (Long itemId : itemIds) {
+            Offer offer = index.find(itemId, at);
+            if (offer != null) {
+                offers.put(itemId, offer);
+            }
+        }
+        return offers;
+    }
+
+    @Override
+    public void refresh(Collection<Long> itemIds) {
+        if (!refreshOnLock) {
+            return;
+        }
+        List<Long> ids = itemIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Date now = new Date();
+        for (int from = 0; from < ids.size(); from += MAX_ITEMS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_ITEMS_PER_QUERY));
+            Map<Long, List<Offer>> running = new HashMap<>();
+            chunk.forEach(itemId -> running.put(itemId, new ArrayList<>()));
+            offerRepository.findByItemIdInAndStatusIn(chunk, RUNNING).stream()
+                    .filter(o -> !o.getEndDate().before(now))
+                    .forEach(o -> running.get(o.getItemId()).add(o));
+            changed(chunk, () -> running.forEach(index::replace));
+        }
+    }
+
+    @Override
+    public OfferIntervalIndex snapshot(Collection<Long> itemIds) {
+        return index.copyOf(itemIds);
+    }
+
+    @Override
+    public void created(Offer offer) {
+        afterCompletion(() -> changed(Collections.singletonList(offer.getItemId()), () -> index.add(offer)), () -> {});
+    }
+
+    @Override
+    public void cancelled(Offer offer) {
+        afterCompletion(() -> changed(Collections.singletonList(offer.getItemId()), () -> index.remove(offer)), () -> {});
+    }
+
+    @Override
+    public void cancelledAll(Collection<Offer> offers) {
+        afterCompletion(() -> changed(offers.stream().map(Offer::getItemId).collect(Collectors.toList()),
+                () -> offers.forEach(index::remove)), () -> {});
+    }
+
+    @Override
+    public void expired(Date now) {
+        index.removeEndedBefore(now);
+    }
+
+    /**
+     * Applies a change of the offers of items made on this node, which a running reload must not overwrite
+     */
+    private void changed(Collection<Long> itemIds, Runnable change) {
+        synchronized (reloadLock) {
+            Set<Long> changed = changedDuringReload;
+            if (changed != null) {
+                changed.addAll(itemIds);
+            }
+            change.run();
+        }
+    }
+
+    /**
+     * Runs onCommit once the current transaction commits (or at once if there is none), onRollback if it rolls back,
+     * ahead of the other synchronizations of the transaction such as the release of the item locks
+     */
+    private void afterCompletion(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package uk.worldpay.offers.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.worldpay.offers.repository.ItemLockRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Class ItemLocks
+ *
+ * Serializes the creation of offers for the same item while letting different items proceed in parallel.
+ * Each item maps to one of a fixed number of in-process lock stripes; once the stripe is held, the row of the item
+ * in the offer_item_lock table is locked too, so the lock also holds across nodes sharing the database.
+ * Both are kept until the current transaction completes, so the next creation for the item sees the committed offers.
+ *
+ * Stripes are taken in ascending stripe order and rows in ascending item order, so that locking several items
+ * can not deadlock. The existing rows of many items are locked with one query per thousand items, and the missing
+ * rows are inserted, which locks them, in the current transaction: a transaction of their own would need a second
+ * connection of the pool while the current one is held.
+ *
+ * @author laurinf
+ *
+ */
+@Component
+public class ItemLocks {
+
+    /**
+     * maximum number of item ids bound to one IN predicate
+     */
+    private static final int MAX_ITEMS_PER_QUERY = 1000;
+
+    private final ReentrantLock[] stripes;
+    private final Optional<ItemLockRepository> itemLockRepository;
+
+    public ItemLocks(@Value("${offers.locks.stripes:1024}") int stripes,
+                     Optional<ItemLockRepository> itemLockRepository) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.itemLockRepository = itemLockRepository;
+    }
+
+    /**
+     * Locks the given items until the current transaction completes
+     *
+     * @param itemIds the ids of the items
+     * @throws IllegalStateException if there is no current transaction
+     */
+    public void lockUntilCompletion(Collection<Long> itemIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Items can only be locked inside a transaction");
+        }
+        TreeSet<Integer> stripeIndexes = new TreeSet<>();
+        itemIds.forEach(itemId -> stripeIndexes.add(stripe(itemId)));
+
+        for (Integer index : stripeIndexes) {
+            stripes[index].lock();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    stripes[index].unlock();
+                }
+            });
+        }
+        itemLockRepository.ifPresent(repository -> {
+            // an offer without item has no row to lock: it is rejected by the creation
+            TreeSet<Long> rows = itemIds.stream().filter(Objects::nonNull).collect(Collectors.toCollection(TreeSet::new));
+            if (rows.size() == 1) {
+                lockRow(repository, rows.first());
+            } else if (!rows.isEmpty()) {
+                lockRows(repository, new ArrayList<>(rows));
+            }
+        });
+    }
+
+    /**
+     * @return the lock stripe of an item: the items of different stripes never wait for each other in process.
+     *         An offer without item (null) gets the first stripe.
+     */
+    public int stripe(Long itemId) {
+        if (itemId == null) {
+            return 0;
+        }
+        long hash = itemId * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (stripes.length - 1);
+    }
+
+    /**
+     * Locks the row of the item, inserting it if it does not exist yet
+     */
+    private void lockRow(ItemLockRepository repository, Long itemId) {
+        if (!repository.findForUpdate(itemId).isPresent()) {
+            repository.insertLocked(Collections.singletonList(itemId));
+        }
+    }
+
+    /**
+     * Locks the rows of the items by chunks in ascending item order. The rows of a chunk are read without locking
+     * them, then each run of existing rows is locked with one query and each run of missing rows is inserted, in
+     * item order: locking the existing rows before inserting the missing ones would take the locks out of order,
+     * and two nodes could deadlock.
+     *
+     * @param itemIds the ids of the items, sorted
+     */
+    private void lockRows(ItemLockRepository repository, List<Long> itemIds) {
+        for (int from = 0; from < itemIds.size(); from += MAX_ITEMS_PER_QUERY) {
+            List<Long> chunk = itemIds.subList(from, Math.min(itemIds.size(), from + MAX_ITEMS_PER_QUERY));
+            Set<Long> existing = new HashSet<>(repository.findItemIds(chunk));
+            int start = 0;
+            while (start < chunk.size()) {
+                boolean exists = existing.contains(chunk.get(start));
+                int end = start + 1;
+                while (end < chunk.size() && existing.contains(chunk.get(end)) == exists) {
+                    end++;
+                }
+                List<Long> run = chunk.subList(start, end);
+                if (exists) {
+                    repository.findAllForUpdate(run);
+                } else {
+                    repository.insertLocked(run);
+                }
+                start = end;
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.worldpay.offers.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.worldpay.offers.repository.ArchivedOfferRepository;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Class OfferArchiveJob
+ *
+ * Scheduled job moving the offers that have been EXPIRED or CANCELLED for longer than offers.archive.retention
+ * from the offer table to the offer_archive table, so that the offer table only keeps the running offers and the
+ * recently ended ones. The offers are moved by batches of offers.archive.batch-size, each in its own transaction:
+ * one statement copies the batch into the archive and one deletes it from the offer table.
+ *
+ * Archived offers are still found by id and in the history of their item, through OfferServiceImpl.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "offers.archive.enabled", havingValue = "true", matchIfMissing = true)
+public class OfferArchiveJob {
+
+    private final ArchivedOfferRepository archivedOfferRepository;
+
+    private final TransactionTemplate transaction;
+
+    private final Duration retention;
+
+    private final int batchSize;
+
+    public OfferArchiveJob(ArchivedOfferRepository archivedOfferRepository,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${offers.archive.retention:P30D}") Duration retention,
+                           @Value("${offers.archive.batch-size:1000}") int batchSize) {
+        this.archivedOfferRepository = archivedOfferRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.retention = retention;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archives the offers ended or cancelled for longer than the retention period
+     *
+     * @return the number of archived offers
+     */
+    @Scheduled(fixedDelayString = "${offers.archive.delay:3600000}")
+    public int archive() {
+        return archive(new Date(System.currentTimeMillis() - retention.toMillis()));
+    }
+
+    /**
+     * Archives the offers ended or cancelled before the given date, batch by batch
+     *
+     * @param before the date
+     * @return the number of archived offers
+     */
+    public int archive(Date before) {
+        int archived = 0;
+        int moved;
+        do {
+            moved = transaction.execute(status -> {
+                List<Long> ids = archivedOfferRepository.findArchivableIds(before, PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                archivedOfferRepository.copyFromOffers(ids, new Date());
+                return archivedOfferRepository.deleteFromOffers(ids);
+            });
+            archived += moved;
+        } while (moved == batchSize);
+        if (archived > 0) {
+            log.info("Offers archived: {} ended or cancelled before {}", archived, before);
+        }
+        return archived;
+    }
+}
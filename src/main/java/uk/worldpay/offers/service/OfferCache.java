@@ -0,0 +1,230 @@
+package uk.worldpay.offers.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.worldpay.offers.domain.Offer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Class OfferCache
+ *
+ * Bounded read-through cache of offers by id, holding offers whose status is up to date.
+ * The cached offers are never handed out: every lookup returns a copy, which the caller may update freely without
+ * the change being seen by the other readers.
+ * An entry expires after the configured time to live, or sooner at the next starting or expiring date of the
+ * offer, when its status would change, so a cached status is never stale.
+ *
+ * The ids found not to exist are kept apart in a negative cache, so that the lookups of unknown ids repeated by crawlers
+ * and retrying clients do not reach the database. An id is forgotten there when an offer is created with it, or after
+ * offers.cache.missing-time-to-live for the offers created by other nodes. An id is not recorded as missing if offers
+ * were created while it was looked up, as the lookup may have missed one of them.
+ *
+ * Its hit, miss and eviction counters are published as the cache metrics of the "offers" cache, and those of the
+ * negative cache as the metrics of the "offers-missing" cache.
+ *
+ * @author laurinf
+ *
+ */
+@Component
+public class OfferCache implements MeterBinder {
+
+    private final Cache<Long, Offer> cache;
+
+    private final Cache<Long, Boolean> missing;
+
+    /**
+     * incremented every time created offers are forgotten in the negative cache
+     */
+    private final AtomicLong creations = new AtomicLong();
+
+    public OfferCache(long maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, maximumSize, Duration.ofSeconds(30));
+    }
+
+    @Autowired
+    public OfferCache(@Value("${offers.cache.maximum-size:10000}") long maximumSize,
+                      @Value("${offers.cache.time-to-live:PT10M}") Duration timeToLive,
+                      @Value("${offers.cache.missing-maximum-size:100000}") long missingMaximumSize,
+                      @Value("${offers.cache.missing-time-to-live:PT30S}") Duration missingTimeToLive) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new BoundaryExpiry(timeToLive.toNanos()))
+                .recordStats()
+                .build();
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(missingMaximumSize)
+                .expireAfterWrite(missingTimeToLive)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached offer with the given id, loading it if absent
+     *
+     * @param id the id of the offer
+     * @param loader the function loading the offer, with its status up to date, from its id
+     * @return a copy of the offer
+     */
+    public Offer get(Long id, Function<Long, Offer> loader) {
+        return cache.get(id, loader).copy();
+    }
+
+    /**
+     * @param id the id of an offer
+     * @return a copy of the cached offer with the given id, null if it is not cached
+     */
+    public Offer getIfPresent(Long id) {
+        Offer offer = cache.getIfPresent(id);
+        return offer == null ? null : offer.copy();
+    }
+
+    /**
+     * @param id the id of an offer
+     * @return true if no offer had the given id when it was last looked up
+     */
+    public boolean isMissing(Long id) {
+        return missing.getIfPresent(id) != null;
+    }
+
+    /**
+     * @return the generation of the negative cache, to be read before looking up an offer that may be missing
+     */
+    public long generation() {
+        return creations.get();
+    }
+
+    /**
+     * Records that no offer has the given id, unless offers have been created since the lookup began: the entry is
+     * removed again if the generation has changed once it is stored, so that it can not outlive the invalidation of
+     * a creation committed meanwhile
+     *
+     * @param id the id looked up
+     * @param generation the generation read before the lookup
+     */
+    public void missing(Long id, long generation) {
+        missing.put(id, Boolean.TRUE);
+        if (creations.get() != generation) {
+            missing.invalidate(id);
+        }
+    }
+
+    /**
+     * Forgets that created offers were missing, now and again once the current transaction completes,
+     * so that a lookup running meanwhile can not keep them missing
+     *
+     * @param ids the ids of the created offers
+     */
+    public void created(Collection<Long> ids) {
+        forget(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    forget(ids);
+                }
+            });
+        }
+    }
+
+    private void forget(Collection<Long> ids) {
+        creations.incrementAndGet();
+        missing.invalidateAll(ids);
+    }
+
+    /**
+     * Removes an offer from the cache, now and again once the current transaction completes,
+     * so that a read running meanwhile can not cache its previous state
+     *
+     * @param id the id of the offer
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes offers from the cache, now and again once the current transaction completes
+     *
+     * @param ids the ids of the offers
+     */
+    public void evictAll(Collection<Long> ids) {
+        cache.invalidateAll(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateAll(ids);
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes every offer from the cache. The missing ids are kept: a change of status does not create offers.
+     */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(cache, "offers", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics(missing, "offers-missing", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Expires an entry after the time to live, or at the next date its status changes if it comes sooner
+     */
+    private static class BoundaryExpiry implements Expiry<Long, Offer> {
+
+        private final long timeToLive;
+
+        BoundaryExpiry(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        @Override
+        public long expireAfterCreate(Long id, Offer offer, long currentTime) {
+            if (offer.getStatus() != Offer.Status.CREATED && offer.getStatus() != Offer.Status.ACTIVE) {
+                return timeToLive;
+            }
+            long now = System.currentTimeMillis();
+            long boundary = offer.getStartDate().getTime() > now
+                    ? offer.getStartDate().getTime()
+                    : offer.getEndDate().getTime() + 1;
+            return Math.max(0, Math.min(timeToLive, TimeUnit.MILLISECONDS.toNanos(boundary - now)));
+        }
+
+        @Override
+        public long expireAfterUpdate(Long id, Offer offer, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, offer, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long id, Offer offer, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package uk.worldpay.offers.service;
+
+import uk.worldpay.offers.domain.Offer;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Interface OfferConflictChecker
+ *
+ * Detects whether a new offer overlaps a running (CREATED or ACTIVE) offer of the same item,
+ * and finds the running offer of an item at a current or future date.
+ * The implementation is chosen with the property offers.index.enabled:
+ *
+ *   true (default): IndexedOfferConflictChecker, answering from an in-memory index without reading the database
+ *   false: RepositoryOfferConflictChecker, answering with one database query
+ *
+ * @author laurinf
+ *
+ */
+public interface OfferConflictChecker {
+
+    /**
+     * @param offer an offer to be created
+     * @return true if the period of the offer overlaps the period of a running offer for the same item
+     */
+    boolean conflicts(Offer offer);
+
+    /**
+     * @param itemId the id of the item
+     * @param at the date, not before the current date
+     * @return the running offer of the item whose period contains the date, null if there is none
+     */
+    Offer findRunning(Long itemId, Date at);
+
+    /**
+     * @param itemIds the ids of the items
+     * @param at the date, not before the current date
+     * @return the running offer whose period contains the date of each item that has one, by item id
+     */
+    Map<Long, Offer> findRunning(Collection<Long> itemIds, Date at);
+
+    /**
+     * Brings the running offers of the given items up to date with the repository, once the items are locked,
+     * so that the next checks see the offers created and cancelled by the other nodes sharing the database
+     *
+     * @param itemIds the ids of the locked items
+     */
+    void refresh(Collection<Long> itemIds);
+
+    /**
+     * Returns a new index holding the running offers of the given items, to check a batch of offers in one pass
+     *
+     * @param itemIds the ids of the items
+     * @return a new index, that can be modified without affecting the checker
+     */
+    OfferIntervalIndex snapshot(Collection<Long> itemIds);
+
+    /**
+     * Notifies that an offer has been created
+     *
+     * @param offer the created offer
+     */
+    void created(Offer offer);
+
+    /**
+     * Notifies that an offer has been cancelled
+     *
+     * @param offer the cancelled offer
+     */
+    void cancelled(Offer offer);
+
+    /**
+     * Notifies that offers have been cancelled at once
+     *
+     * @param offers the cancelled offers
+     */
+    void cancelledAll(Collection<Offer> offers);
+
+    /**
+     * Notifies that the offers whose expiring date is before the given date have expired
+     *
+     * @param now the current date
+     */
+    void expired(Date now);
+}
@@ -0,0 +1,283 @@
+package uk.worldpay.offers.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Class OfferFileReader
+ *
+ * Reads the offers of a CSV or NDJSON file from a channel, line by line, without a String per line: the channel is
+ * read into a buffer in which the lines are delimited and parsed in place.
+ *
+ * A CSV file starts with a header naming its columns, in any order: itemId, price, startDate and endDate, and
+ * optionally description. Fields may be quoted, with "" standing for a quote, but may not span lines. Dates are
+ * ISO-8601 dates (UTC if they have no offset) or epoch milliseconds, as in JSON.
+ * Each line of an NDJSON file is an offer in JSON, as received by POST /api/v1/offers.
+ *
+ * Blank lines are skipped. A line that can not be parsed is reported as rejected and the reading goes on.
+ *
+ * @author laurinf
+ *
+ */
+class OfferFileReader {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final String[] COLUMNS = {"itemid", "price", "startdate", "enddate", "description"};
+    private static final int ITEM_ID = 0;
+    private static final int PRICE = 1;
+    private static final int START_DATE = 2;
+    private static final int END_DATE = 3;
+    private static final int DESCRIPTION = 4;
+
+    /**
+     * Receives the offers read and the lines rejected
+     */
+    interface Handler {
+
+        void offer(long line, Offer offer);
+
+        void rejected(long line, String reason);
+    }
+
+    private final OfferImporter.Format format;
+
+    private final ObjectReader json;
+
+    private final StdDateFormat dateFormat = new StdDateFormat();
+
+    /**
+     * the position of each column of COLUMNS in the CSV lines, -1 if absent
+     */
+    private int[] columns;
+
+    /**
+     * the bounds of the fields of the current CSV line, and whether they are quoted
+     */
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private boolean[] fieldQuoted = new boolean[8];
+
+    /**
+     * @param format the format of the file
+     * @param json the reader of offers in JSON, for NDJSON files
+     */
+    OfferFileReader(OfferImporter.Format format, ObjectReader json) {
+        this.format = format;
+        this.json = json;
+    }
+
+    /**
+     * Reads every line of the channel
+     *
+     * @return the number of lines read
+     */
+    long read(ReadableByteChannel channel, Handler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long line = 0;
+        boolean eof = false;
+        while (!eof) {
+            eof = channel.read(buffer) < 0;
+            byte[] bytes = buffer.array();
+            int start = 0;
+            int end = buffer.position();
+            for (int i = 0; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    parse(++line, bytes, start, i, handler);
+                    start = i + 1;
+                }
+            }
+            if (eof && start < end) {
+                parse(++line, bytes, start, end, handler);
+                start = end;
+            }
+            if (start == 0 && end == buffer.capacity()) {
+                // a line longer than the buffer
+                buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length * 2));
+                buffer.position(end);
+                continue;
+            }
+            buffer.limit(end).position(start);
+            buffer.compact();
+        }
+        return line;
+    }
+
+    private void parse(long line, byte[] bytes, int from, int to, Handler handler) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        if (isBlank(bytes, from, to)) {
+            return;
+        }
+        if (format == OfferImporter.Format.NDJSON) {
+            Offer offer;
+            try {
+                offer = json.readValue(bytes, from, to - from);
+            } catch (JsonProcessingException e) {
+                handler.rejected(line, "Invalid JSON: " + e.getOriginalMessage());
+                return;
+            } catch (IOException e) {
+                handler.rejected(line, "Invalid JSON: " + e.getMessage());
+                return;
+            }
+            if (offer == null) {
+                // a null line is valid JSON
+                handler.rejected(line, "The offer is missing");
+            } else {
+                handler.offer(line, offer);
+            }
+            return;
+        }
+        int fields = split(bytes, from, to);
+        if (columns == null) {
+            readHeader(bytes, fields);
+            return;
+        }
+        try {
+            Offer offer = new Offer();
+            offer.setItemId(parseLong(bytes, ITEM_ID, fields));
+            String price = field(bytes, PRICE, fields);
+            offer.setPrice(price == null ? null : Double.valueOf(price));
+            offer.setStartDate(parseDate(bytes, START_DATE, fields));
+            offer.setEndDate(parseDate(bytes, END_DATE, fields));
+            offer.setDescription(field(bytes, DESCRIPTION, fields));
+            handler.offer(line, offer);
+        } catch (NumberFormatException | ParseException e) {
+            handler.rejected(line, "Invalid CSV: " + e.getMessage());
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readHeader(byte[] bytes, int fields) {
+        columns = new int[COLUMNS.length];
+        Arrays.fill(columns, -1);
+        for (int f = 0; f < fields; f++) {
+            String name = new String(bytes, fieldStarts[f], fieldEnds[f] - fieldStarts[f], StandardCharsets.UTF_8)
+                    .trim().toLowerCase(Locale.ROOT);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                if (COLUMNS[c].equals(name)) {
+                    columns[c] = f;
+                }
+            }
+        }
+        for (int c = ITEM_ID; c <= END_DATE; c++) {
+            if (columns[c] < 0) {
+                throw new InvalidOfferRequestException("The CSV header has no " + COLUMNS[c] + " column");
+            }
+        }
+    }
+
+    /**
+     * Delimits the fields of a CSV line
+     *
+     * @return the number of fields
+     */
+    private int split(byte[] bytes, int from, int to) {
+        int fields = 0;
+        int i = from;
+        while (true) {
+            if (fields == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fields * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fields * 2);
+                fieldQuoted = Arrays.copyOf(fieldQuoted, fields * 2);
+            }
+            boolean quoted = i < to && bytes[i] == '"';
+            int start = quoted ? i + 1 : i;
+            int end;
+            if (quoted) {
+                end = start;
+                while (end < to && (bytes[end] != '"' || (end + 1 < to && bytes[end + 1] == '"'))) {
+                    end += bytes[end] == '"' ? 2 : 1;
+                }
+                i = end + 1;
+                while (i < to && bytes[i] != ',') {
+                    i++;
+                }
+            } else {
+                end = i;
+                while (end < to && bytes[end] != ',') {
+                    end++;
+                }
+                i = end;
+            }
+            fieldStarts[fields] = start;
+            fieldEnds[fields] = end;
+            fieldQuoted[fields] = quoted;
+            fields++;
+            if (i >= to) {
+                return fields;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return the value of a column in the current line, null if the column or the value is missing
+     */
+    private String field(byte[] bytes, int column, int fields) {
+        int f = columns[column];
+        if (f < 0 || f >= fields || fieldStarts[f] == fieldEnds[f]) {
+            return null;
+        }
+        String value = new String(bytes, fieldStarts[f], fieldEnds[f] - fieldStarts[f], StandardCharsets.UTF_8);
+        return fieldQuoted[f] ? value.replace("\"\"", "\"") : value.trim();
+    }
+
+    /**
+     * Parses a long column from the bytes of the line, without creating a String
+     */
+    private Long parseLong(byte[] bytes, int column, int fields) {
+        int f = columns[column];
+        if (f < 0 || f >= fields) {
+            return null;
+        }
+        int from = fieldStarts[f];
+        int to = fieldEnds[f];
+        while (from < to && bytes[from] == ' ') {
+            from++;
+        }
+        while (to > from && bytes[to - 1] == ' ') {
+            to--;
+        }
+        if (from == to) {
+            return null;
+        }
+        boolean negative = bytes[from] == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For " + COLUMNS[column] + " input string: \""
+                        + new String(bytes, from, to - from, StandardCharsets.UTF_8) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private Date parseDate(byte[] bytes, int column, int fields) throws ParseException {
+        String value = field(bytes, column, fields);
+        return value == null ? null : dateFormat.parse(value);
+    }
+}
@@ -0,0 +1,312 @@
+package uk.worldpay.offers.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.worldpay.offers.domain.IdempotencyRecord;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.exceptions.IdempotencyKeyReusedException;
+import uk.worldpay.offers.exceptions.InvalidIdempotencyKeyException;
+import uk.worldpay.offers.repository.IdempotencyRecordRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class OfferIdempotency
+ *
+ * Creates offers sent with an Idempotency-Key header at most once. The first result of a key, the offer created or
+ * its rejection because of an existing offer of its item, is recorded in the transaction of the creation, and the
+ * requests repeating the key are answered from it without creating the offer again: a created offer is read back by
+ * its id, a rejection is thrown again. A key sent again with a different offer is rejected.
+ *
+ * The results are kept for offers.idempotency.time-to-live, in a bounded in-memory cache of
+ * offers.idempotency.maximum-size keys in front of the offer_idempotency_key table, which holds them across nodes
+ * and restarts, and whose primary key lets only one of two concurrent requests of a key record its result; the other
+ * one is answered with it. The expired rows are deleted every offers.idempotency.purge-delay milliseconds. Without
+ * a database, as in the inmemory profile, the results are only kept in the cache.
+ *
+ * The hit, miss and eviction counters of the cache are published as the cache metrics of the "offers-idempotency"
+ * cache.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+public class OfferIdempotency implements MeterBinder {
+
+    /**
+     * maximum length of an idempotency key
+     */
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * The outcome of a creation with an idempotency key
+     */
+    @Data
+    public static class Creation {
+
+        /**
+         * the created offer, as it is now if the creation is a replay
+         */
+        private final Offer offer;
+
+        /**
+         * true if the offer was created by a previous request with the same key
+         */
+        private final boolean replayed;
+    }
+
+    /**
+     * the offer service, looked up when first used: the cache metrics are bound before it is created
+     */
+    private final ObjectProvider<OfferService> offerService;
+
+    /**
+     * the results shared through the database, absent when the offers are kept in memory
+     */
+    private final Optional<IdempotencyRecordRepository> repository;
+
+    private final TransactionTemplate transaction;
+
+    private final Duration timeToLive;
+
+    private final Cache<String, IdempotencyRecord> records;
+
+    public OfferIdempotency(ObjectProvider<OfferService> offerService,
+                            Optional<IdempotencyRecordRepository> repository,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${offers.idempotency.maximum-size:100000}") long maximumSize,
+                            @Value("${offers.idempotency.time-to-live:PT24H}") Duration timeToLive) {
+        this.offerService = offerService;
+        this.repository = repository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.timeToLive = timeToLive;
+        this.records = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new CreationExpiry(timeToLive.toMillis()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Creates an offer, unless a request with the same key did it first
+     *
+     * @param key the idempotency key
+     * @param offer the offer to be created
+     * @return the created offer, and whether it was created by a previous request
+     * @throws InvalidIdempotencyKeyException if the key is empty or longer than 255 characters
+     * @throws ExistingActiveOfferException if the first request of the key was rejected, or is now rejected, because
+     *                                      of another offer for that item in the given period
+     * @throws IdempotencyKeyReusedException if the key has already been used for a different offer
+     */
+    public Creation create(String key, Offer offer) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(MAX_KEY_LENGTH);
+        }
+        String fingerprint = fingerprint(offer);
+        IdempotencyRecord first = find(key);
+        if (first == null) {
+            try {
+                return new Creation(transaction.execute(status -> {
+                    Offer created = offerService.getObject().create(offer);
+                    record(new IdempotencyRecord(key, fingerprint, created.getId(), new Date()));
+                    return created;
+                }), false);
+            } catch (ExistingActiveOfferException e) {
+                if (recordRejection(key, fingerprint)) {
+                    throw e;
+                }
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Idempotency key {} recorded concurrently", key);
+                if (find(key) == null) {
+                    throw e;
+                }
+            }
+            first = find(key);
+        }
+        return replay(key, fingerprint, offer, first);
+    }
+
+    /**
+     * @return the first result of the key, from the cache or else from the database, null if it has none
+     */
+    private IdempotencyRecord find(String key) {
+        IdempotencyRecord record = records.getIfPresent(key);
+        if (record != null || !repository.isPresent()) {
+            return record;
+        }
+        record = repository.get()
+                .findByKeyAndCreationDateAfter(key, new Date(System.currentTimeMillis() - timeToLive.toMillis()))
+                .orElse(null);
+        if (record != null) {
+            records.put(key, record);
+        }
+        return record;
+    }
+
+    /**
+     * Records the first result of a key in the current transaction; it is cached once the transaction commits
+     *
+     * @throws DataIntegrityViolationException if the key already has a result
+     */
+    private void record(IdempotencyRecord record) {
+        if (!repository.isPresent()) {
+            if (records.asMap().putIfAbsent(record.getKey(), record) != null) {
+                throw new DuplicateKeyException("Idempotency key " + record.getKey() + " already recorded");
+            }
+            return;
+        }
+        repository.get().saveAndFlush(record);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                records.put(record.getKey(), record);
+            }
+        });
+    }
+
+    /**
+     * Records the rejection of the offer of a key, in a transaction of its own
+     *
+     * @return false if the key already had a result
+     */
+    private boolean recordRejection(String key, String fingerprint) {
+        try {
+            transaction.execute(status -> {
+                record(new IdempotencyRecord(key, fingerprint, null, new Date()));
+                return null;
+            });
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Idempotency key {} recorded concurrently", key);
+            return false;
+        }
+    }
+
+    /**
+     * Answers a request with the first result of its key
+     */
+    private Creation replay(String key, String fingerprint, Offer offer, IdempotencyRecord first) {
+        if (!first.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException(key);
+        }
+        if (first.getOfferId() == null) {
+            throw new ExistingActiveOfferException(offer.getItemId());
+        }
+        return new Creation(offerService.getObject().findById(first.getOfferId()), true);
+    }
+
+    /**
+     * Deletes the results older than the time to live from the database
+     *
+     * @return the number of deleted results
+     */
+    @Scheduled(fixedDelayString = "${offers.idempotency.purge-delay:3600000}")
+    public int purge() {
+        if (!repository.isPresent()) {
+            return 0;
+        }
+        Date before = new Date(System.currentTimeMillis() - timeToLive.toMillis());
+        int purged = transaction.execute(status -> repository.get().deleteCreatedBefore(before));
+        if (purged > 0) {
+            log.info("Idempotency keys purged: {} recorded before {}", purged, before);
+        }
+        return purged;
+    }
+
+    /**
+     * @return the Base64 encoded SHA-256 digest of the fields of an offer received for creation, each one written with
+     *         a marker telling null from a value, and the description with its length, so that no two distinct
+     *         offers have the same encoding
+     */
+    static String fingerprint(Offer offer) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        update(digest, offer.getItemId());
+        if (offer.getDescription() == null) {
+            digest.update((byte) 0);
+        } else {
+            byte[] description = offer.getDescription().getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) 1);
+            update(digest, (long) description.length);
+            digest.update(description);
+        }
+        update(digest, offer.getPrice() == null ? null : Double.doubleToLongBits(offer.getPrice()));
+        update(digest, offer.getStartDate() == null ? null : offer.getStartDate().getTime());
+        update(digest, offer.getEndDate() == null ? null : offer.getEndDate().getTime());
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Long value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        digest.update((byte) 1);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (value >>> shift));
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics(records, "offers-idempotency", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Expires a result at the end of the time to live from its recording, also when it is read back from the database
+     */
+    private static class CreationExpiry implements Expiry<String, IdempotencyRecord> {
+
+        private final long timeToLive;
+
+        CreationExpiry(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, IdempotencyRecord record, long currentTime) {
+            long remaining = record.getCreationDate().getTime() + timeToLive - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, IdempotencyRecord record, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, record, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, IdempotencyRecord record, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
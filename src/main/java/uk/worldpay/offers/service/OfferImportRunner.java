@@ -0,0 +1,45 @@
+package uk.worldpay.offers.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import uk.worldpay.offers.domain.OfferImportReport;
+
+import java.nio.file.Paths;
+
+/**
+ * Class OfferImportRunner
+ *
+ * Imports the file of offers given by offers.import.file once the application has started, for instance with
+ * java -jar offers.jar --offers.import.file=offers.csv, and logs its report and rejected offers
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("offers.import.file")
+public class OfferImportRunner implements ApplicationRunner {
+
+    private final OfferImporter importer;
+
+    private final String file;
+
+    public OfferImportRunner(OfferImporter importer, @Value("${offers.import.file}") String file) {
+        this.importer = importer;
+        this.file = file;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        OfferImportReport report = importer.importOffers(Paths.get(file));
+        report.getRejections().forEach(rejection ->
+                log.warn("Offer import: line {} rejected: {}", rejection.getLine(), rejection.getReason()));
+        if (report.getRejections().size() < report.getRejected()) {
+            log.warn("Offer import: {} more offers rejected", report.getRejected() - report.getRejections().size());
+        }
+    }
+}
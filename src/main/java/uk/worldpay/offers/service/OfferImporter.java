@@ -0,0 +1,302 @@
+package uk.worldpay.offers.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferImportReport;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class OfferImporter
+ *
+ * Imports the offers of a CSV or NDJSON file (see OfferFileReader) as they are read, without holding the file in
+ * memory. The offers are partitioned by item among offers.import.parallelism workers, each creating the offers of its
+ * items with OfferService.createAll, by batches of offers.import.batch-size in one transaction each: the offers of an
+ * item are created in the order of the file, under the same rules as POST /api/v1/offers (an offer overlapping a
+ * running offer of its item, or an offer before it in the file, is rejected), while different items are created in
+ * parallel. The items are partitioned by their ItemLocks stripe, so that the workers never wait for each other's
+ * item locks. The reading waits when the workers are two batches behind.
+ *
+ * The progress is logged every offers.import.progress-interval offers. The import returns the number of offers read,
+ * created and rejected, and the first offers.import.max-rejections rejected offers with their line and the reason.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Service
+public class OfferImporter {
+
+    /**
+     * The formats of the files
+     */
+    public enum Format {
+
+        CSV, NDJSON;
+
+        /**
+         * @return the format of a file from its extension: .csv for CSV, .ndjson, .jsonl or .json for NDJSON
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return NDJSON;
+            }
+            throw new InvalidOfferRequestException("Unknown format of offer file " + file);
+        }
+
+        /**
+         * @return the format of a body of a media type: text/csv or application/x-ndjson
+         */
+        public static Format of(MediaType mediaType) {
+            if (mediaType.isCompatibleWith(MediaType.valueOf("text/csv"))) {
+                return CSV;
+            }
+            if (mediaType.isCompatibleWith(MediaType.valueOf("application/x-ndjson"))) {
+                return NDJSON;
+            }
+            throw new InvalidOfferRequestException("Unknown format of offers " + mediaType);
+        }
+    }
+
+    private final OfferService offerService;
+
+    private final ItemLocks itemLocks;
+
+    private final ObjectMapper mapper;
+
+    private final int parallelism;
+
+    private final int batchSize;
+
+    private final int maxRejections;
+
+    private final long progressInterval;
+
+    public OfferImporter(OfferService offerService,
+                         ItemLocks itemLocks,
+                         ObjectMapper mapper,
+                         @Value("${offers.import.parallelism:4}") int parallelism,
+                         @Value("${offers.import.batch-size:1000}") int batchSize,
+                         @Value("${offers.import.max-rejections:1000}") int maxRejections,
+                         @Value("${offers.import.progress-interval:100000}") long progressInterval) {
+        this.offerService = offerService;
+        this.itemLocks = itemLocks;
+        this.mapper = mapper;
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRejections = maxRejections;
+        this.progressInterval = Math.max(1, progressInterval);
+    }
+
+    /**
+     * Imports the offers of a file, in the format given by its extension
+     *
+     * @param file the file
+     * @return the report of the import
+     */
+    public OfferImportReport importOffers(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importOffers(channel, Format.of(file));
+        }
+    }
+
+    /**
+     * Imports the offers read from a channel
+     *
+     * @param channel the channel
+     * @param format the format of the offers
+     * @return the report of the import
+     * @throws InvalidOfferRequestException if the header of a CSV file lacks a mandatory column
+     */
+    public OfferImportReport importOffers(ReadableByteChannel channel, Format format) throws IOException {
+        return new Import().run(channel, format);
+    }
+
+    /**
+     * The offers of one partition waiting to be created, with their lines
+     */
+    private static final class Batch {
+
+        private static final Batch END = new Batch(0);
+
+        final List<Offer> offers;
+        long[] lines;
+
+        Batch(int capacity) {
+            offers = new ArrayList<>(capacity);
+            lines = new long[capacity];
+        }
+
+        void add(long line, Offer offer) {
+            if (offers.size() == lines.length) {
+                lines = Arrays.copyOf(lines, Math.max(1, lines.length * 2));
+            }
+            lines[offers.size()] = line;
+            offers.add(offer);
+        }
+    }
+
+    /**
+     * One import: the partitions, their workers and the counters
+     */
+    private final class Import implements OfferFileReader.Handler {
+
+        private final long start = System.nanoTime();
+
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<OfferImportReport.Rejection> rejections = Collections.synchronizedList(new ArrayList<>());
+
+        private final Batch[] batches = new Batch[parallelism];
+        private final List<BlockingQueue<Batch>> queues = new ArrayList<>(parallelism);
+
+        OfferImportReport run(ReadableByteChannel channel, Format format) throws IOException {
+            AtomicInteger threads = new AtomicInteger();
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable ->
+                    new Thread(runnable, "offer-import-" + threads.incrementAndGet()));
+            List<Future<?>> partitions = new ArrayList<>(parallelism);
+            for (int p = 0; p < parallelism; p++) {
+                BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(2);
+                queues.add(queue);
+                batches[p] = new Batch(batchSize);
+                partitions.add(workers.submit(() -> {
+                    work(queue);
+                    return null;
+                }));
+            }
+            boolean read = false;
+            try {
+                new OfferFileReader(format, mapper.readerFor(Offer.class)).read(channel, this);
+                for (int p = 0; p < parallelism; p++) {
+                    if (!batches[p].offers.isEmpty()) {
+                        put(p, batches[p]);
+                    }
+                    put(p, Batch.END);
+                }
+                read = true;
+            } finally {
+                if (!read) {
+                    // the batches not yet created are dropped
+                    for (BlockingQueue<Batch> queue : queues) {
+                        queue.clear();
+                        queue.offer(Batch.END);
+                    }
+                }
+                workers.shutdown();
+            }
+            try {
+                for (Future<?> partition : partitions) {
+                    partition.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                workers.shutdownNow();
+                throw new InterruptedIOException("Offer import interrupted");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Offer import failed", e.getCause());
+            }
+            OfferImportReport report = new OfferImportReport(rows.get(), created.get(), rejected.get(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), new ArrayList<>(rejections));
+            log.info("Offer import done: {} offers read, {} created, {} rejected in {} ms ({} offers/s)",
+                    report.getRows(), report.getCreated(), report.getRejected(), report.getElapsedMillis(),
+                    report.getOffersPerSecond());
+            return report;
+        }
+
+        @Override
+        public void offer(long line, Offer offer) {
+            progress();
+            int p = itemLocks.stripe(offer.getItemId()) % parallelism;
+            batches[p].add(line, offer);
+            if (batches[p].offers.size() >= batchSize) {
+                put(p, batches[p]);
+                batches[p] = new Batch(batchSize);
+            }
+        }
+
+        @Override
+        public void rejected(long line, String reason) {
+            progress();
+            reject(line, reason);
+        }
+
+        private void progress() {
+            long read = rows.incrementAndGet();
+            if (read % progressInterval == 0) {
+                long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                log.info("Offer import: {} offers read, {} created, {} rejected, {} offers/s",
+                        read, created.get(), rejected.get(), read * 1000 / millis);
+            }
+        }
+
+        private void put(int partition, Batch batch) {
+            try {
+                queues.get(partition).put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Offer import interrupted", e);
+            }
+        }
+
+        private void reject(long line, String reason) {
+            rejected.incrementAndGet();
+            synchronized (rejections) {
+                if (rejections.size() < maxRejections) {
+                    rejections.add(new OfferImportReport.Rejection(line, reason));
+                }
+            }
+        }
+
+        /**
+         * Creates the batches of a partition until the end of the file
+         */
+        private void work(BlockingQueue<Batch> queue) throws InterruptedException {
+            Batch batch;
+            while ((batch = queue.take()) != Batch.END) {
+                try {
+                    for (OfferCreationResult result : offerService.createAll(batch.offers)) {
+                        if (result.isCreated()) {
+                            created.incrementAndGet();
+                        } else {
+                            reject(batch.lines[result.getIndex()], result.getError());
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Offer import: batch of {} offers failed", batch.offers.size(), e);
+                    for (int i = 0; i < batch.offers.size(); i++) {
+                        reject(batch.lines[i], "The batch of the offer failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
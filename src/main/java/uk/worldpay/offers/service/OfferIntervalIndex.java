@@ -0,0 +1,283 @@
+package uk.worldpay.offers.service;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.worldpay.offers.domain.Offer;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class OfferIntervalIndex
+ *
+ * In-memory index of the running (CREATED or ACTIVE) offers of each item, kept in a map sorted by starting date,
+ * then id. The offers created through the conflict check never overlap, so the only offers that can overlap a period
+ * [startDate, endDate] are the last one starting before startDate and the ones starting from startDate to endDate,
+ * which makes conflict detection O(log n) in the number of running offers of the item. For the same reason, the
+ * offer in effect at a date is the last one starting before it.
+ *
+ * Offers written before the check, or by a check that failed, may overlap or start at the same date: each one is
+ * still indexed, and the items holding such offers are marked, so that every earlier offer is scanned for them,
+ * as the repository would.
+ *
+ * Offers whose expiring date has passed are ignored, and dropped when met.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+public class OfferIntervalIndex {
+
+    private final Map<Long, ItemOffers> offersByItem = new ConcurrentHashMap<>();
+
+    /**
+     * @param offer an offer not yet in the index
+     * @param now the current date
+     * @return true if the period of the offer overlaps the period of a running offer for the same item
+     */
+    public boolean conflicts(Offer offer, Date now) {
+        ItemOffers item = offersByItem.get(offer.getItemId());
+        if (item == null) {
+            return false;
+        }
+        synchronized (item) {
+            return item.overlaps(offer.getStartDate().getTime(), offer.getEndDate().getTime(), now);
+        }
+    }
+
+    /**
+     * Finds the running offer of the item whose period contains the given date.
+     * As the offers of an item do not overlap, it is the last one starting before the date; among overlapping offers,
+     * the most recent one (highest id), as the repository returns it.
+     *
+     * @param itemId the id of the item
+     * @param at the date, not before the current date
+     * @return the offer, null if there is none
+     */
+    public Offer find(Long itemId, Date at) {
+        ItemOffers item = offersByItem.get(itemId);
+        if (item == null) {
+            return null;
+        }
+        synchronized (item) {
+            Offer found = null;
+            for (Offer offer : item.offers.headMap(new Key(at.getTime(), Long.MAX_VALUE), true)
+                    .descendingMap().values()) {
+                if (!offer.getEndDate().before(at)
+                        && (found == null || Key.ID_ORDER.compare(offer.getId(), found.getId()) > 0)) {
+                    found = offer;
+                }
+                if (!item.overlapping) {
+                    break;
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Adds a running offer to the index
+     *
+     * @param offer the offer to be added
+     */
+    public void add(Offer offer) {
+        ItemOffers item = offersByItem.computeIfAbsent(offer.getItemId(), k -> new ItemOffers());
+        synchronized (item) {
+            item.add(offer);
+        }
+    }
+
+    /**
+     * Replaces the offers of an item in the index
+     *
+     * @param itemId the id of the item
+     * @param running the running offers of the item
+     */
+    public void replace(Long itemId, Collection<Offer> running) {
+        if (running.isEmpty()) {
+            offersByItem.remove(itemId);
+            return;
+        }
+        ItemOffers item = new ItemOffers();
+        running.forEach(item::add);
+        offersByItem.put(itemId, item);
+    }
+
+    /**
+     * Removes an offer from the index, if present
+     *
+     * @param offer the offer to be removed
+     */
+    public void remove(Offer offer) {
+        ItemOffers item = offersByItem.get(offer.getItemId());
+        if (item == null) {
+            return;
+        }
+        synchronized (item) {
+            item.offers.remove(Key.of(offer));
+        }
+    }
+
+    /**
+     * Removes the offers whose expiring date is before the given date
+     *
+     * @param now the current date
+     * @return the number of offers removed
+     */
+    public int removeEndedBefore(Date now) {
+        int removed = 0;
+        for (ItemOffers item : offersByItem.values()) {
+            synchronized (item) {
+                Iterator<Offer> it = item.offers.values().iterator();
+                while (it.hasNext()) {
+                    Offer offer = it.next();
+                    if (offer.getStartDate().after(now)) {
+                        break;
+                    }
+                    if (offer.getEndDate().before(now)) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns a new index holding a copy of the offers of the given items
+     *
+     * @param itemIds the ids of the items
+     * @return a new index
+     */
+    public OfferIntervalIndex copyOf(Collection<Long> itemIds) {
+        OfferIntervalIndex copy = new OfferIntervalIndex();
+        for (Long itemId : itemIds) {
+            ItemOffers item = offersByItem.get(itemId);
+            if (item != null) {
+                synchronized (item) {
+                    copy.offersByItem.put(itemId, item.copy());
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return a copy of the ids of the items having offers in the index
+     */
+    public Set<Long> itemIds() {
+        return new HashSet<>(offersByItem.keySet());
+    }
+
+    /**
+     * Removes every offer from the index
+     */
+    public void clear() {
+        offersByItem.clear();
+    }
+
+    /**
+     * @return the number of offers in the index
+     */
+    public int size() {
+        int size = 0;
+        for (ItemOffers item : offersByItem.values()) {
+            synchronized (item) {
+                size += item.offers.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The running offers of an item, guarded by their own monitor
+     */
+    private static final class ItemOffers {
+
+        private final NavigableMap<Key, Offer> offers = new TreeMap<>();
+
+        /**
+         * true once two offers of the item have overlapped: every offer starting before a period has to be checked
+         * against it, not only the last one. Reset when the offers of the item are replaced.
+         */
+        private boolean overlapping;
+
+        void add(Offer offer) {
+            Key key = Key.of(offer);
+            offers.remove(key);
+            if (!overlapping && overlaps(key.start, offer.getEndDate().getTime(), null)) {
+                log.warn("Offer {} of item {} overlaps another running offer of the item", offer.getId(),
+                        offer.getItemId());
+                overlapping = true;
+            }
+            offers.put(key, offer);
+        }
+
+        /**
+         * @param now the current date, before which the offers met are dropped; null to keep them
+         * @return true if a running offer overlaps [start, end]
+         */
+        boolean overlaps(long start, long end, Date now) {
+            Map.Entry<Key, Offer> after = offers.ceilingEntry(new Key(start, null));
+            if (after != null && after.getKey().start <= end) {
+                return true;
+            }
+            Iterator<Offer> before = offers.headMap(new Key(start, null), false).descendingMap().values().iterator();
+            while (before.hasNext()) {
+                Offer offer = before.next();
+                if (now != null && offer.getEndDate().before(now)) {
+                    before.remove();
+                    continue;
+                }
+                if (offer.getEndDate().getTime() >= start) {
+                    return true;
+                }
+                if (!overlapping) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        ItemOffers copy() {
+            ItemOffers copy = new ItemOffers();
+            copy.offers.putAll(offers);
+            copy.overlapping = overlapping;
+            return copy;
+        }
+    }
+
+    /**
+     * The position of an offer in the index: its starting date, then its id, an offer without id coming first
+     */
+    private static final class Key implements Comparable<Key> {
+
+        static final Comparator<Long> ID_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+        private final long start;
+        private final Long id;
+
+        Key(long start, Long id) {
+            this.start = start;
+            this.id = id;
+        }
+
+        static Key of(Offer offer) {
+            return new Key(offer.getStartDate().getTime(), offer.getId());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byStart = Long.compare(start, other.start);
+            return byStart != 0 ? byStart : ID_ORDER.compare(id, other.id);
+        }
+    }
+}
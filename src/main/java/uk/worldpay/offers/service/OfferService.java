@@ -1,11 +1,22 @@
 package uk.worldpay.offers.service;
 
+import uk.worldpay.offers.exceptions.ActiveOfferNotFoundException;
 import uk.worldpay.offers.exceptions.CancelNotAllowedException;
 import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
 import uk.worldpay.offers.exceptions.OfferNotFoundException;
+import uk.worldpay.offers.exceptions.OfferVersionMismatchException;
 import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Interface OfferService
@@ -26,6 +37,15 @@ public interface OfferService {
      */
     public Offer create(final Offer offer) throws ExistingActiveOfferException;
 
+    /**
+     * Creates a batch of offers in a single transaction. Each offer is checked against the running offers and
+     * against the offers of the batch before it; the offers that fail the checks are rejected, the others created.
+     *
+     * @param offers the offers to be created
+     * @return the outcome of the creation of each offer, in the order of the batch
+     */
+    public List<OfferCreationResult> createAll(final List<Offer> offers);
+
     /**
      * Returns a list containing all the offers
      *
@@ -33,6 +53,23 @@ public interface OfferService {
      */
     public List<Offer> findAll();
 
+    /**
+     * Passes every offer, in id order, to the given action, reading them one at a time
+     * instead of loading the whole list
+     *
+     * @param action the action applied to each offer
+     */
+    public void forEachOffer(final Consumer<Offer> action);
+
+    /**
+     * Returns one page of the offers matching the filters of the query, starting at its cursor
+     *
+     * @param query the filters, cursor and size of the page
+     * @return a page of offers ordered by id
+     * @throws InvalidOfferRequestException - if both the after and the before cursors are set
+     */
+    public OfferPage findPage(final OfferQuery query);
+
 
     /**
      * Finds an offer from its id
@@ -43,6 +80,47 @@ public interface OfferService {
      */
     public Offer findById(final Long id)  throws OfferNotFoundException;
 
+    /**
+     * Returns every offer of an item, including the archived ones, in id order
+     *
+     * @param itemId the id of the item
+     * @return the offers of the item
+     */
+    public List<Offer> findHistory(final Long itemId);
+
+    /**
+     * Passes the offers of an item whose period overlaps a window, including the archived ones,
+     * to the given action in starting date order, reading them one at a time
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window
+     * @param to the end of the window
+     * @param action the action applied to each offer
+     * @throws InvalidOfferRequestException - if the window ends before it starts
+     */
+    public void forEachOfferOfItem(final Long itemId, final Instant from, final Instant to,
+                                   final Consumer<Offer> action);
+
+    /**
+     * Finds the offer of an item in effect at an instant: its period contains the instant
+     * and it had not been cancelled by then
+     *
+     * @param itemId the id of the item
+     * @param at the instant, null for the current instant
+     * @return the offer in effect, with its status updated
+     * @throws ActiveOfferNotFoundException - if no offer of the item is in effect at that instant
+     */
+    public Offer findActive(final Long itemId, final Instant at) throws ActiveOfferNotFoundException;
+
+    /**
+     * Finds the offer of each item in effect at an instant, all at once
+     *
+     * @param itemIds the ids of the items
+     * @param at the instant, null for the current instant
+     * @return the offer in effect, with its status updated, of each item that has one, by item id
+     */
+    public Map<Long, Offer> findActive(final Collection<Long> itemIds, final Instant at);
+
     /**
      * Cancels an offer with a given id. This method doesn't delete the persistent representation of the object.
      * It will update the status to CANCELLED and create a cancellation date.
@@ -54,4 +132,26 @@ public interface OfferService {
      */
     public void cancel(final Long idOffer) throws CancelNotAllowedException, OfferNotFoundException;
 
+    /**
+     * Cancels an offer with a given id, provided that it is still at one of the given versions
+     *
+     * @param idOffer the id of the offer to be cancelled
+     * @param versions the versions the offer has to be at one of, null for any version
+     *
+     * @throws CancelNotAllowedException - if the idOffer is already in EXPIRED or CANCELLED status
+     * @throws OfferNotFoundException - if the given id does not match any offer
+     * @throws OfferVersionMismatchException - if the offer is at none of the given versions
+     */
+    public void cancel(final Long idOffer, final Collection<Long> versions)
+            throws CancelNotAllowedException, OfferNotFoundException, OfferVersionMismatchException;
+
+    /**
+     * Cancels at once every running (CREATED or ACTIVE, not ended) offer matching the filters of the query
+     *
+     * @param query the filters, at least one of them set
+     * @return the number of cancelled offers
+     * @throws InvalidOfferRequestException - if no filter is set
+     */
+    public int cancelAll(final OfferCancelQuery query);
+
 }
@@ -1,17 +1,39 @@
 package uk.worldpay.offers.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.annotation.Propagation;
+import uk.worldpay.offers.exceptions.ActiveOfferNotFoundException;
 import uk.worldpay.offers.exceptions.CancelNotAllowedException;
 import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
-import uk.worldpay.offers.exceptions.OfferNotFoundException;;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
+import uk.worldpay.offers.exceptions.OfferNotFoundException;
+import uk.worldpay.offers.exceptions.OfferVersionMismatchException;
+import uk.worldpay.offers.domain.ArchivedOffer;
 import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferEvent;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+import uk.worldpay.offers.repository.ArchivedOfferRepository;
 import uk.worldpay.offers.repository.OfferRepository;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -20,6 +42,8 @@ import java.util.stream.Stream;
  * Class OfferServiceImpl
  *
  * Implements the services related to the Offer domain in OfferService.
+ * Creations and cancellations are published as OfferEvents.
+ * Offers moved to the archive by OfferArchiveJob are looked up there when they are not in the offer table.
  *
  * @author laurinf
  *
@@ -30,11 +54,35 @@ import java.util.stream.Stream;
 @Transactional
 public class OfferServiceImpl implements OfferService {
 
+    /**
+     * maximum number of item ids bound to one IN predicate
+     */
+    private static final int MAX_ITEMS_PER_QUERY = 1000;
+
+    /**
+     * order of the timeline of an item: by starting date, then by id
+     */
+    private static final Comparator<Offer> TIMELINE_ORDER =
+            Comparator.comparing(Offer::getStartDate).thenComparing(Offer::getId);
 
     private final OfferRepository offerRepository;
 
+    private final OfferConflictChecker conflictChecker;
+
+    private final OfferCache offerCache;
+
+    private final ItemLocks itemLocks;
+
+    private final ApplicationEventPublisher events;
+
+    /**
+     * the archived offers, absent when the offers are kept in memory
+     */
+    private final Optional<ArchivedOfferRepository> archivedOfferRepository;
     /**
-     * Creates a new offer for an item in a defined period
+     * Creates a new offer for an item in a defined period. The item is locked until the transaction completes,
+     * so that two concurrent creations can not both pass the conflict check, and the conflict checker is refreshed
+     * under the lock with the offers committed by the other nodes. The id and version of the given offer are ignored.
      *
      * @param offer the offer to be created
      * @return a new offer
@@ -42,15 +90,87 @@ public class OfferServiceImpl implements OfferService {
      */
     @Override
     public Offer create(final Offer offer) throws ExistingActiveOfferException {
-        List<Offer> offersForItem =  Stream.concat(offerRepository.findByItemIdAndStatus(offer.getItemId(),Offer.Status.CREATED).stream(),
-                offerRepository.findByItemIdAndStatus(offer.getItemId(),Offer.Status.ACTIVE).stream()).collect(Collectors.toList());
-        for (Offer createdOffer: offersForItem) {
-            if ((offer.getStartDate().toInstant().isBefore(createdOffer.getStartDate().toInstant()))
-                    && (offer.getStartDate().toInstant().isAfter(offer.getEndDate().toInstant()))) {
-                        throw new ExistingActiveOfferException(offer.getItemId());
+        offer.setId(null);
+        offer.setVersion(null);
+        itemLocks.lockUntilCompletion(Collections.singleton(offer.getItemId()));
+        conflictChecker.refresh(Collections.singleton(offer.getItemId()));
+        if (conflictChecker.conflicts(offer)) {
+            throw new ExistingActiveOfferException(offer.getItemId());
+        }
+        Offer created = offerRepository.save(offer);
+        offerCache.created(Collections.singleton(created.getId()));
+        conflictChecker.created(created);
+        events.publishEvent(new OfferEvent(OfferEvent.Type.CREATED, created));
+        return created;
+    }
+
+
+    /**
+     * Creates a batch of offers in a single transaction. Each offer is checked against the running offers and
+     * against the offers of the batch before it; the offers that fail the checks are rejected, the others created.
+     * The items of the batch are locked until the transaction completes, their running offers are fetched once,
+     * and the created offers are inserted with JDBC batching.
+     *
+     * @param offers the offers to be created
+     * @return the outcome of the creation of each offer, in the order of the batch
+     */
+    @Override
+    public List<OfferCreationResult> createAll(final List<Offer> offers) {
+        Set<Long> itemIds = offers.stream()
+                // a missing offer is rejected by the validation
+                .filter(Objects::nonNull)
+                .map(Offer::getItemId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        itemLocks.lockUntilCompletion(itemIds);
+        conflictChecker.refresh(itemIds);
+        OfferIntervalIndex batchIndex = conflictChecker.snapshot(itemIds);
+        Date now = new Date();
+
+        List<OfferCreationResult> results = new ArrayList<>(offers.size());
+        List<Offer> accepted = new ArrayList<>();
+        for (int i = 0; i < offers.size(); i++) {
+            Offer offer = offers.get(i);
+            String error = validate(offer);
+            if (error == null && batchIndex.conflicts(offer, now)) {
+                error = new ExistingActiveOfferException(offer.getItemId()).getMessage();
+            }
+            if (error != null) {
+                results.add(OfferCreationResult.rejected(i, offer, error));
+            } else {
+                offer.setId(null);
+                offer.setVersion(null);
+                batchIndex.add(offer);
+                accepted.add(offer);
+                results.add(OfferCreationResult.created(i, offer));
             }
         }
-        return offerRepository.save(offer);
+
+        offerRepository.saveAll(accepted);
+        offerCache.created(accepted.stream().map(Offer::getId).collect(Collectors.toList()));
+        accepted.forEach(offer -> {
+            conflictChecker.created(offer);
+            events.publishEvent(new OfferEvent(OfferEvent.Type.CREATED, offer));
+        });
+        return results;
+    }
+
+    /**
+     * @param offer an offer to be created
+     * @return the reason why the offer can not be created, null if it is valid
+     */
+    protected String validate(Offer offer) {
+        if (offer == null) {
+            return "The offer is missing";
+        }
+        if (offer.getItemId() == null || offer.getPrice() == null
+                || offer.getStartDate() == null || offer.getEndDate() == null) {
+            return "The offer must have an itemId, a price, a startDate and an endDate";
+        }
+        if (offer.getEndDate().before(offer.getStartDate())) {
+            return "The endDate of the offer is before its startDate";
+        }
+        return null;
     }
 
 
@@ -60,6 +180,7 @@ public class OfferServiceImpl implements OfferService {
      * @return a list of offers
      */
     @Override
+    @Transactional(readOnly = true)
     public List<Offer> findAll() {
         List<Offer> offers =  offerRepository.findAll();
         offers.forEach(o -> this.updateStatus(o));
@@ -69,62 +190,247 @@ public class OfferServiceImpl implements OfferService {
 
 
     /**
-     * @param offer an offer
-     * @param newStatus the new status for the given offer
-     * @return the offer updated with the new status
+     * Passes every offer, in id order, to the given action, reading them one at a time from a database cursor
+     * instead of loading the whole list
+     *
+     * @param action the action applied to each offer, with its status updated
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachOffer(final Consumer<Offer> action) {
+        try (Stream<Offer> offers = offerRepository.streamAll()) {
+            offers.map(this::updateStatus).forEach(action);
+        }
+    }
+
+
+    /**
+     * Returns one page of the offers matching the filters of the query, starting at its cursor.
+     * One more offer than the page size is read to know whether there is a page beyond this one.
+     *
+     * @param query the filters, cursor and size of the page
+     * @return a page of offers ordered by id
+     * @throws InvalidOfferRequestException - if both the after and the before cursors are set
      */
-    protected Offer updateStatus(Offer offer, Offer.Status newStatus) {
-        offer.setStatus(newStatus);
-        return offerRepository.save(offer);
+    @Override
+    @Transactional(readOnly = true)
+    public OfferPage findPage(final OfferQuery query) {
+        if (query.getAfter() != null && query.getBefore() != null) {
+            throw new InvalidOfferRequestException("A page is read either after or before a cursor, not both");
+        }
+        int size = query.getPageSize();
+        List<Offer> offers = offerRepository.findPage(query, new Date(), size + 1);
+        boolean more = offers.size() > size;
+        if (more) {
+            offers = new ArrayList<>(offers.subList(0, size));
+        }
+        offers.forEach(o -> this.updateStatus(o));
+
+        if (query.isBackwards()) {
+            Collections.reverse(offers);
+            return new OfferPage(query, offers, true, more);
+        }
+        return new OfferPage(query, offers, more, query.getAfter() != null);
     }
 
 
     /**
-     * Updates the status of an offer as follows:
+     * Updates the status of an offer, in memory, as follows:
      *
-     *   if the offer is in CREATED status and the starting date is before the current date, it will be updated to ACTIVE
+     *   if the offer is in CREATED status and the starting date is not after the current date, it will be updated to ACTIVE
      *   if the offer is in CREATED or ACTIVE status and the expiring date is before the current date, it will be updated to EXPIRED
      *   if the offer is in EXPIRED or CANCELLED status, it will do nothing.
      *
-     * This method has to be invoked before returning the offer, to avoid data clashing between the dates and status
+     * This method has to be invoked before returning the offer, to avoid data clashing between the dates and status.
+     * It never writes the offer: the persistent status is brought up to date by {@link OfferStatusTransitionJob}.
      *
      * @param offer the offer whose status has to be updated
      * @return the offer with the status updated
      */
     protected Offer updateStatus(Offer offer) {
-           if (offer.getStatus().equals(Offer.Status.CREATED)) {
-               if (offer.getStartDate().toInstant().isAfter(Instant.now())) {
-                   return updateStatus(offer, Offer.Status.ACTIVE);
-               }
-               if (offer.getEndDate().toInstant().isBefore(Instant.now())) {
-                   return updateStatus(offer, Offer.Status.EXPIRED);
-               }
-           }
-           if (offer.getStatus().equals(Offer.Status.ACTIVE)) {
-               if (offer.getEndDate().toInstant().isBefore(Instant.now())) {
-                   return updateStatus(offer, Offer.Status.EXPIRED);
-               }
-           }
-
-          return offer;
+        offer.setStatus(offer.statusAt(Instant.now()));
+        return offer;
     }
 
     /**
-     * Finds an offer from its id
+     * Finds an offer from its id, through the offer cache. No transaction is opened: the offers found in the cache,
+     * and the ids known to be missing, are answered without reaching the database.
      *
      * @param id the id of the offer to be returned
      * @return the offer with the given id
      * @throws OfferNotFoundException - if the given id does not match any offer
      */
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Offer findById(final Long id) throws OfferNotFoundException {
 
-            Offer o = offerRepository.findById(id)
-                    .orElseThrow(() -> new OfferNotFoundException(id));
-            return this.updateStatus(o);
+            return offerCache.get(id, this::load);
 
         }
 
+    /**
+     * Loads an offer from the repository, or from the archive if it has been archived. An id found in neither is
+     * recorded as missing in the offer cache, and is not looked up again while it stays there.
+     *
+     * @param id the id of the offer to be returned
+     * @return the offer with the given id, with its status updated
+     * @throws OfferNotFoundException - if the given id does not match any offer
+     */
+    protected Offer load(final Long id) throws OfferNotFoundException {
+        if (offerCache.isMissing(id)) {
+            throw new OfferNotFoundException(id);
+        }
+        long generation = offerCache.generation();
+        Optional<Offer> offer = offerRepository.findById(id);
+        if (!offer.isPresent()) {
+            offer = archivedOfferRepository.flatMap(archive -> archive.findById(id)).map(ArchivedOffer::toOffer);
+        }
+        if (!offer.isPresent()) {
+            offerCache.missing(id, generation);
+            throw new OfferNotFoundException(id);
+        }
+        return this.updateStatus(offer.get());
+    }
+
+    /**
+     * Returns every offer of an item, those in the offer table and the archived ones, in id order
+     *
+     * @param itemId the id of the item
+     * @return the offers of the item, with their status updated
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Offer> findHistory(final Long itemId) {
+        List<Offer> offers = offerRepository.findByItemIdOrderById(itemId);
+        offers.forEach(o -> this.updateStatus(o));
+        archivedOfferRepository.ifPresent(archive -> {
+            archive.findByItemIdOrderById(itemId).forEach(archived -> offers.add(archived.toOffer()));
+            offers.sort(Comparator.comparing(Offer::getId));
+        });
+        return offers;
+    }
+
+    /**
+     * Passes the offers of an item overlapping a window to the given action in starting date (then id) order,
+     * merging as they are read the cursors over the offer table and over the archive, which are both ordered by
+     * starting date: neither the timeline nor the archive is loaded as a whole.
+     *
+     * @param itemId the id of the item
+     * @param from the start of the window
+     * @param to the end of the window
+     * @param action the action applied to each offer, with its status updated
+     * @throws InvalidOfferRequestException - if the window ends before it starts
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachOfferOfItem(final Long itemId, final Instant from, final Instant to,
+                                   final Consumer<Offer> action) {
+        if (to.isBefore(from)) {
+            throw new InvalidOfferRequestException("The end of the window is before its start");
+        }
+        Date start = Date.from(from);
+        Date end = Date.from(to);
+        try (Stream<Offer> offers = offerRepository.streamTimeline(itemId, start, end);
+             Stream<Offer> archived = archivedOfferRepository
+                     .map(archive -> archive.streamTimeline(itemId, start, end).map(ArchivedOffer::toOffer))
+                     .orElseGet(Stream::empty)) {
+            Iterator<Offer> current = offers.map(this::updateStatus).iterator();
+            Iterator<Offer> past = archived.iterator();
+            Offer nextCurrent = next(current);
+            Offer nextPast = next(past);
+            while (nextCurrent != null || nextPast != null) {
+                if (nextPast == null || (nextCurrent != null && TIMELINE_ORDER.compare(nextCurrent, nextPast) <= 0)) {
+                    action.accept(nextCurrent);
+                    nextCurrent = next(current);
+                } else {
+                    action.accept(nextPast);
+                    nextPast = next(past);
+                }
+            }
+        }
+    }
+
+    private static Offer next(Iterator<Offer> offers) {
+        return offers.hasNext() ? offers.next() : null;
+    }
+
+    /**
+     * Finds the offer of an item in effect at an instant. The current instant (at null) and future instants are
+     * answered by the conflict checker, from its in-memory index unless the index is disabled, without opening
+     * a transaction; past instants, for which the index no longer holds the expired offers, are answered by the
+     * repository, then by the archive.
+     *
+     * @param itemId the id of the item
+     * @param at the instant, null for the current instant
+     * @return the offer in effect, with its status updated
+     * @throws ActiveOfferNotFoundException - if no offer of the item is in effect at that instant
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Offer findActive(final Long itemId, final Instant at) throws ActiveOfferNotFoundException {
+        Instant instant = at != null ? at : Instant.now();
+        Date date = Date.from(instant);
+        Offer offer;
+        if (isPast(at)) {
+            offer = offerRepository.findInEffect(itemId, date).stream().findFirst().orElse(null);
+            if (offer == null) {
+                offer = archivedOfferRepository.flatMap(archive -> archive.findInEffect(itemId, date).stream().findFirst())
+                        .map(ArchivedOffer::toOffer)
+                        .orElse(null);
+            }
+        } else {
+            // the offers of the index are shared: the caller gets a copy
+            offer = Optional.ofNullable(conflictChecker.findRunning(itemId, date)).map(Offer::copy).orElse(null);
+        }
+        if (offer == null) {
+            throw new ActiveOfferNotFoundException(itemId, instant);
+        }
+        return this.updateStatus(offer);
+    }
+
+    /**
+     * Finds the offer of each item in effect at an instant, in the same way as findActive for one item:
+     * in memory for the current instant (at null) and future instants, with one set-based query per thousand items
+     * for past instants, and another one in the archive for the items without an offer in the offer table
+     *
+     * @param itemIds the ids of the items
+     * @param at the instant, null for the current instant
+     * @return the offer in effect, with its status updated, of each item that has one, by item id
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Map<Long, Offer> findActive(final Collection<Long> itemIds, final Instant at) {
+        Date date = Date.from(at != null ? at : Instant.now());
+        boolean past = isPast(at);
+        Map<Long, Offer> offers;
+        if (past) {
+            offers = offerRepository.findInEffectByItem(itemIds, date);
+        } else {
+            // the offers of the index are shared: the caller gets copies
+            offers = conflictChecker.findRunning(itemIds, date);
+            offers.replaceAll((itemId, offer) -> offer.copy());
+        }
+        offers.values().forEach(o -> this.updateStatus(o));
+        if (past && archivedOfferRepository.isPresent()) {
+            List<Long> missing = itemIds.stream().filter(itemId -> !offers.containsKey(itemId))
+                    .distinct().collect(Collectors.toList());
+            for (int from = 0; from < missing.size(); from += MAX_ITEMS_PER_QUERY) {
+                archivedOfferRepository.get()
+                        .findInEffectByItem(missing.subList(from, Math.min(missing.size(), from + MAX_ITEMS_PER_QUERY)), date)
+                        .forEach(archived -> offers.putIfAbsent(archived.getItemId(), archived.toOffer()));
+            }
+        }
+        return offers;
+    }
+
+    /**
+     * @return true if the instant of a lookup is in the past; the current instant is given as null, so that it is
+     *         never taken for a past one by the time it is compared
+     */
+    private static boolean isPast(Instant at) {
+        return at != null && at.isBefore(Instant.now());
+    }
+
     /**
      * Cancels an offer with a given id. This method doesn't delete the persistent representation of the object.
      * It will update the status to CANCELLED and create a cancellation date.
@@ -136,14 +442,68 @@ public class OfferServiceImpl implements OfferService {
      */
     @Override
     public void cancel(final Long idOffer) throws CancelNotAllowedException, OfferNotFoundException {
-        Offer offer = this.findById(idOffer);
+        cancel(idOffer, null);
+    }
+
+    /**
+     * Cancels an offer with a given id, provided that it is still at one of the given versions. The update is made
+     * from the version read, so that an update committed by another transaction meanwhile makes it fail
+     * with an OptimisticLockingFailureException instead of being overwritten.
+     *
+     * A cancellation without version of an offer cached as EXPIRED or CANCELLED, statuses that never change again,
+     * is refused without reading the offer.
+     *
+     * @param idOffer the id of the offer to be cancelled
+     * @param versions the versions the offer has to be at one of, null for any version
+     *
+     * @throws CancelNotAllowedException - if the idOffer is already in EXPIRED or CANCELLED status
+     * @throws OfferNotFoundException - if the given id does not match any offer
+     * @throws OfferVersionMismatchException - if the offer is at none of the given versions
+     */
+    @Override
+    public void cancel(final Long idOffer, final Collection<Long> versions)
+            throws CancelNotAllowedException, OfferNotFoundException, OfferVersionMismatchException {
+        Offer cached = versions == null ? offerCache.getIfPresent(idOffer) : null;
+        if (cached != null && (cached.getStatus() == Offer.Status.EXPIRED
+                || cached.getStatus() == Offer.Status.CANCELLED)) {
+            throw new CancelNotAllowedException(idOffer, cached.getStatus());
+        }
+        Offer offer = this.load(idOffer);
+        if (versions != null && !versions.contains(offer.getVersion())) {
+            throw new OfferVersionMismatchException(idOffer, versions, offer.getVersion());
+        }
         if (offer.getStatus().equals(Offer.Status.CREATED) || (offer.getStatus().equals(Offer.Status.ACTIVE))) {
             offer.setCancelDate(new Date());
             offer.setStatus(Offer.Status.CANCELLED);
             offerRepository.save(offer);
+            offerCache.evict(offer.getId());
+            conflictChecker.cancelled(offer);
+            events.publishEvent(new OfferEvent(OfferEvent.Type.CANCELLED, offer));
         } else {
             throw new CancelNotAllowedException(offer.getId(),offer.getStatus());
         }
     }
 
+    /**
+     * Cancels at once every running offer matching the filters of the query, by batches of offers locked and
+     * updated in a single statement each, instead of reading and saving them one by one.
+     * Each batch of cancelled offers is evicted from the offer cache, removed from the conflict checker and its
+     * cancellations published before the next one is cancelled.
+     *
+     * @param query the filters, at least one of them set
+     * @return the number of cancelled offers
+     * @throws InvalidOfferRequestException - if no filter is set
+     */
+    @Override
+    public int cancelAll(final OfferCancelQuery query) {
+        if (query.isEmpty()) {
+            throw new InvalidOfferRequestException("Cancelling offers at once requires an itemId or an endingBefore date");
+        }
+        return offerRepository.cancelAll(query, new Date(), offers -> {
+            offerCache.evictAll(offers.stream().map(Offer::getId).collect(Collectors.toList()));
+            conflictChecker.cancelledAll(offers);
+            offers.forEach(offer -> events.publishEvent(new OfferEvent(OfferEvent.Type.CANCELLED, offer)));
+        });
+    }
+
 }
@@ -0,0 +1,64 @@
+package uk.worldpay.offers.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Class OfferStatusTransitionJob
+ *
+ * Scheduled job bringing the persistent status of the offers up to date with their dates.
+ * Each run issues one set-based update per transition instead of saving the offers one by one:
+ *
+ *   CREATED or ACTIVE offers whose expiring date has passed are moved to EXPIRED
+ *   CREATED offers whose starting date has arrived are moved to ACTIVE
+ *
+ * The delay between runs is configured with the property offers.status.transition-delay (milliseconds).
+ * Transitions are normally applied on time by OfferTransitionScheduler; this job catches up with the offers it does
+ * not know about, such as those created on other nodes.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class OfferStatusTransitionJob {
+
+    private static final List<Offer.Status> RUNNING = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+    private final OfferRepository offerRepository;
+
+    private final OfferConflictChecker conflictChecker;
+
+    private final OfferCache offerCache;
+
+    /**
+     * Applies the pending status transitions
+     *
+     * @return the number of offers whose status has been updated
+     */
+    @Scheduled(fixedDelayString = "${offers.status.transition-delay:60000}")
+    @Transactional
+    public int transition() {
+        Date now = new Date();
+        int expired = offerRepository.updateStatusOfEnded(RUNNING, Offer.Status.EXPIRED, now);
+        conflictChecker.expired(now);
+        int activated = offerRepository.updateStatusOfStarted(
+                Collections.singletonList(Offer.Status.CREATED), Offer.Status.ACTIVE, now);
+        if (expired + activated > 0) {
+            offerCache.evictAll();
+            log.info("Offer status transitions: {} activated, {} expired", activated, expired);
+        }
+        return expired + activated;
+    }
+}
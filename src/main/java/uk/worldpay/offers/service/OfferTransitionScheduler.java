@@ -0,0 +1,173 @@
+package uk.worldpay.offers.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferEvent;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Class OfferTransitionScheduler
+ *
+ * Moves each offer to ACTIVE at its starting date and to EXPIRED right after its expiring date, instead of waiting
+ * for the next run of OfferStatusTransitionJob. The starting and expiring dates of the running offers are scheduled
+ * in a TimingWheel when the offers are loaded at startup and when they are created. Every tick
+ * (offers.wheel.tick, milliseconds) the due transitions are applied in batches: the offers still in a status that
+ * allows the transition are locked, then updated with one statement per thousand offers, and an ACTIVATED or EXPIRED
+ * OfferEvent is published for each of them.
+ *
+ * Cancelled offers are left in the wheel and skipped when due. Offers created on other nodes are not scheduled:
+ * OfferStatusTransitionJob still sweeps them.
+ *
+ * @author laurinf
+ *
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "offers.wheel.enabled", havingValue = "true", matchIfMissing = true)
+public class OfferTransitionScheduler {
+
+    private static final List<Offer.Status> RUNNING = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    /**
+     * the lowest bit of a scheduled value tells the transition, the other bits hold the id of the offer
+     */
+    private static final long ACTIVATE = 0L;
+    private static final long EXPIRE = 1L;
+
+    private final OfferRepository offerRepository;
+
+    private final OfferConflictChecker conflictChecker;
+
+    private final OfferCache offerCache;
+
+    private final ApplicationEventPublisher events;
+
+    private final long tickMillis;
+
+    private final TimingWheel wheel;
+
+    public OfferTransitionScheduler(OfferRepository offerRepository,
+                                    OfferConflictChecker conflictChecker,
+                                    OfferCache offerCache,
+                                    ApplicationEventPublisher events,
+                                    @Value("${offers.wheel.tick:1000}") long tickMillis) {
+        this.offerRepository = offerRepository;
+        this.conflictChecker = conflictChecker;
+        this.offerCache = offerCache;
+        this.events = events;
+        this.tickMillis = tickMillis;
+        this.wheel = new TimingWheel(System.currentTimeMillis() / tickMillis);
+    }
+
+    /**
+     * Schedules the transitions of the running offers in the repository
+     */
+    @PostConstruct
+    public void load() {
+        offerRepository.findByStatusIn(RUNNING).forEach(this::schedule);
+        log.info("Offer transition wheel loaded with {} transitions", wheel.size());
+    }
+
+    /**
+     * Schedules the transitions of the created offers, once their creation is committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOfferEvent(OfferEvent event) {
+        if (event.getType() == OfferEvent.Type.CREATED) {
+            schedule(event.getOffer());
+        }
+    }
+
+    /**
+     * Schedules the activation of a CREATED offer and the expiry of a running offer
+     *
+     * @param offer the offer
+     */
+    public void schedule(Offer offer) {
+        long id = offer.getId();
+        if (offer.getStatus() == Offer.Status.CREATED) {
+            wheel.schedule(tickAt(offer.getStartDate().getTime()), id << 1 | ACTIVATE);
+        }
+        if (RUNNING.contains(offer.getStatus())) {
+            // the period is inclusive: the offer expires one millisecond after its expiring date
+            wheel.schedule(tickAt(offer.getEndDate().getTime() + 1), id << 1 | EXPIRE);
+        }
+    }
+
+    /**
+     * @return the first tick starting at or after the given time, so that no transition is applied early
+     */
+    private long tickAt(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+
+    /**
+     * Applies the transitions due by now
+     *
+     * @return the number of offers whose status has been updated
+     */
+    @Scheduled(fixedDelayString = "${offers.wheel.tick:1000}")
+    @Transactional
+    public int fire() {
+        Date now = new Date();
+        List<Long> toActivate = new ArrayList<>();
+        List<Long> toExpire = new ArrayList<>();
+        wheel.advance(now.getTime() / tickMillis, value ->
+                ((value & 1) == ACTIVATE ? toActivate : toExpire).add(value >>> 1));
+
+        int expired = transition(toExpire, RUNNING, Offer.Status.EXPIRED, OfferEvent.Type.EXPIRED);
+        if (!toExpire.isEmpty()) {
+            conflictChecker.expired(now);
+        }
+        int activated = transition(toActivate, Collections.singletonList(Offer.Status.CREATED), Offer.Status.ACTIVE,
+                OfferEvent.Type.ACTIVATED);
+        if (expired + activated > 0) {
+            log.debug("Offer transitions on time: {} activated, {} expired", activated, expired);
+        }
+        return expired + activated;
+    }
+
+    private int transition(List<Long> ids, List<Offer.Status> statuses, Offer.Status newStatus, OfferEvent.Type type) {
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+            List<Offer> offers = offerRepository.findByIdInAndStatusIn(chunk, statuses);
+            if (offers.isEmpty()) {
+                continue;
+            }
+            List<Long> locked = new ArrayList<>(offers.size());
+            offers.forEach(offer -> locked.add(offer.getId()));
+            updated += offerRepository.updateStatusOfIds(locked, statuses, newStatus);
+            for (Offer offer : offers) {
+                offerCache.evict(offer.getId());
+                offer.setStatus(newStatus);
+                offer.setVersion(offer.getVersion() + 1);
+                events.publishEvent(new OfferEvent(type, offer));
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @return the number of transitions scheduled and not yet due
+     */
+    public int size() {
+        return wheel.size();
+    }
+}
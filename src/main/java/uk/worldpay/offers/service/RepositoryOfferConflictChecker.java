@@ -0,0 +1,85 @@
+package uk.worldpay.offers.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class RepositoryOfferConflictChecker
+ *
+ * OfferConflictChecker asking the database, with a single query, whether a running offer overlaps the new one
+ * or which offer is running at a date
+ *
+ * @author laurinf
+ *
+ */
+@RequiredArgsConstructor
+@Component
+@ConditionalOnProperty(name = "offers.index.enabled", havingValue = "false")
+public class RepositoryOfferConflictChecker implements OfferConflictChecker {
+
+    private static final List<Offer.Status> RUNNING = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+    private static final int MAX_ITEMS_PER_QUERY = 1000;
+
+    private final OfferRepository offerRepository;
+
+    @Override
+    public boolean conflicts(Offer offer) {
+        return offerRepository.existsOverlapping(offer.getItemId(), RUNNING, offer.getStartDate(),
+                offer.getEndDate(), new Date());
+    }
+
+    @Override
+    public Offer findRunning(Long itemId, Date at) {
+        return offerRepository.findInEffect(itemId, at).stream().findFirst().orElse(null);
+    }
+
+    @Override
+    public Map<Long, Offer> findRunning(Collection<Long> itemIds, Date at) {
+        return offerRepository.findInEffectByItem(itemIds, at);
+    }
+
+    /**
+     * Nothing to do: every check reads the repository
+     */
+    @Override
+    public void refresh(Collection<Long> itemIds) {
+    }
+
+    @Override
+    public OfferIntervalIndex snapshot(Collection<Long> itemIds) {
+        OfferIntervalIndex index = new OfferIntervalIndex();
+        List<Long> ids = new ArrayList<>(itemIds);
+        for (int from = 0; from < ids.size(); from += MAX_ITEMS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_ITEMS_PER_QUERY));
+            offerRepository.findByItemIdInAndStatusIn(chunk, RUNNING).forEach(index::add);
+        }
+        return index;
+    }
+
+    @Override
+    public void created(Offer offer) {
+    }
+
+    @Override
+    public void cancelled(Offer offer) {
+    }
+
+    @Override
+    public void cancelledAll(Collection<Offer> offers) {
+    }
+
+    @Override
+    public void expired(Date now) {
+    }
+}
@@ -0,0 +1,173 @@
+package uk.worldpay.offers.service;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Class TimingWheel
+ *
+ * Hierarchical timing wheel of long values, each due at a deadline expressed in ticks.
+ * There are 6 levels of 64 slots: level 0 holds the values due within the current 64 ticks, one slot per tick,
+ * and each slot of level n covers 64^n ticks. A value is scheduled in O(1), in the slot of the highest level at which
+ * its deadline differs from the current tick. When the wheel reaches the start of a slot of a higher level,
+ * its values are moved down to the lower levels, so each value is moved at most 5 times before it is due.
+ *
+ * Values and deadlines are kept in primitive arrays, 16 bytes per scheduled value, with no object per value.
+ * Deadlines more than 64^6 ticks ahead are kept apart until the wheel gets close enough.
+ *
+ * @author laurinf
+ *
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 6;
+
+    /**
+     * capacity a slot is shrunk back to once drained, so that a burst of values does not hold memory afterwards
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Slot[][] levels = new Slot[LEVELS][SLOTS];
+
+    /**
+     * values whose deadline had passed when they were scheduled
+     */
+    private final Slot pending = new Slot();
+
+    /**
+     * values due beyond the range of the wheel
+     */
+    private final Slot overflow = new Slot();
+
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param startTick the current tick
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        for (Slot[] level : levels) {
+            for (int i = 0; i < SLOTS; i++) {
+                level[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Schedules a value. A deadline that has already passed is due at the next advance.
+     *
+     * @param deadline the tick at which the value is due
+     * @param value the value
+     */
+    public synchronized void schedule(long deadline, long value) {
+        place(deadline, value);
+        size++;
+    }
+
+    private void place(long deadline, long value) {
+        if (deadline <= currentTick) {
+            pending.add(deadline, value);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / BITS;
+        if (level >= LEVELS) {
+            overflow.add(deadline, value);
+            return;
+        }
+        levels[level][(int) (deadline >>> (BITS * level)) & (SLOTS - 1)].add(deadline, value);
+    }
+
+    /**
+     * Moves the wheel forward, tick by tick, and passes every value due at or before the given tick to the action,
+     * in deadline order across ticks
+     *
+     * @param tick the tick to move to
+     * @param due the action applied to each due value
+     * @return the number of due values
+     */
+    public synchronized int advance(long tick, LongConsumer due) {
+        int fired = drain(pending, due);
+        while (currentTick < tick) {
+            long t = ++currentTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((t & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(levels[level][(int) (t >>> (BITS * level)) & (SLOTS - 1)]);
+                }
+            }
+            if ((t & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+                cascade(overflow);
+            }
+            fired += drain(levels[0][(int) t & (SLOTS - 1)], due);
+            fired += drain(pending, due);
+        }
+        size -= fired;
+        return fired;
+    }
+
+    private void cascade(Slot slot) {
+        if (slot.size == 0) {
+            return;
+        }
+        long[] deadlines = slot.deadlines;
+        long[] values = slot.values;
+        int count = slot.size;
+        slot.reset();
+        for (int i = 0; i < count; i++) {
+            place(deadlines[i], values[i]);
+        }
+    }
+
+    private int drain(Slot slot, LongConsumer due) {
+        int count = slot.size;
+        for (int i = 0; i < count; i++) {
+            due.accept(slot.values[i]);
+        }
+        slot.reset();
+        return count;
+    }
+
+    /**
+     * @return the tick the wheel has reached
+     */
+    public synchronized long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the number of scheduled values not yet due
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Growable arrays of deadlines and values
+     */
+    private static final class Slot {
+
+        private long[] deadlines = new long[INITIAL_CAPACITY];
+        private long[] values = new long[INITIAL_CAPACITY];
+        private int size;
+
+        void add(long deadline, long value) {
+            if (size == values.length) {
+                deadlines = Arrays.copyOf(deadlines, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+            }
+            deadlines[size] = deadline;
+            values[size] = value;
+            size++;
+        }
+
+        void reset() {
+            if (values.length > INITIAL_CAPACITY) {
+                deadlines = new long[INITIAL_CAPACITY];
+                values = new long[INITIAL_CAPACITY];
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package uk.worldpay.offers;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs the tests of OfferIdempotencyIntegrationTest with the offers kept by InMemoryOfferRepository,
+ * where the idempotency keys are only kept in memory
+ */
+@ActiveProfiles("inmemory")
+public class InMemoryOfferIdempotencyIntegrationTest extends OfferIdempotencyIntegrationTest {
+}
@@ -0,0 +1,114 @@
+package uk.worldpay.offers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.InMemoryOfferRepository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryOfferRepositoryTest extends OfferRepositoryContractTest {
+
+    @Before
+    public void setUp() {
+        offerRepository = new InMemoryOfferRepository();
+    }
+
+    @Override
+    protected void persist(Offer offer) {
+        offerRepository.save(offer);
+    }
+
+    @Override
+    protected void flush() {
+    }
+
+    @Test
+    public void whenOffersSavedDeletedAndMoved_thenLookupsFollow() {
+        long day = TimeUnit.DAYS.toMillis(1);
+        long now = System.currentTimeMillis();
+        for (long i = 0; i < 5000; i++) {
+            Offer offer = new Offer();
+            offer.setItemId(i % 7);
+            offer.setPrice(1.0);
+            offer.setStartDate(new Date(now + i * day));
+            offer.setEndDate(new Date(now + i * day + 1));
+            offerRepository.save(offer);
+        }
+        for (long id = 1; id <= 5000; id += 2) {
+            offerRepository.deleteById(id);
+        }
+        Offer moved = offerRepository.findById(2L).get();
+        moved.setItemId(100L);
+        offerRepository.save(moved);
+
+        assertThat(offerRepository.count()).isEqualTo(2500);
+        assertThat(offerRepository.findById(1L)).isEmpty();
+        assertThat(offerRepository.findById(5000L).get().getItemId()).isEqualTo(4999L % 7);
+        assertThat(offerRepository.findByItemIdAndStatus(100L, Offer.Status.CREATED))
+                .extracting(Offer::getId).containsExactly(2L);
+        assertThat(offerRepository.findInEffect(1L, new Date(now + day))).isEmpty();
+        try (Stream<Offer> offers = offerRepository.streamAll()) {
+            assertThat(offers.map(Offer::getId).collect(Collectors.toList()))
+                    .hasSize(2500).isSorted().startsWith(2L, 4L, 6L);
+        }
+    }
+
+    @Test
+    public void whenTransactionRolledBack_thenItsWritesAreUndone() {
+        long now = System.currentTimeMillis();
+        Offer updated = offer(1L, now);
+        offerRepository.save(updated);
+        Offer deleted = offer(2L, now);
+        offerRepository.save(deleted);
+        Offer updatedByOther = offer(3L, now);
+        offerRepository.save(updatedByOther);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            Offer inserted = offerRepository.save(offer(4L, now));
+            Offer moved = offerRepository.findById(updated.getId()).get();
+            moved.setItemId(5L);
+            offerRepository.save(moved);
+            offerRepository.deleteById(deleted.getId());
+            offerRepository.save(offerRepository.findById(updatedByOther.getId()).get());
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+
+            // written by another transaction before the rollback
+            Offer other = offerRepository.findById(updatedByOther.getId()).get();
+            other.setDescription("changed by another transaction");
+            offerRepository.save(other);
+            synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+            assertThat(offerRepository.findById(inserted.getId())).isEmpty();
+            assertThat(offerRepository.findById(updated.getId())).contains(updated);
+            assertThat(offerRepository.findByItemIdAndStatus(1L, Offer.Status.CREATED)).containsExactly(updated);
+            assertThat(offerRepository.findByItemIdAndStatus(5L, Offer.Status.CREATED)).isEmpty();
+            assertThat(offerRepository.findById(deleted.getId())).contains(deleted);
+            assertThat(offerRepository.findById(updatedByOther.getId()).get().getDescription())
+                    .isEqualTo("changed by another transaction");
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+    }
+
+    private static Offer offer(long itemId, long now) {
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setPrice(1.0);
+        offer.setStartDate(new Date(now));
+        offer.setEndDate(new Date(now + TimeUnit.DAYS.toMillis(1)));
+        return offer;
+    }
+}
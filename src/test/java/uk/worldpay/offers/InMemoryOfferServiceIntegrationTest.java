@@ -0,0 +1,10 @@
+package uk.worldpay.offers;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs the tests of OfferServiceIntegrationTest with the offers kept by InMemoryOfferRepository
+ */
+@ActiveProfiles("inmemory")
+public class InMemoryOfferServiceIntegrationTest extends OfferServiceIntegrationTest {
+}
@@ -0,0 +1,56 @@
+package uk.worldpay.offers;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.InMemoryOfferRepository;
+import uk.worldpay.offers.service.IndexedOfferConflictChecker;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexedOfferConflictCheckerTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private InMemoryOfferRepository offerRepository;
+    private IndexedOfferConflictChecker checker;
+    private Offer running;
+
+    private Offer offer(long itemId, int startDay, int endDay) {
+        long now = System.currentTimeMillis();
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setPrice(10.10);
+        offer.setStatus(Offer.Status.ACTIVE);
+        offer.setStartDate(new Date(now + startDay * DAY));
+        offer.setEndDate(new Date(now + endDay * DAY));
+        return offer;
+    }
+
+    @Before
+    public void setUp() {
+        offerRepository = new InMemoryOfferRepository();
+        running = offerRepository.save(offer(1L, -1, 3)).copy();
+        checker = new IndexedOfferConflictChecker(offerRepository);
+        checker.rebuild();
+    }
+
+    @Test
+    public void whenOffersChangedByAnotherNode_thenSeenAfterReload() {
+        // another node creates an offer for item 2 and cancels the one of item 1
+        Offer created = offerRepository.save(offer(2L, -1, 2));
+        running.setStatus(Offer.Status.CANCELLED);
+        running.setCancelDate(new Date());
+        offerRepository.save(running);
+        assertThat(checker.findRunning(1L, new Date())).isNotNull();
+        assertThat(checker.findRunning(2L, new Date())).isNull();
+
+        checker.reload();
+
+        assertThat(checker.findRunning(1L, new Date())).isNull();
+        assertThat(checker.findRunning(2L, new Date()).getId()).isEqualTo(created.getId());
+    }
+}
@@ -0,0 +1,85 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.ArchivedOfferRepository;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.ItemLocks;
+import uk.worldpay.offers.service.OfferCache;
+import uk.worldpay.offers.service.OfferConflictChecker;
+import uk.worldpay.offers.service.OfferServiceImpl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * The lookups of the offers in effect now are answered by the conflict checker, without reaching the repositories
+ */
+public class OfferActiveLookupTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final OfferRepository offerRepository = mock(OfferRepository.class);
+
+    private final ArchivedOfferRepository archivedOfferRepository = mock(ArchivedOfferRepository.class);
+
+    private final OfferConflictChecker conflictChecker = mock(OfferConflictChecker.class);
+
+    private final OfferServiceImpl service = new OfferServiceImpl(offerRepository, conflictChecker,
+            new OfferCache(100, Duration.ofMinutes(10)), new ItemLocks(16, Optional.empty()),
+            event -> { }, Optional.of(archivedOfferRepository));
+
+    private static Offer running(long id, long itemId) {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(itemId);
+        offer.setPrice(1.5);
+        offer.setStartDate(new Date(System.currentTimeMillis() - DAY));
+        offer.setEndDate(new Date(System.currentTimeMillis() + DAY));
+        offer.setVersion(0L);
+        return offer;
+    }
+
+    @Test
+    public void whenFindActiveNow_thenAnsweredByIndexWithACopy() {
+        Offer indexed = running(1L, 10L);
+        given(conflictChecker.findRunning(eq(10L), any(Date.class))).willReturn(indexed);
+
+        Offer found = service.findActive(10L, null);
+
+        assertThat(found.getId()).isEqualTo(1L);
+        assertThat(found.getStatus()).isEqualTo(Offer.Status.ACTIVE);
+        assertThat(found).isNotSameAs(indexed);
+        assertThat(indexed.getStatus()).isEqualTo(Offer.Status.CREATED);
+        verifyZeroInteractions(offerRepository, archivedOfferRepository);
+    }
+
+    @Test
+    public void whenFindActiveForItemsNow_thenAnsweredByIndexWithCopies() {
+        Offer indexed = running(2L, 20L);
+        given(conflictChecker.findRunning(anyCollection(), any(Date.class)))
+                .willReturn(new HashMap<>(Collections.singletonMap(20L, indexed)));
+
+        Map<Long, Offer> found = service.findActive(Arrays.asList(20L, 21L), null);
+
+        assertThat(found).containsOnlyKeys(20L);
+        assertThat(found.get(20L).getStatus()).isEqualTo(Offer.Status.ACTIVE);
+        assertThat(found.get(20L)).isNotSameAs(indexed);
+        assertThat(indexed.getStatus()).isEqualTo(Offer.Status.CREATED);
+        verifyZeroInteractions(offerRepository, archivedOfferRepository);
+    }
+}
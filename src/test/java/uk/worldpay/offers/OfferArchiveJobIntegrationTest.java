@@ -0,0 +1,103 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.repository.ArchivedOfferRepository;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.OfferArchiveJob;
+import uk.worldpay.offers.service.OfferService;
+import uk.worldpay.offers.service.OfferStatusTransitionJob;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class OfferArchiveJobIntegrationTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Autowired
+    private OfferService offerService;
+
+    @Autowired
+    private OfferStatusTransitionJob transitionJob;
+
+    @Autowired
+    private OfferArchiveJob archiveJob;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    @Autowired
+    private ArchivedOfferRepository archivedOfferRepository;
+
+    private Offer getOffer(long itemId, int startDay, int endDay) {
+        long now = System.currentTimeMillis();
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setDescription("Last units opportunity. Half Price!!!");
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(now + startDay * DAY));
+        offer.setEndDate(new Date(now + endDay * DAY));
+        return offer;
+    }
+
+    @Test
+    public void whenArchive_thenMovesTerminalOffersOutOfTheOfferTable() {
+        Offer expired = offerService.create(getOffer(800L, -5, -3));
+        Offer cancelled = offerService.create(getOffer(800L, 1, 2));
+        Offer running = offerService.create(getOffer(800L, 3, 4));
+        offerService.cancel(cancelled.getId());
+        transitionJob.transition();
+
+        assertThat(archiveJob.archive(new Date(System.currentTimeMillis() + 1000))).isGreaterThanOrEqualTo(2);
+
+        assertThat(offerRepository.findById(expired.getId())).isEmpty();
+        assertThat(offerRepository.findById(cancelled.getId())).isEmpty();
+        assertThat(offerRepository.findById(running.getId())).isPresent();
+        assertThat(archivedOfferRepository.findById(cancelled.getId()).get().getArchiveDate()).isNotNull();
+
+        assertThat(offerService.findById(expired.getId()).getStatus()).isEqualTo(Offer.Status.EXPIRED);
+        assertThat(offerService.findById(cancelled.getId()).getStatus()).isEqualTo(Offer.Status.CANCELLED);
+        assertThat(offerService.findHistory(800L)).extracting(Offer::getId)
+                .containsExactly(expired.getId(), cancelled.getId(), running.getId());
+        assertThat(offerService.findActive(800L, Instant.now().minus(4, ChronoUnit.DAYS)).getId())
+                .isEqualTo(expired.getId());
+    }
+
+    @Test
+    public void whenTimeline_thenMergesArchivedAndCurrentOffersByStartDate() {
+        Offer old = offerService.create(getOffer(810L, -20, -15));
+        Offer expired = offerService.create(getOffer(810L, -10, -8));
+        Offer running = offerService.create(getOffer(810L, 3, 4));
+        Offer cancelled = offerService.create(getOffer(810L, 5, 6));
+        Offer later = offerService.create(getOffer(810L, 7, 8));
+        Offer beyond = offerService.create(getOffer(810L, 20, 21));
+        offerService.cancel(cancelled.getId());
+        transitionJob.transition();
+        archiveJob.archive(new Date(System.currentTimeMillis() + 1000));
+        assertThat(offerRepository.findById(expired.getId())).isEmpty();
+
+        List<Offer> timeline = new ArrayList<>();
+        Instant now = Instant.now();
+        offerService.forEachOfferOfItem(810L, now.minus(9, ChronoUnit.DAYS), now.plus(7, ChronoUnit.DAYS),
+                timeline::add);
+
+        assertThat(timeline).extracting(Offer::getId)
+                .containsExactly(expired.getId(), running.getId(), cancelled.getId(), later.getId())
+                .doesNotContain(old.getId(), beyond.getId());
+        assertThat(timeline).extracting(Offer::getStatus).containsExactly(Offer.Status.EXPIRED,
+                Offer.Status.CREATED, Offer.Status.CANCELLED, Offer.Status.CREATED);
+    }
+}
@@ -0,0 +1,113 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.service.OfferCache;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OfferCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Function<Long, Offer> loader(long startInMillis) {
+        return id -> {
+            loads.incrementAndGet();
+            Offer offer = new Offer();
+            offer.setId(id);
+            offer.setItemId(1L);
+            offer.setStartDate(new Date(System.currentTimeMillis() + startInMillis));
+            offer.setEndDate(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(3)));
+            return offer;
+        };
+    }
+
+    @Test
+    public void whenCached_thenLoadsOnce() {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10));
+
+        cache.get(1L, loader(-1000));
+        cache.get(1L, loader(-1000));
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenReturnedOfferUpdated_thenCachedOfferUnchanged() {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10));
+
+        Offer offer = cache.get(1L, loader(-1000));
+        offer.setStatus(Offer.Status.CANCELLED);
+        offer.getEndDate().setTime(0);
+
+        assertThat(cache.get(1L, loader(-1000)).getStatus()).isEqualTo(Offer.Status.CREATED);
+        assertThat(cache.getIfPresent(1L).getEndDate().getTime()).isGreaterThan(System.currentTimeMillis());
+        assertThat(cache.getIfPresent(1L)).isNotSameAs(cache.getIfPresent(1L));
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenStatusChanges_thenEntryExpires() throws InterruptedException {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10));
+
+        cache.get(1L, loader(50));
+        Thread.sleep(100);
+        cache.get(1L, loader(50));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenEvicted_thenLoadsAgain() {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10));
+
+        cache.get(1L, loader(-1000));
+        cache.evict(1L);
+        cache.get(1L, loader(-1000));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenMissingIdCreated_thenNoLongerMissing() {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10), 100, Duration.ofMinutes(1));
+
+        cache.missing(1L, cache.generation());
+        cache.missing(2L, cache.generation());
+        cache.created(Collections.singletonList(1L));
+
+        assertThat(cache.isMissing(1L)).isFalse();
+        assertThat(cache.isMissing(2L)).isTrue();
+        assertThat(cache.isMissing(3L)).isFalse();
+    }
+
+    @Test
+    public void whenMissingTimeToLiveElapsed_thenNoLongerMissing() throws InterruptedException {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10), 100, Duration.ofMillis(50));
+
+        cache.missing(1L, cache.generation());
+        Thread.sleep(100);
+
+        assertThat(cache.isMissing(1L)).isFalse();
+    }
+
+    @Test
+    public void whenCreatedDuringMissingLookup_thenNotMissing() {
+        OfferCache cache = new OfferCache(100, Duration.ofMinutes(10), 100, Duration.ofMinutes(1));
+
+        long generation = cache.generation();
+        cache.created(Collections.singletonList(1L));
+        cache.missing(1L, generation);
+        cache.missing(2L, cache.generation());
+
+        assertThat(cache.isMissing(1L)).isFalse();
+        assertThat(cache.isMissing(2L)).isTrue();
+    }
+}
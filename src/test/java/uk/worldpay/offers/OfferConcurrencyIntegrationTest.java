@@ -0,0 +1,144 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.OfferService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.hikari.maximum-pool-size=" + OfferConcurrencyIntegrationTest.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=2000"})
+public class OfferConcurrencyIntegrationTest {
+
+    static final int POOL_SIZE = 4;
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long FIRST_ITEM = 5000L;
+    private static final int ITEMS = 3;
+    private static final int THREADS = 8;
+    private static final int ATTEMPTS = 40;
+    private static final long FIRST_NEW_ITEM = 6000L;
+    private static final int NEW_ITEM_THREADS = 4 * POOL_SIZE;
+
+    @Autowired
+    private OfferService offerService;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    private Offer getOffer(long itemId, Random random) {
+        long origin = System.currentTimeMillis() / DAY * DAY + DAY;
+        long start = random.nextInt(30);
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setDescription("Flash sale");
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(origin + start * DAY));
+        offer.setEndDate(new Date(origin + (start + 1 + random.nextInt(4)) * DAY));
+        return offer;
+    }
+
+    @Test
+    public void whenCreatingOverlappingOffersConcurrently_thenNoOverlappingOffersAreCommitted() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS; i++) {
+                    long itemId = FIRST_ITEM + random.nextInt(ITEMS);
+                    if (i % 4 == 0) {
+                        offerService.createAll(Arrays.asList(getOffer(itemId, random),
+                                getOffer(FIRST_ITEM + random.nextInt(ITEMS), random)))
+                                .forEach(result -> created.addAndGet(result.isCreated() ? 1 : 0));
+                    } else {
+                        try {
+                            offerService.create(getOffer(itemId, random));
+                            created.incrementAndGet();
+                        } catch (ExistingActiveOfferException e) {
+                            // expected for most of the attempts
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        List<Offer> committed = new ArrayList<>();
+        for (long itemId = FIRST_ITEM; itemId < FIRST_ITEM + ITEMS; itemId++) {
+            committed.addAll(offerRepository.findByItemIdAndStatus(itemId, Offer.Status.CREATED));
+        }
+        assertThat(created.get()).isPositive().isEqualTo(committed.size());
+
+        committed.sort(Comparator.comparing(Offer::getItemId).thenComparing(Offer::getStartDate));
+        for (int i = 1; i < committed.size(); i++) {
+            Offer previous = committed.get(i - 1);
+            Offer offer = committed.get(i);
+            if (previous.getItemId().equals(offer.getItemId())) {
+                assertThat(offer.getStartDate()).as("%s overlaps %s", offer, previous).isAfter(previous.getEndDate());
+            }
+        }
+    }
+
+    @Test
+    public void whenCreatingOffersForNewItemsOnMoreThreadsThanConnections_thenEveryOfferIsCreated() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(NEW_ITEM_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < NEW_ITEM_THREADS; t++) {
+            long itemId = FIRST_NEW_ITEM + 3 * t;
+            Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                offerService.create(getOffer(itemId, random));
+                created.incrementAndGet();
+                // new items locked with the items of the other threads, some of them already created
+                offerService.createAll(Arrays.asList(getOffer(itemId + 1, random), getOffer(itemId + 2, random),
+                        getOffer(itemId - 1, random)))
+                        .forEach(result -> created.addAndGet(result.isCreated() ? 1 : 0));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int committed = 0;
+        for (long itemId = FIRST_NEW_ITEM - 1; itemId < FIRST_NEW_ITEM + 3 * NEW_ITEM_THREADS; itemId++) {
+            committed += offerRepository.findByItemIdAndStatus(itemId, Offer.Status.CREATED).size();
+        }
+        assertThat(created.get()).isGreaterThanOrEqualTo(3 * NEW_ITEM_THREADS).isEqualTo(committed);
+    }
+}
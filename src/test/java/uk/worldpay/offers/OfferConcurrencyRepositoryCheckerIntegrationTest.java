@@ -0,0 +1,12 @@
+package uk.worldpay.offers;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the concurrency checks with the conflicts checked by the database instead of the in-memory index
+ */
+@TestPropertySource(properties = {
+        "offers.index.enabled=false",
+        "spring.datasource.url=jdbc:h2:mem:offers-repository-checker"})
+public class OfferConcurrencyRepositoryCheckerIntegrationTest extends OfferConcurrencyIntegrationTest {
+}
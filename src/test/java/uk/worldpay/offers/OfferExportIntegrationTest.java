@@ -0,0 +1,83 @@
+package uk.worldpay.offers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpMethod;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class OfferExportIntegrationTest {
+
+    private static final long FIRST_ID = 1_000_000_000L;
+    private static final int OFFERS = 200_000;
+    private static final long MAX_HEAP_GROWTH = 48L * 1024 * 1024;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    @Before
+    public void generateOffers() {
+        jdbcTemplate.update("INSERT INTO offer (id, item_id, description, price, creation_date, start_date, end_date, status) "
+                + "SELECT X, X, 'Generated offer ' || X, 10.10, NOW(), NOW(), DATEADD('DAY', 3, NOW()), 0 "
+                + "FROM SYSTEM_RANGE(?, ?)", FIRST_ID, FIRST_ID + OFFERS - 1);
+    }
+
+    @After
+    public void deleteOffers() {
+        jdbcTemplate.update("DELETE FROM offer WHERE id >= ?", FIRST_ID);
+    }
+
+    private long usedHeapAfterGc() {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Test
+    public void exportStreamsAllOffersWithBoundedHeap() {
+        long baseline = usedHeapAfterGc();
+        long[] peak = {baseline};
+
+        long exported = restTemplate.execute("http://localhost:" + port + "/api/v1/offers/export", HttpMethod.GET, null,
+                response -> {
+                    assertThat(response.getHeaders().getContentType().toString()).startsWith("application/x-ndjson");
+                    long lines = 0;
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.contains("\"description\":\"Generated offer") && ++lines % 25_000 == 0) {
+                                peak[0] = Math.max(peak[0], usedHeapAfterGc());
+                            }
+                        }
+                    }
+                    return lines;
+                });
+
+        assertThat(exported).isEqualTo(OFFERS);
+        assertThat(peak[0] - baseline).isLessThan(MAX_HEAP_GROWTH);
+    }
+}
@@ -0,0 +1,130 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.exceptions.IdempotencyKeyReusedException;
+import uk.worldpay.offers.exceptions.InvalidIdempotencyKeyException;
+import uk.worldpay.offers.repository.IdempotencyRecordRepository;
+import uk.worldpay.offers.service.OfferIdempotency;
+import uk.worldpay.offers.service.OfferService;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class OfferIdempotencyIntegrationTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @SpyBean
+    private OfferService offerService;
+
+    @Autowired
+    private OfferIdempotency idempotency;
+
+    @Autowired
+    private Optional<IdempotencyRecordRepository> repository;
+
+    @Autowired
+    private ObjectProvider<OfferService> offerServices;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final long now = System.currentTimeMillis();
+
+    private Offer getOffer(long itemId, int startDay, int endDay) {
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setDescription("Retried offer");
+        offer.setPrice(5.5);
+        offer.setStartDate(new Date(now + startDay * DAY));
+        offer.setEndDate(new Date(now + endDay * DAY));
+        return offer;
+    }
+
+    @Test
+    public void whenKeyRepeated_thenOfferCreatedOnceAndReplayed() {
+        OfferIdempotency.Creation first = idempotency.create("key-910", getOffer(910L, 1, 3));
+        OfferIdempotency.Creation retry = idempotency.create("key-910", getOffer(910L, 1, 3));
+
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getOffer().getId()).isEqualTo(first.getOffer().getId());
+        assertThat(offerService.findHistory(910L)).hasSize(1);
+        verify(offerService, times(1)).create(any(Offer.class));
+    }
+
+    @Test
+    public void whenFirstRejected_thenRetryRejectedWithoutCreating() {
+        offerService.create(getOffer(920L, 1, 3));
+
+        assertThatThrownBy(() -> idempotency.create("key-920", getOffer(920L, 2, 4)))
+                .isInstanceOf(ExistingActiveOfferException.class);
+        assertThatThrownBy(() -> idempotency.create("key-920", getOffer(920L, 2, 4)))
+                .isInstanceOf(ExistingActiveOfferException.class)
+                .hasMessage("There is already an active offer for item 920");
+        verify(offerService, times(2)).create(any(Offer.class));
+    }
+
+    @Test
+    public void whenKeyReusedForAnotherOffer_thenRejected() {
+        idempotency.create("key-930", getOffer(930L, 1, 3));
+
+        assertThatThrownBy(() -> idempotency.create("key-930", getOffer(930L, 4, 5)))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+        assertThatThrownBy(() -> idempotency.create("", getOffer(930L, 4, 5)))
+                .isInstanceOf(InvalidIdempotencyKeyException.class);
+        assertThat(offerService.findHistory(930L)).hasSize(1);
+    }
+
+    @Test
+    public void whenKeyReusedForOfferWithCollidingHashCodes_thenRejected() {
+        Offer first = getOffer(0L, 1, 3);
+        first.setDescription("Aa");
+        idempotency.create("key-935", first);
+
+        Offer other = getOffer(0x100000001L, 1, 3);
+        other.setDescription("BB");
+        assertThatThrownBy(() -> idempotency.create("key-935", other))
+                .isInstanceOf(IdempotencyKeyReusedException.class);
+    }
+
+    @Test
+    public void whenNotCached_thenReplayedFromDatabaseUntilPurged() {
+        assumeTrue(repository.isPresent());
+        Offer created = idempotency.create("key-940", getOffer(940L, 1, 3)).getOffer();
+
+        // another node, or this one after a restart
+        OfferIdempotency other = new OfferIdempotency(offerServices, repository, transactionManager, 100,
+                Duration.ofHours(1));
+        OfferIdempotency.Creation retry = other.create("key-940", getOffer(940L, 1, 3));
+
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getOffer().getId()).isEqualTo(created.getId());
+        verify(offerService, times(1)).create(any(Offer.class));
+
+        OfferIdempotency expired = new OfferIdempotency(offerServices, repository, transactionManager, 100,
+                Duration.ZERO);
+        assertThat(expired.purge()).isGreaterThanOrEqualTo(1);
+        assertThat(repository.get().findById("key-940")).isEmpty();
+    }
+}
@@ -0,0 +1,100 @@
+package uk.worldpay.offers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferImportReport;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.OfferImporter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class OfferImporterIntegrationTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private OfferImporter importer;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    private static String date(long millis) {
+        return Instant.ofEpochMilli(millis).toString();
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void whenImportCsv_thenValidOffersCreatedAndOthersReported() throws IOException {
+        long now = System.currentTimeMillis();
+        Path file = write("offers.csv", "itemId,description,price,startDate,endDate\r\n"
+                + "900,\"Summer, \"\"hot\"\" sale\",9.5," + date(now + DAY) + "," + date(now + 2 * DAY) + "\r\n"
+                + "900,overlapping,8," + date(now + DAY + 1000) + "," + date(now + 3 * DAY) + "\r\n"
+                + "901,,7," + (now + DAY) + "," + (now + 2 * DAY) + "\r\n"
+                + "902,bad price,cheap," + date(now + DAY) + "," + date(now + 2 * DAY) + "\r\n"
+                + "\r\n"
+                + "903,reversed,6," + date(now + 5 * DAY) + "," + date(now + 4 * DAY));
+
+        OfferImportReport report = importer.importOffers(file);
+
+        assertThat(report.getRows()).isEqualTo(5);
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(3);
+        assertThat(report.getRejections()).extracting(OfferImportReport.Rejection::getLine)
+                .containsExactlyInAnyOrder(3L, 5L, 7L);
+        assertThat(offerRepository.findByItemIdOrderById(900L)).extracting(Offer::getDescription)
+                .containsExactly("Summer, \"hot\" sale");
+        Offer offer = offerRepository.findByItemIdOrderById(901L).get(0);
+        assertThat(offer.getDescription()).isNull();
+        assertThat(offer.getPrice()).isEqualTo(7.0);
+        assertThat(offer.getStartDate().getTime()).isEqualTo(now + DAY);
+    }
+
+    @Test
+    public void whenImportNdjsonOfManyItems_thenOffersOfEachItemCreatedInOrder() throws IOException {
+        long now = System.currentTimeMillis();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            long start = now + (i / 10 + 1) * DAY;
+            content.append("{\"itemId\":").append(910 + i % 10)
+                    .append(",\"description\":\"offer ").append(i)
+                    .append("\",\"price\":1.5,\"startDate\":").append(start)
+                    .append(",\"endDate\":").append(start + DAY / 2).append("}\n");
+        }
+        content.append("{\"itemId\":910,\"price\":\n");
+        content.append("null\n");
+
+        OfferImportReport report = importer.importOffers(write("offers.ndjson", content.toString()));
+
+        assertThat(report.getRows()).isEqualTo(2002);
+        assertThat(report.getCreated()).isEqualTo(2000);
+        assertThat(report.getRejections()).extracting(OfferImportReport.Rejection::getLine)
+                .containsExactlyInAnyOrder(2001L, 2002L);
+        assertThat(report.getRejections()).extracting(OfferImportReport.Rejection::getReason)
+                .contains("The offer is missing");
+        assertThat(offerRepository.findByItemIdOrderById(915L)).hasSize(200)
+                .extracting(Offer::getDescription).startsWith("offer 5", "offer 15", "offer 25");
+    }
+}
@@ -0,0 +1,95 @@
+package uk.worldpay.offers;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.service.OfferIntervalIndex;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OfferIntervalIndexTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private OfferIntervalIndex index;
+    private Date now;
+
+    private Offer offer(long id, long itemId, int startDay, int endDay) {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(itemId);
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(now.getTime() + startDay * DAY));
+        offer.setEndDate(new Date(now.getTime() + endDay * DAY));
+        return offer;
+    }
+
+    @Before
+    public void setUp() {
+        now = new Date();
+        index = new OfferIntervalIndex();
+        index.add(offer(1L, 1L, 0, 3));
+        index.add(offer(2L, 1L, 10, 15));
+    }
+
+    @Test
+    public void whenPeriodOverlaps_thenConflicts() {
+        assertThat(index.conflicts(offer(3L, 1L, 2, 5), now)).isTrue();
+        assertThat(index.conflicts(offer(3L, 1L, 5, 10), now)).isTrue();
+        assertThat(index.conflicts(offer(3L, 1L, 11, 12), now)).isTrue();
+        assertThat(index.conflicts(offer(3L, 1L, -1, 20), now)).isTrue();
+    }
+
+    @Test
+    public void whenPeriodIsFree_thenDoesNotConflict() {
+        assertThat(index.conflicts(offer(3L, 1L, 4, 9), now)).isFalse();
+        assertThat(index.conflicts(offer(3L, 1L, 16, 20), now)).isFalse();
+        assertThat(index.conflicts(offer(3L, 2L, 0, 3), now)).isFalse();
+    }
+
+    @Test
+    public void whenFindAtDate_thenReturnsOfferWhosePeriodContainsIt() {
+        assertThat(index.find(1L, now).getId()).isEqualTo(1L);
+        assertThat(index.find(1L, new Date(now.getTime() + 12 * DAY)).getId()).isEqualTo(2L);
+        assertThat(index.find(1L, new Date(now.getTime() + 5 * DAY))).isNull();
+        assertThat(index.find(2L, now)).isNull();
+    }
+
+    @Test
+    public void whenOfferRemovedOrEnded_thenDoesNotConflict() {
+        index.remove(offer(2L, 1L, 10, 15));
+        assertThat(index.conflicts(offer(3L, 1L, 11, 12), now)).isFalse();
+
+        assertThat(index.removeEndedBefore(new Date(now.getTime() + 4 * DAY))).isEqualTo(1);
+        assertThat(index.conflicts(offer(3L, 1L, 1, 2), now)).isFalse();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    public void whenIndexedOffersOverlap_thenEveryEarlierOfferIsChecked() {
+        index.add(offer(3L, 1L, 20, 40));
+        index.add(offer(4L, 1L, 21, 22));
+
+        assertThat(index.conflicts(offer(5L, 1L, 30, 31), now)).isTrue();
+        assertThat(index.conflicts(offer(5L, 1L, 41, 42), now)).isFalse();
+        assertThat(index.find(1L, new Date(now.getTime() + 30 * DAY)).getId()).isEqualTo(3L);
+        assertThat(index.find(1L, new Date(now.getTime() + 21 * DAY)).getId()).isEqualTo(4L);
+    }
+
+    @Test
+    public void whenOffersStartAtTheSameDate_thenBothAreKept() {
+        index.replace(1L, Arrays.asList(offer(3L, 1L, 20, 30), offer(4L, 1L, 20, 21)));
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.conflicts(offer(5L, 1L, 25, 26), now)).isTrue();
+        assertThat(index.find(1L, new Date(now.getTime() + 25 * DAY)).getId()).isEqualTo(3L);
+
+        index.remove(offer(3L, 1L, 20, 30));
+        assertThat(index.conflicts(offer(5L, 1L, 25, 26), now)).isFalse();
+        assertThat(index.find(1L, new Date(now.getTime() + 20 * DAY)).getId()).isEqualTo(4L);
+    }
+}
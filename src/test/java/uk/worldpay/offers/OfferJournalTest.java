@@ -0,0 +1,142 @@
+package uk.worldpay.offers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.repository.InMemoryOfferRepository;
+import uk.worldpay.offers.repository.OfferJournal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OfferJournalTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OfferJournal journal;
+
+    private InMemoryOfferRepository open() throws IOException {
+        journal = new OfferJournal(folder.getRoot().toPath(), 0, 0);
+        return new InMemoryOfferRepository(Optional.of(journal));
+    }
+
+    private static Offer offer(long itemId, String description, long start) {
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setDescription(description);
+        offer.setPrice(9.99);
+        offer.setStartDate(new Date(start));
+        offer.setEndDate(new Date(start + DAY));
+        return offer;
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(path -> path.toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void whenReopened_thenOffersRestoredFromTheLog() throws IOException {
+        long now = System.currentTimeMillis();
+        InMemoryOfferRepository repository = open();
+        for (int i = 0; i < 100; i++) {
+            repository.save(offer(i % 3, i % 2 == 0 ? null : "offer é " + i, now + i * DAY));
+        }
+        repository.deleteById(1L);
+        Offer moved = repository.findById(2L).get();
+        moved.setItemId(50L);
+        repository.save(moved);
+        repository.updateStatusOfIds(Collections.singletonList(3L), Arrays.asList(Offer.Status.values()),
+                Offer.Status.ACTIVE);
+        OfferCancelQuery cancel = new OfferCancelQuery();
+        cancel.setItemId(1L);
+        int cancelled = repository.cancelAll(cancel, new Date(now), offers -> { });
+
+        // no snapshot: the offers are only in the log
+        InMemoryOfferRepository reopened = new InMemoryOfferRepository(
+                Optional.of(new OfferJournal(folder.getRoot().toPath(), 0, 0)));
+
+        assertThat(files(".snapshot")).isEmpty();
+        assertThat(reopened.count()).isEqualTo(99);
+        assertThat(reopened.findAll()).usingFieldByFieldElementComparator().isEqualTo(repository.findAll());
+        assertThat(reopened.findById(3L).get().getStatus()).isEqualTo(Offer.Status.ACTIVE);
+        assertThat(reopened.findByItemIdAndStatus(1L, Offer.Status.CANCELLED)).hasSize(cancelled);
+        assertThat(reopened.findByItemIdOrderById(50L)).extracting(Offer::getId).containsExactly(2L);
+        assertThat(reopened.save(offer(7, null, now)).getId()).isEqualTo(101L);
+    }
+
+    @Test
+    public void whenClosed_thenOffersRestoredFromTheSnapshotAndLaterLog() throws IOException {
+        long now = System.currentTimeMillis();
+        InMemoryOfferRepository repository = open();
+        for (int i = 0; i < 1000; i++) {
+            repository.save(offer(i % 10, "offer " + i, now + i * DAY));
+        }
+        repository.deleteById(1000L);
+        journal.close();
+        assertThat(files(".snapshot")).hasSize(1);
+
+        repository = open();
+        repository.save(offer(20, "after the snapshot", now));
+        repository.deleteById(1L);
+        journal.snapshot();
+        repository.save(offer(21, "after the second snapshot", now));
+        assertThat(files(".snapshot")).hasSize(1);
+        assertThat(files(".log")).hasSize(1);
+
+        InMemoryOfferRepository reopened = open();
+
+        assertThat(reopened.count()).isEqualTo(1000);
+        assertThat(reopened.findById(1L)).isEmpty();
+        assertThat(reopened.findById(1000L)).isEmpty();
+        assertThat(reopened.findById(1002L).get().getDescription()).isEqualTo("after the second snapshot");
+        assertThat(reopened.findAll()).usingFieldByFieldElementComparator().isEqualTo(repository.findAll());
+    }
+
+    @Test
+    public void whenLogEndsWithAnIncompleteEntry_thenEntriesBeforeItRestored() throws IOException {
+        long now = System.currentTimeMillis();
+        InMemoryOfferRepository repository = open();
+        for (int i = 0; i < 10; i++) {
+            repository.save(offer(1, "offer " + i, now + i * DAY));
+        }
+        Path log = files(".log").get(0);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        InMemoryOfferRepository reopened = open();
+
+        assertThat(reopened.count()).isEqualTo(9);
+        assertThat(reopened.findById(10L)).isEmpty();
+        assertThat(reopened.save(offer(1, null, now)).getId()).isEqualTo(10L);
+    }
+
+    @Test
+    public void whenDeletedAll_thenNothingRestored() throws IOException {
+        InMemoryOfferRepository repository = open();
+        repository.save(offer(1, null, System.currentTimeMillis()));
+        repository.deleteAll();
+
+        assertThat(open().count()).isZero();
+    }
+}
@@ -0,0 +1,47 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class OfferMetricsIntegrationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private String url(String path) {
+        return "http://localhost:" + port + path;
+    }
+
+    private String metric(String query) {
+        return restTemplate.getForObject(url("/actuator/metrics/" + query), String.class);
+    }
+
+    @Test
+    public void callsAreTimedAndErrorsCounted() {
+        restTemplate.getForObject(url("/api/v1/offers"), String.class);
+        assertThat(restTemplate.getForEntity(url("/api/v1/offers/-1"), String.class).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+
+        assertThat(metric("http.server.requests?tag=uri:/api/v1/offers")).contains("\"COUNT\"");
+        assertThat(metric("http.server.requests.percentile?tag=uri:/api/v1/offers&tag=phi:0.999")).contains("\"VALUE\"");
+        assertThat(metric("offers.service?tag=method:findPage")).contains("\"COUNT\"");
+        assertThat(metric("offers.service?tag=method:findById&tag=exception:OfferNotFoundException"))
+                .contains("\"COUNT\"");
+        assertThat(metric("offers.repository?tag=method:findPage")).contains("\"COUNT\"");
+        assertThat(metric("offers.db.statements?tag=uri:/api/v1/offers")).contains("\"COUNT\"");
+        assertThat(metric("offers.errors?tag=exception:OfferNotFoundException")).contains("\"COUNT\"");
+    }
+}
@@ -0,0 +1,195 @@
+package uk.worldpay.offers;
+
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferQuery;
+import uk.worldpay.offers.metrics.StatementCounter;
+import uk.worldpay.offers.repository.ArchivedOfferRepository;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.math.BigDecimal;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the plans of the statements Hibernate generates for the repository queries, as they are sent to the
+ * database: a change of a query, or of the SQL generated for it, that stops using the indexes fails the test.
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "uk.worldpay.offers.OfferQueryPlanIntegrationTest$RecordingStatementInspector")
+public class OfferQueryPlanIntegrationTest {
+
+    private static final List<Offer.Status> RUNNING = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+    /**
+     * StatementCounter also recording the SQL of the statements prepared by the current thread
+     */
+    public static class RecordingStatementInspector extends StatementCounter {
+
+        private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.get().add(sql);
+            return super.inspect(sql);
+        }
+    }
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    @Autowired
+    private ArchivedOfferRepository archivedOfferRepository;
+
+    /**
+     * @return the SQL of the last statement prepared by the call
+     */
+    private String sqlOf(Runnable call) {
+        entityManager.flush();
+        List<String> statements = RecordingStatementInspector.STATEMENTS.get();
+        statements.clear();
+        call.run();
+        assertThat(statements).isNotEmpty();
+        return statements.get(statements.size() - 1);
+    }
+
+    /**
+     * @return the plan of a statement, with a value of the type of each of its parameters
+     */
+    private String explain(String sql) {
+        return entityManager.getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                ParameterMetaData parameters = explain.getParameterMetaData();
+                for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                    explain.setObject(i, sample(parameters.getParameterType(i)));
+                }
+                try (ResultSet plan = explain.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1).toUpperCase();
+                }
+            }
+        });
+    }
+
+    private static Object sample(int type) {
+        switch (type) {
+            case Types.TIMESTAMP:
+            case Types.DATE:
+                return new Timestamp(System.currentTimeMillis());
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return BigDecimal.ONE;
+            case Types.VARCHAR:
+                return "1";
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @return the plan of the last statement prepared by the call
+     */
+    private String planOf(Runnable call) {
+        return explain(sqlOf(call));
+    }
+
+    @Test
+    public void conflictCheckUsesItemStatusStartIndex() {
+        Date now = new Date();
+        String plan = planOf(() -> offerRepository.existsOverlapping(1L, RUNNING, now, now, now));
+
+        assertThat(plan).contains("IDX_OFFER_ITEM_STATUS_START");
+    }
+
+    @Test
+    public void offersOfItemInStatusUseItemStatusStartIndex() {
+        String plan = planOf(() -> offerRepository.findByItemIdAndStatus(1L, Offer.Status.CREATED));
+
+        assertThat(plan).contains("IDX_OFFER_ITEM_STATUS_START");
+    }
+
+    @Test
+    public void runningOffersOfItemsUseItemStatusStartIndex() {
+        String plan = planOf(() -> offerRepository.findByItemIdInAndStatusIn(Arrays.asList(1L, 2L, 3L), RUNNING));
+
+        assertThat(plan).contains("IDX_OFFER_ITEM_STATUS_START");
+    }
+
+    @Test
+    public void expirySweepUsesStatusEndIndex() {
+        String plan = planOf(() -> offerRepository.updateStatusOfEnded(RUNNING, Offer.Status.EXPIRED, new Date()));
+
+        assertThat(plan).contains("IDX_OFFER_STATUS_END");
+    }
+
+    @Test
+    public void activationSweepUsesStatusEndIndex() {
+        String plan = planOf(() -> offerRepository.updateStatusOfStarted(
+                Arrays.asList(Offer.Status.CREATED), Offer.Status.ACTIVE, new Date()));
+
+        assertThat(plan).contains("IDX_OFFER_STATUS_END");
+    }
+
+    @Test
+    public void pageOfItemUsesItemStatusStartIndex() {
+        OfferQuery query = new OfferQuery();
+        query.setItemId(1L);
+        query.setAfter(10L);
+        String plan = planOf(() -> offerRepository.findPage(query, new Date(), OfferQuery.DEFAULT_SIZE));
+
+        assertThat(plan).contains("IDX_OFFER_ITEM_STATUS_START");
+    }
+
+    @Test
+    public void pageAfterCursorUsesPrimaryKey() {
+        OfferQuery query = new OfferQuery();
+        query.setAfter(10L);
+        String plan = planOf(() -> offerRepository.findPage(query, new Date(), OfferQuery.DEFAULT_SIZE));
+
+        assertThat(plan).contains("PRIMARY_KEY");
+    }
+
+    @Test
+    public void timelineOfItemUsesItemStatusStartIndex() {
+        Date now = new Date();
+        String plan = planOf(() -> {
+            try (Stream<Offer> offers = offerRepository.streamTimeline(1L, now, now)) {
+                offers.count();
+            }
+        });
+
+        assertThat(plan).contains("IDX_OFFER_ITEM_STATUS_START");
+    }
+
+    @Test
+    public void timelineOfArchivedItemUsesArchiveItemIndex() {
+        Date now = new Date();
+        String plan = planOf(() -> {
+            try (Stream<?> offers = archivedOfferRepository.streamTimeline(1L, now, now)) {
+                offers.count();
+            }
+        });
+
+        assertThat(plan).contains("IDX_OFFER_ARCHIVE_ITEM");
+    }
+}
@@ -0,0 +1,381 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.*;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferQuery;
+import uk.worldpay.offers.repository.OfferRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Tests run against every OfferRepository implementation, by the subclasses providing the repository.
+ * Each test runs in a transaction rolled back at its end when the subclass runs with Spring.
+ */
+@Transactional
+public abstract class OfferRepositoryContractTest {
+
+        protected OfferRepository offerRepository;
+
+        /**
+         * Stores an offer directly, bypassing the repository where possible
+         */
+        protected abstract void persist(Offer offer);
+
+        /**
+         * Writes the stored offers
+         */
+        protected abstract void flush();
+
+        private Offer getOffer1()  {
+            Date startDate = new Date();
+            Calendar c = Calendar.getInstance();
+            c.setTime(new Date());
+            c.add(Calendar.DATE,3);
+            Date endDate = c.getTime();
+
+            Offer offer = new Offer();
+            offer.setItemId(1L);
+            offer.setDescription("Last units opportunity. Half Price!!!");
+            offer.setPrice(10.10);
+            offer.setStartDate(startDate);
+            offer.setEndDate(endDate);
+
+            return offer;
+        }
+
+
+        private Offer getOffer2()  {
+            Date startDate = new Date();
+            Calendar c = Calendar.getInstance();
+            c.setTime(new Date());
+            c.add(Calendar.DATE,5);
+            Date endDate = c.getTime();
+
+            Offer offer = new Offer();
+            offer.setItemId(2L);
+            offer.setDescription("Last units opportunity. Half Price!!!");
+            offer.setPrice(199.95);
+            offer.setStartDate(startDate);
+            offer.setEndDate(endDate);
+            return offer;
+        }
+
+
+    @Test
+    public void whenFindById_thenReturnOffer() {
+        // given
+        Offer offer = this.getOffer1();
+        persist(offer);
+        flush();
+
+        // when
+        Optional<Offer> found = offerRepository.findById(offer.getId());
+        // then
+        assertThat(found.get().getId())
+                .isEqualTo(offer.getId());
+    }
+
+
+    @Test
+    public void whenFindByItemIdAndStatus_thenReturnOffer() {
+        // given
+        Offer offer = this.getOffer1();
+        persist(offer);
+        flush();
+
+        // when
+        List<Offer> results = offerRepository.findByItemIdAndStatus(offer.getItemId(),offer.getStatus());
+        Offer found = results.get(0);
+        // then
+        assertThat(offer)
+                .isEqualTo(found);
+    }
+
+    @Test
+    public void whenFindAll_thenReturnOffers() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        flush();
+
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        flush();
+        //when
+
+        List<Offer> results = offerRepository.findAll();
+
+        //then
+        assertThat(results).containsExactlyInAnyOrder(offer1,offer2);
+
+    }
+
+    @Test
+    public void whenUpdateStatusOfEnded_thenExpiresRunningOffers() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        flush();
+
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DATE, 4);
+
+        // when
+        int updated = offerRepository.updateStatusOfEnded(
+                Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE), Offer.Status.EXPIRED, c.getTime());
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(offerRepository.findById(offer1.getId()).get().getStatus()).isEqualTo(Offer.Status.EXPIRED);
+        assertThat(offerRepository.findById(offer2.getId()).get().getStatus()).isEqualTo(Offer.Status.CREATED);
+        assertThat(offerRepository.findById(offer1.getId()).get().getVersion()).isEqualTo(1L);
+        assertThat(offerRepository.findById(offer2.getId()).get().getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void whenUpdateStatusOfStarted_thenActivatesCreatedOffers() {
+        // given
+        Offer offer = this.getOffer1();
+        persist(offer);
+        flush();
+
+        // when
+        int updated = offerRepository.updateStatusOfStarted(
+                Arrays.asList(Offer.Status.CREATED), Offer.Status.ACTIVE, new Date());
+
+        // then
+        assertThat(updated).isEqualTo(1);
+        assertThat(offerRepository.findById(offer.getId()).get().getStatus()).isEqualTo(Offer.Status.ACTIVE);
+        assertThat(offerRepository.findById(offer.getId()).get().getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void whenFindPage_thenReturnFilteredOffersAfterCursor() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        Offer offer3 = this.getOffer1();
+        persist(offer3);
+        flush();
+
+        OfferQuery query = new OfferQuery();
+        query.setItemId(1L);
+        query.setStatus(Offer.Status.ACTIVE);
+
+        // when
+        List<Offer> firstPage = offerRepository.findPage(query, new Date(), 1);
+        query.setAfter(firstPage.get(0).getId());
+        List<Offer> secondPage = offerRepository.findPage(query, new Date(), 2);
+
+        // then
+        assertThat(firstPage).containsExactly(offer1);
+        assertThat(secondPage).containsExactly(offer3);
+    }
+
+    @Test
+    public void whenFindPageActiveAt_thenReturnOffersCancelledAfterThatDate() {
+        // given
+        long hour = 3600_000L;
+        long now = System.currentTimeMillis();
+        Offer running = this.getOffer1();
+        running.setStartDate(new Date(now - 48 * hour));
+        persist(running);
+        Offer cancelledAfter = this.getOffer1();
+        cancelledAfter.setStartDate(new Date(now - 48 * hour));
+        cancelledAfter.setStatus(Offer.Status.CANCELLED);
+        cancelledAfter.setCancelDate(new Date(now - hour));
+        persist(cancelledAfter);
+        Offer cancelledBefore = this.getOffer1();
+        cancelledBefore.setStartDate(new Date(now - 48 * hour));
+        cancelledBefore.setStatus(Offer.Status.CANCELLED);
+        cancelledBefore.setCancelDate(new Date(now - 36 * hour));
+        persist(cancelledBefore);
+        flush();
+
+        OfferQuery query = new OfferQuery();
+        query.setActiveAt(new Date(now - 24 * hour));
+
+        // when
+        List<Offer> page = offerRepository.findPage(query, new Date(now), 10);
+
+        // then
+        assertThat(page).containsExactly(running, cancelledAfter);
+    }
+
+    @Test
+    public void whenExistsOverlapping_thenDetectsRunningOffersOfTheItem() {
+        // given
+        Offer offer = this.getOffer1();
+        persist(offer);
+        flush();
+
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DATE, 4);
+        Date afterOffer = c.getTime();
+        c.add(Calendar.DATE, 2);
+        Date end = c.getTime();
+        List<Offer.Status> running = Arrays.asList(Offer.Status.CREATED, Offer.Status.ACTIVE);
+
+        // then
+        assertThat(offerRepository.existsOverlapping(1L, running, new Date(), end, new Date())).isTrue();
+        assertThat(offerRepository.existsOverlapping(1L, running, afterOffer, end, new Date())).isFalse();
+        assertThat(offerRepository.existsOverlapping(2L, running, new Date(), end, new Date())).isFalse();
+    }
+
+    @Test
+    public void whenCancelAll_thenCancelsRunningOffersMatchingTheFilters() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        Offer ended = this.getOffer1();
+        ended.setStartDate(new Date(System.currentTimeMillis() - 2 * 24 * 3600 * 1000L));
+        ended.setEndDate(new Date(System.currentTimeMillis() - 24 * 3600 * 1000L));
+        persist(ended);
+        flush();
+
+        Calendar c = Calendar.getInstance();
+        c.add(Calendar.DATE, 4);
+        OfferCancelQuery byItem = new OfferCancelQuery();
+        byItem.setItemId(1L);
+        OfferCancelQuery endingBefore = new OfferCancelQuery();
+        endingBefore.setEndingBefore(c.getTime());
+        Date now = new Date();
+
+        // when
+        List<Offer> handed = new ArrayList<>();
+        int cancelled = offerRepository.cancelAll(byItem, now, handed::addAll);
+
+        // then
+        assertThat(cancelled).isEqualTo(1);
+        assertThat(handed).extracting(Offer::getId, Offer::getStatus, Offer::getVersion)
+                .containsExactly(tuple(offer1.getId(), Offer.Status.CANCELLED, 1L));
+        Offer cancelledOffer = offerRepository.findById(offer1.getId()).get();
+        assertThat(cancelledOffer.getStatus()).isEqualTo(Offer.Status.CANCELLED);
+        assertThat(cancelledOffer.getCancelDate().getTime()).isEqualTo(now.getTime());
+        assertThat(cancelledOffer.getVersion()).isEqualTo(1L);
+        assertThat(offerRepository.findById(ended.getId()).get().getStatus()).isEqualTo(Offer.Status.CREATED);
+
+        assertThat(offerRepository.cancelAll(endingBefore, new Date(), offers -> { })).isZero();
+        c.add(Calendar.DATE, 2);
+        endingBefore.setEndingBefore(c.getTime());
+        assertThat(offerRepository.cancelAll(endingBefore, new Date(), offers -> { })).isEqualTo(1);
+        assertThat(offerRepository.findById(offer2.getId()).get().getStatus()).isEqualTo(Offer.Status.CANCELLED);
+    }
+
+    @Test
+    public void whenStreamTimeline_thenReturnsOverlappingOffersOfTheItemByStartDate() {
+        // given
+        long day = 24 * 3600 * 1000L;
+        long now = System.currentTimeMillis();
+        Offer late = this.getOffer1();
+        late.setStartDate(new Date(now + 4 * day));
+        late.setEndDate(new Date(now + 6 * day));
+        persist(late);
+        Offer early = this.getOffer1();
+        early.setStartDate(new Date(now - 3 * day));
+        early.setEndDate(new Date(now - day));
+        early.setStatus(Offer.Status.EXPIRED);
+        persist(early);
+        Offer outside = this.getOffer1();
+        outside.setStartDate(new Date(now - 10 * day));
+        outside.setEndDate(new Date(now - 8 * day));
+        persist(outside);
+        persist(this.getOffer2());
+        flush();
+
+        // when
+        try (Stream<Offer> offers = offerRepository.streamTimeline(1L, new Date(now - 2 * day),
+                new Date(now + 5 * day))) {
+
+            // then
+            assertThat(offers.map(Offer::getId)).containsExactly(early.getId(), late.getId());
+        }
+    }
+
+    @Test
+    public void whenFindAllSorted_thenReturnOffersInOrderOfTheSort() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        Offer offer3 = this.getOffer1();
+        offer3.setPrice(50.0);
+        persist(offer3);
+        flush();
+
+        // when
+        List<Offer> sorted = offerRepository.findAll(Sort.by("itemId").and(Sort.by(Sort.Direction.DESC, "price")));
+        Page<Offer> firstPage = offerRepository.findAll(PageRequest.of(0, 2, Sort.Direction.DESC, "price"));
+        Page<Offer> secondPage = offerRepository.findAll(PageRequest.of(1, 2, Sort.Direction.DESC, "price"));
+
+        // then
+        assertThat(sorted).extracting(Offer::getId).containsExactly(offer3.getId(), offer1.getId(), offer2.getId());
+        assertThat(firstPage.getContent()).extracting(Offer::getId).containsExactly(offer2.getId(), offer3.getId());
+        assertThat(secondPage.getContent()).extracting(Offer::getId).containsExactly(offer1.getId());
+        assertThat(secondPage.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    public void whenFindByExample_thenReturnOffersMatchingTheProbe() {
+        // given
+        Offer offer1 = this.getOffer1();
+        persist(offer1);
+        Offer offer2 = this.getOffer2();
+        persist(offer2);
+        Offer offer3 = this.getOffer1();
+        offer3.setDescription("Spring sale");
+        persist(offer3);
+        flush();
+
+        Offer byItem = new Offer();
+        byItem.setCreationDate(null);
+        byItem.setStatus(null);
+        byItem.setItemId(1L);
+        Offer byDescription = new Offer();
+        byDescription.setCreationDate(null);
+        byDescription.setStatus(null);
+        byDescription.setDescription("half price");
+        ExampleMatcher containing = ExampleMatcher.matching()
+                .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING)
+                .withIgnoreCase();
+        Offer byItemOrPrice = new Offer();
+        byItemOrPrice.setCreationDate(null);
+        byItemOrPrice.setStatus(null);
+        byItemOrPrice.setItemId(2L);
+        byItemOrPrice.setPrice(10.10);
+
+        // then
+        assertThat(offerRepository.findAll(Example.of(byItem), Sort.by(Sort.Direction.DESC, "id")))
+                .extracting(Offer::getId).containsExactly(offer3.getId(), offer1.getId());
+        assertThat(offerRepository.findAll(Example.of(byDescription, containing)))
+                .extracting(Offer::getId).containsExactlyInAnyOrder(offer1.getId(), offer2.getId());
+        assertThat(offerRepository.count(Example.of(byItemOrPrice, ExampleMatcher.matchingAny()))).isEqualTo(3);
+        assertThat(offerRepository.findAll(Example.of(byItem), PageRequest.of(0, 1)).getTotalElements()).isEqualTo(2);
+        byItem.setItemId(2L);
+        assertThat(offerRepository.findOne(Example.of(byItem)).map(Offer::getId)).contains(offer2.getId());
+        byItem.setItemId(3L);
+        assertThat(offerRepository.exists(Example.of(byItem))).isFalse();
+    }
+
+}
@@ -0,0 +1,217 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferQuery;
+import uk.worldpay.offers.exceptions.ActiveOfferNotFoundException;
+import uk.worldpay.offers.exceptions.CancelNotAllowedException;
+import uk.worldpay.offers.exceptions.ExistingActiveOfferException;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
+import uk.worldpay.offers.exceptions.OfferNotFoundException;
+import uk.worldpay.offers.exceptions.OfferVersionMismatchException;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.OfferCache;
+import uk.worldpay.offers.service.OfferService;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class OfferServiceIntegrationTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Autowired
+    private OfferService offerService;
+
+    @Autowired
+    private OfferCache offerCache;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    // one instant per test, so that offers ending and starting on the same day touch without overlapping
+    private final long now = System.currentTimeMillis();
+
+    private Offer getOffer(long itemId, int startDay, int endDay) {
+        Offer offer = new Offer();
+        offer.setItemId(itemId);
+        offer.setDescription("Last units opportunity. Half Price!!!");
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(now + startDay * DAY));
+        offer.setEndDate(new Date(now + endDay * DAY));
+        return offer;
+    }
+
+    @Test
+    public void whenCreateOverlappingOffer_thenThrowsExistingActiveOffer() {
+        offerService.create(getOffer(100L, 1, 3));
+
+        assertThatThrownBy(() -> offerService.create(getOffer(100L, 2, 5)))
+                .isInstanceOf(ExistingActiveOfferException.class);
+        assertThat(offerService.create(getOffer(100L, 4, 5)).getId()).isNotNull();
+    }
+
+    @Test
+    public void whenOfferCreatedByAnotherNode_thenCreationChecksAgainstIt() {
+        // saved without going through this node's service and its index, as another node sharing the database would
+        offerRepository.save(getOffer(470L, 1, 3));
+        offerRepository.save(getOffer(471L, 1, 3));
+
+        assertThatThrownBy(() -> offerService.create(getOffer(470L, 2, 4)))
+                .isInstanceOf(ExistingActiveOfferException.class);
+        List<OfferCreationResult> results = offerService.createAll(Arrays.asList(getOffer(471L, 2, 4),
+                getOffer(471L, 4, 5)));
+        assertThat(results).extracting(OfferCreationResult::isCreated).containsExactly(false, true);
+        assertThat(offerService.findActive(470L, Instant.ofEpochMilli(now + 2 * DAY)).getItemId()).isEqualTo(470L);
+    }
+
+    @Test
+    public void whenCreateAll_thenRejectsOffersOverlappingStoredOrBatchOffers() {
+        offerService.create(getOffer(200L, 1, 3));
+
+        List<OfferCreationResult> results = offerService.createAll(Arrays.asList(
+                getOffer(200L, 2, 4),
+                getOffer(200L, 5, 6),
+                getOffer(200L, 6, 7),
+                getOffer(201L, 1, 3),
+                getOffer(201L, 3, 1)));
+
+        assertThat(results).extracting(OfferCreationResult::isCreated)
+                .containsExactly(false, true, false, true, false);
+        assertThat(results.get(1).getOffer().getId()).isNotNull();
+        assertThat(offerService.findById(results.get(3).getOffer().getId()).getItemId()).isEqualTo(201L);
+    }
+
+    @Test
+    public void whenCreateAllWithMissingOffer_thenRejectsItAtItsIndex() {
+        List<OfferCreationResult> results = offerService.createAll(Arrays.asList(getOffer(202L, 1, 3), null));
+
+        assertThat(results).extracting(OfferCreationResult::isCreated).containsExactly(true, false);
+        assertThat(results.get(1).getIndex()).isEqualTo(1);
+        assertThat(results.get(1).getError()).isEqualTo("The offer is missing");
+    }
+
+    @Test
+    public void whenFindActive_thenReturnsOfferInEffectAtInstant() {
+        Offer past = offerService.create(getOffer(300L, -5, -3));
+        Offer current = offerService.create(getOffer(300L, -1, 2));
+        Offer future = offerService.create(getOffer(300L, 4, 6));
+        Instant now = Instant.now();
+
+        assertThat(offerService.findActive(300L, now.minus(4, ChronoUnit.DAYS)).getId()).isEqualTo(past.getId());
+        assertThat(offerService.findActive(300L, now).getId()).isEqualTo(current.getId());
+        assertThat(offerService.findActive(300L, null).getId()).isEqualTo(current.getId());
+        assertThat(offerService.findActive(300L, now.plus(5, ChronoUnit.DAYS)).getId()).isEqualTo(future.getId());
+        assertThatThrownBy(() -> offerService.findActive(300L, now.plus(3, ChronoUnit.DAYS)))
+                .isInstanceOf(ActiveOfferNotFoundException.class);
+
+        offerService.cancel(future.getId());
+        assertThatThrownBy(() -> offerService.findActive(300L, now.plus(5, ChronoUnit.DAYS)))
+                .isInstanceOf(ActiveOfferNotFoundException.class);
+    }
+
+    @Test
+    public void whenFindActiveForItems_thenReturnsOfferInEffectOfEachItem() {
+        Offer first = offerService.create(getOffer(400L, -1, 2));
+        Offer second = offerService.create(getOffer(401L, -5, -3));
+        offerService.create(getOffer(402L, 4, 6));
+        Instant now = Instant.now();
+
+        Map<Long, Offer> current = offerService.findActive(Arrays.asList(400L, 401L, 402L, 403L), now);
+        assertThat(current).containsOnlyKeys(400L);
+        assertThat(current.get(400L).getId()).isEqualTo(first.getId());
+        assertThat(offerService.findActive(Arrays.asList(400L, 401L, 402L, 403L), null)).containsOnlyKeys(400L);
+
+        Map<Long, Offer> past = offerService.findActive(Arrays.asList(400L, 401L, 402L), now.minus(4, ChronoUnit.DAYS));
+        assertThat(past).containsOnlyKeys(401L);
+        assertThat(past.get(401L).getId()).isEqualTo(second.getId());
+    }
+
+    @Test
+    public void whenCancelFromStaleVersion_thenThrowsVersionMismatch() {
+        Offer offer = offerService.create(getOffer(500L, 1, 3));
+        assertThat(offer.getVersion()).isEqualTo(0L);
+
+        assertThatThrownBy(() -> offerService.cancel(offer.getId(), Collections.singleton(1L)))
+                .isInstanceOf(OfferVersionMismatchException.class);
+        offerService.cancel(offer.getId(), Arrays.asList(0L, 2L));
+
+        Offer cancelled = offerService.findById(offer.getId());
+        assertThat(cancelled.getStatus()).isEqualTo(Offer.Status.CANCELLED);
+        assertThat(cancelled.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    public void whenCancelAllOfItem_thenCancelsRunningOffersAndFreesTheirPeriods() {
+        Offer first = offerService.create(getOffer(700L, -1, 2));
+        Offer second = offerService.create(getOffer(700L, 3, 5));
+        offerService.findById(first.getId());
+        OfferCancelQuery query = new OfferCancelQuery();
+        query.setItemId(700L);
+
+        assertThat(offerService.cancelAll(query)).isEqualTo(2);
+
+        assertThat(offerService.findById(first.getId()).getStatus()).isEqualTo(Offer.Status.CANCELLED);
+        assertThat(offerService.findById(second.getId()).getStatus()).isEqualTo(Offer.Status.CANCELLED);
+        assertThat(offerService.create(getOffer(700L, 1, 4)).getId()).isNotNull();
+        assertThat(offerService.cancelAll(query)).isEqualTo(1);
+        assertThatThrownBy(() -> offerService.cancelAll(new OfferCancelQuery()))
+                .isInstanceOf(InvalidOfferRequestException.class);
+    }
+
+    @Test
+    public void whenFindPageAfterAndBeforeCursors_thenRejectsTheQuery() {
+        OfferQuery query = new OfferQuery();
+        query.setAfter(1L);
+        query.setBefore(10L);
+
+        assertThatThrownBy(() -> offerService.findPage(query))
+                .isInstanceOf(InvalidOfferRequestException.class);
+    }
+
+    @Test
+    public void whenUnknownIdLookedUp_thenMissingUntilAnOfferIsCreatedWithIt() {
+        Offer first = offerService.create(getOffer(450L, 1, 2));
+        Long next = first.getId() + 1;
+
+        assertThatThrownBy(() -> offerService.findById(next)).isInstanceOf(OfferNotFoundException.class);
+        assertThat(offerCache.isMissing(next)).isTrue();
+        assertThatThrownBy(() -> offerService.cancel(next)).isInstanceOf(OfferNotFoundException.class);
+
+        Offer second = offerService.create(getOffer(450L, 3, 4));
+
+        assertThat(second.getId()).isEqualTo(next);
+        assertThat(offerCache.isMissing(next)).isFalse();
+        assertThat(offerService.findById(next).getItemId()).isEqualTo(450L);
+    }
+
+    @Test
+    public void whenCancelledOfferCancelledAgain_thenNotAllowed() {
+        Offer offer = offerService.create(getOffer(460L, 1, 2));
+        offerService.cancel(offer.getId());
+        assertThat(offerService.findById(offer.getId()).getStatus()).isEqualTo(Offer.Status.CANCELLED);
+
+        assertThatThrownBy(() -> offerService.cancel(offer.getId()))
+                .isInstanceOf(CancelNotAllowedException.class)
+                .hasMessage("Cancellation is not allowed for offer " + offer.getId() + " with status "
+                        + Offer.Status.CANCELLED.getTextualStatus())
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferEvent;
+import uk.worldpay.offers.repository.OfferRepository;
+import uk.worldpay.offers.service.OfferService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class OfferTransitionSchedulerIntegrationTest {
+
+    @TestConfiguration
+    static class EventsConfiguration {
+
+        @Bean
+        PublishedEvents publishedEvents() {
+            return new PublishedEvents();
+        }
+    }
+
+    static class PublishedEvents {
+
+        final List<OfferEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        public void on(OfferEvent event) {
+            events.add(event);
+        }
+    }
+
+    @Autowired
+    private PublishedEvents publishedEvents;
+
+    @Autowired
+    private OfferService offerService;
+
+    @Autowired
+    private OfferRepository offerRepository;
+
+    private Offer.Status awaitStoredStatus(Long id, Offer.Status status, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Offer.Status stored = offerRepository.findById(id).get().getStatus();
+        while (stored != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            stored = offerRepository.findById(id).get().getStatus();
+        }
+        return stored;
+    }
+
+    @Test
+    public void whenOfferStartsAndEnds_thenStoredStatusFollowsOnTime() throws Exception {
+        long now = System.currentTimeMillis();
+        Offer offer = new Offer();
+        offer.setItemId(600L);
+        offer.setDescription("Flash sale");
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date(now + 1_500));
+        offer.setEndDate(new Date(now + 3_000));
+        Long id = offerService.create(offer).getId();
+
+        assertThat(offerRepository.findById(id).get().getStatus()).isEqualTo(Offer.Status.CREATED);
+        assertThat(awaitStoredStatus(id, Offer.Status.ACTIVE, TimeUnit.SECONDS.toMillis(5)))
+                .isEqualTo(Offer.Status.ACTIVE);
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + 1_500);
+        assertThat(awaitStoredStatus(id, Offer.Status.EXPIRED, TimeUnit.SECONDS.toMillis(5)))
+                .isEqualTo(Offer.Status.EXPIRED);
+        assertThat(System.currentTimeMillis()).isGreaterThan(now + 3_000);
+
+        Offer expired = offerRepository.findById(id).get();
+        assertThat(publishedEvents.events).filteredOn(event -> event.getOffer().getId().equals(id))
+                .extracting(event -> event.getType(), event -> event.getOffer().getVersion())
+                .containsExactly(tuple(OfferEvent.Type.CREATED, expired.getVersion() - 2),
+                        tuple(OfferEvent.Type.ACTIVATED, expired.getVersion() - 1),
+                        tuple(OfferEvent.Type.EXPIRED, expired.getVersion()));
+    }
+}
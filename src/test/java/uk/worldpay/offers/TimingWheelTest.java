@@ -0,0 +1,69 @@
+package uk.worldpay.offers;
+
+import org.junit.Test;
+import uk.worldpay.offers.service.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    @Test
+    public void whenAdvancing_thenValuesFireAtTheirDeadlineAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(1_000L);
+        long[] deadlines = {1_001L, 1_063L, 1_064L, 1_000L + 4_097L, 1_000L + 300_000L, 999L};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+
+        List<Long> fired = new ArrayList<>();
+        assertThat(wheel.advance(1_000L, fired::add)).isEqualTo(1);
+        assertThat(fired).containsExactly(999L);
+        for (long tick = 1_001L; tick <= 1_000L + 300_000L; tick++) {
+            long now = tick;
+            wheel.advance(tick, value -> {
+                assertThat(value).isEqualTo(now);
+                fired.add(value);
+            });
+        }
+        assertThat(fired).containsExactly(999L, 1_001L, 1_063L, 1_064L, 1_000L + 4_097L, 1_000L + 300_000L);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    public void whenSchedulingAMillionValues_thenEachFiresOnceInDeadlineOrder() {
+        int count = 1_000_000;
+        TimingWheel wheel = new TimingWheel(0L);
+        Random random = new Random(42L);
+        for (int i = 0; i < count; i++) {
+            wheel.schedule(1 + random.nextInt(200_000), i);
+        }
+        assertThat(wheel.size()).isEqualTo(count);
+
+        Random replay = new Random(42L);
+        int[] deadlines = new int[count];
+        for (int i = 0; i < count; i++) {
+            deadlines[i] = 1 + replay.nextInt(200_000);
+        }
+        boolean[] seen = new boolean[count];
+        int[] fired = new int[1];
+        int[] misplaced = new int[1];
+        for (long now = 1_000; now <= 200_000; now += 1_000) {
+            long from = now - 999;
+            long to = now;
+            fired[0] += wheel.advance(now, value -> {
+                int deadline = deadlines[(int) value];
+                if (seen[(int) value] || deadline < from || deadline > to) {
+                    misplaced[0]++;
+                }
+                seen[(int) value] = true;
+            });
+        }
+        assertThat(fired[0]).isEqualTo(count);
+        assertThat(misplaced[0]).isZero();
+        assertThat(wheel.size()).isZero();
+    }
+}
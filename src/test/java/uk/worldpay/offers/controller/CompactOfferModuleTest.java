@@ -0,0 +1,63 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.Test;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.hateoas.Resources;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.worldpay.offers.domain.CompactOffers;
+import uk.worldpay.offers.domain.Offer;
+
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that only the resources of offers are written as CompactOffers
+ */
+public class CompactOfferModuleTest {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.cbor()
+            .modulesToInstall(new CompactOfferModule(() -> "/api/v1/offers"))
+            .build();
+
+    private final ObjectMapper reader = new ObjectMapper(new CBORFactory());
+
+    @Test
+    public void resourceOfOfferIsWrittenAsCompactOffers() throws Exception {
+        Offer offer = new Offer();
+        offer.setId(7L);
+        offer.setItemId(3L);
+        offer.setPrice(1.5);
+        offer.setStartDate(new Date(0));
+        offer.setEndDate(new Date(1000));
+
+        byte[] body = mapper.writeValueAsBytes(new Resource<>(offer, new Link("/api/v1/offers/7")));
+
+        CompactOffers offers = reader.readValue(body, CompactOffers.class);
+        assertThat(offers.getLinks()).containsEntry("offer", "/api/v1/offers/{id}");
+        assertThat(offers.getOffers()).extracting(entry -> entry.toOffer().getId()).containsExactly(7L);
+    }
+
+    @Test
+    public void resourceOfAnotherTypeIsWrittenByDefault() throws Exception {
+        Resource<Text> resource = new Resource<>(new Text(), new Link("/texts/1"));
+
+        byte[] single = mapper.writeValueAsBytes(resource);
+        byte[] list = mapper.writeValueAsBytes(new Resources<>(Collections.singletonList(resource), new Link("/texts")));
+
+        assertThat(reader.readTree(single).path("name").asText()).isEqualTo("text");
+        JsonNode content = reader.readTree(list).path("content");
+        assertThat(content).hasSize(1);
+        assertThat(content.get(0).path("name").asText()).isEqualTo("text");
+    }
+
+    public static class Text {
+
+        public String name = "text";
+    }
+}
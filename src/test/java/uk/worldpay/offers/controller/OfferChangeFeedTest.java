@@ -0,0 +1,65 @@
+package uk.worldpay.offers.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that a subscriber that does not keep up is disconnected without blocking the publisher
+ */
+public class OfferChangeFeedTest {
+
+    /**
+     * the drain tasks, never run: the subscribers never receive anything
+     */
+    private final List<Runnable> stalled = new ArrayList<>();
+
+    private final OfferChangeFeed feed = new OfferChangeFeed(new ObjectMapper(), 16, 2, stalled::add);
+
+    private OfferEvent created() {
+        Offer offer = new Offer();
+        offer.setId(1L);
+        offer.setItemId(1L);
+        offer.setPrice(10.10);
+        return new OfferEvent(OfferEvent.Type.CREATED, offer);
+    }
+
+    @Test
+    public void slowSubscriberIsDisconnectedWhenItsBufferIsFull() {
+        feed.subscribe(null);
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+
+        // the queue holds the buffer plus one change
+        for (int i = 0; i < 3; i++) {
+            feed.onOfferEvent(created());
+        }
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+        assertThat(stalled).hasSize(1);
+
+        feed.onOfferEvent(created());
+        assertThat(feed.subscriberCount()).isZero();
+    }
+
+    @Test
+    public void missedChangesAreReplayedBeyondTheBuffer() {
+        for (int i = 0; i < 10; i++) {
+            feed.onOfferEvent(created());
+        }
+
+        // the 9 missed changes are queued on top of the buffer plus one change
+        feed.subscribe(1L);
+        for (int i = 0; i < 3; i++) {
+            feed.onOfferEvent(created());
+        }
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+
+        feed.onOfferEvent(created());
+        assertThat(feed.subscriberCount()).isZero();
+    }
+}
@@ -0,0 +1,93 @@
+package uk.worldpay.offers.controller;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import uk.worldpay.offers.domain.Offer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
+/**
+ * Compares the links expanded by OfferResourceAssembler with the links built by ControllerLinkBuilder
+ */
+public class OfferResourceAssemblerTest {
+
+    private final OfferResourceAssembler assembler = new OfferResourceAssembler();
+
+    private Offer getOffer(long id, Offer.Status status) {
+        Offer offer = new Offer();
+        offer.setId(id);
+        offer.setItemId(1L);
+        offer.setPrice(10.10);
+        offer.setStartDate(new Date());
+        offer.setEndDate(new Date());
+        offer.setStatus(status);
+        return offer;
+    }
+
+    /**
+     * the links as built before templates were introduced, one ControllerLinkBuilder invocation per link
+     */
+    private List<Link> linkBuilderLinks(Offer offer) {
+        List<Link> links = new ArrayList<>();
+        links.add(linkTo(methodOn(OfferController.class).getOffer(offer.getId(), null, null)).withSelfRel());
+        links.add(linkTo(OfferController.class).slash("offers").withRel("offers"));
+        if (offer.getStatus() == Offer.Status.ACTIVE || offer.getStatus() == Offer.Status.CREATED) {
+            links.add(linkTo(methodOn(OfferController.class).cancel(offer.getId(), null)).withRel("cancel"));
+        }
+        return links;
+    }
+
+    private void assertSameLinks() {
+        for (Offer.Status status : Offer.Status.values()) {
+            for (long id : new long[]{1L, 42L, Long.MAX_VALUE}) {
+                Offer offer = getOffer(id, status);
+                Resource<Offer> resource = assembler.toResource(offer);
+
+                assertThat(resource.getContent()).isSameAs(offer);
+                assertThat(resource.getLinks()).containsExactlyElementsOf(linkBuilderLinks(offer));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void whenNoRequest_thenSameLinksAsLinkBuilder() {
+        assertSameLinks();
+    }
+
+    @Test
+    public void whenRequest_thenSameLinksAsLinkBuilder() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/offers");
+        request.setServerName("offers.example.com");
+        request.setServerPort(8080);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        assertSameLinks();
+    }
+
+    @Test
+    public void whenForwardedRequest_thenSameLinksAsLinkBuilder() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/offers");
+        request.addHeader("X-Forwarded-Proto", "https");
+        request.addHeader("X-Forwarded-Host", "api.example.com");
+        request.addHeader("X-Forwarded-Port", "443");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        assertSameLinks();
+    }
+}
@@ -1,48 +1,92 @@
 package uk.worldpay.offers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 import static org.hamcrest.Matchers.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import uk.worldpay.offers.controller.OfferController;
+import uk.worldpay.offers.domain.CompactOffers;
+import uk.worldpay.offers.domain.ItemPriceQuery;
 import uk.worldpay.offers.domain.Offer;
+import uk.worldpay.offers.domain.OfferCancelQuery;
+import uk.worldpay.offers.domain.OfferCreationResult;
+import uk.worldpay.offers.domain.OfferEvent;
+import uk.worldpay.offers.domain.OfferImportReport;
+import uk.worldpay.offers.domain.OfferPage;
+import uk.worldpay.offers.domain.OfferQuery;
+import uk.worldpay.offers.exceptions.ActiveOfferNotFoundException;
+import uk.worldpay.offers.exceptions.CancelNotAllowedException;
+import uk.worldpay.offers.exceptions.IdempotencyKeyReusedException;
+import uk.worldpay.offers.exceptions.InvalidOfferRequestException;
+import uk.worldpay.offers.exceptions.InvalidIdempotencyKeyException;
+import uk.worldpay.offers.exceptions.OfferNotFoundException;
+import uk.worldpay.offers.exceptions.OfferVersionMismatchException;
+import uk.worldpay.offers.service.OfferIdempotency;
+import uk.worldpay.offers.service.OfferImporter;
 import uk.worldpay.offers.service.OfferService;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @RunWith(SpringRunner.class)
-@WebMvcTest(OfferController.class)
+@WebMvcTest(controllers = OfferController.class,
+        includeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = ".*(ResourceAssembler|ChangeFeed)"))
 public class offersRestTest {
 
     @MockBean
     private OfferService offerService;
 
+    @MockBean
+    private OfferImporter offerImporter;
+
+    @MockBean
+    private OfferIdempotency offerIdempotency;
+
 
     @Autowired
     private MockMvc mockMvc;
 
     @Autowired private ObjectMapper mapper;
 
+    @Autowired private ApplicationEventPublisher events;
+
     private static String BASE_PATH = "http://localhost/api/v1";
     private static final long ID = 1L;
     private Offer offer;
@@ -63,6 +107,7 @@ public class offersRestTest {
         offer.setPrice(10.10);
         offer.setStartDate(startDate);
         offer.setEndDate(endDate);
+        offer.setVersion(3L);
     }
 
     @Test
@@ -101,7 +146,8 @@ public class offersRestTest {
 
         df.setTimeZone(TimeZone.getTimeZone("GMT"));
         setupOffer();
-        given(offerService.findAll()).willReturn(Arrays.asList(offer));
+        given(offerService.findPage(any(OfferQuery.class)))
+                .willReturn(new OfferPage(new OfferQuery(), Arrays.asList(offer), false, false));
         final ResultActions result = mockMvc.perform(get(BASE_PATH + "/offers"));
         result.andExpect(status().isOk());
         result
@@ -117,6 +163,182 @@ public class offersRestTest {
         ;
     }
 
+    @Test
+    public void getOffersPageReturnsKeysetLinks() throws Exception {
+
+        setupOffer();
+        OfferQuery query = new OfferQuery();
+        query.setItemId(1L);
+        query.setStatus(Offer.Status.CREATED);
+        query.setAfter(0L);
+        query.setSize(1);
+        given(offerService.findPage(query)).willReturn(new OfferPage(query, Arrays.asList(offer), true, true));
+
+        mockMvc.perform(get(BASE_PATH + "/offers?itemId=1&status=CREATED&after=0&size=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("_links.self.href", is(BASE_PATH + "/offers?itemId=1&status=CREATED&after=0&size=1")))
+                .andExpect(jsonPath("_links.next.href", is(BASE_PATH + "/offers?itemId=1&status=CREATED&after=" + ID + "&size=1")))
+                .andExpect(jsonPath("_links.prev.href", is(BASE_PATH + "/offers?itemId=1&status=CREATED&before=" + ID + "&size=1")))
+                .andExpect(jsonPath("_embedded.offerList[0].id", is(offer.getId().intValue())));
+    }
+
+    @Test
+    public void getOffersPageInCborReturnsCompactOffersAndLinkTemplates() throws Exception {
+
+        setupOffer();
+        OfferQuery query = new OfferQuery();
+        query.setAfter(0L);
+        query.setSize(1);
+        given(offerService.findPage(query)).willReturn(new OfferPage(query, Arrays.asList(offer), true, false));
+
+        byte[] body = mockMvc.perform(get(BASE_PATH + "/offers?after=0&size=1").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/cbor"))
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        CompactOffers offers = new ObjectMapper(new CBORFactory()).readValue(body, CompactOffers.class);
+        assertThat(offers.getLinks())
+                .containsEntry("offer", BASE_PATH + "/offers/{id}")
+                .containsEntry("cancel", BASE_PATH + "/offers/{id}/cancel")
+                .containsEntry("self", BASE_PATH + "/offers?after=0&size=1")
+                .containsEntry("next", BASE_PATH + "/offers?after=" + ID + "&size=1")
+                .doesNotContainKey("prev");
+        assertThat(offers.getOffers()).hasSize(1);
+        assertThat(offers.getOffers().get(0).toOffer()).isEqualTo(offer);
+    }
+
+    @Test
+    public void getOfferInSmileReturnsCompactOffer() throws Exception {
+
+        setupOffer();
+        given(offerService.findById(ID)).willReturn(offer);
+
+        byte[] body = mockMvc.perform(get(BASE_PATH + "/offers/" + ID).accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        CompactOffers offers = new ObjectMapper(new SmileFactory()).readValue(body, CompactOffers.class);
+        assertThat(offers.getLinks()).containsEntry("offer", BASE_PATH + "/offers/{id}");
+        assertThat(offers.getOffers()).extracting(CompactOffers.Entry::toOffer).containsExactly(offer);
+
+        // HAL JSON stays the default
+        mockMvc.perform(get(BASE_PATH + "/offers/" + ID).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/hal+json"))
+                .andExpect(jsonPath("_links.self.href", is(BASE_PATH + "/offers/" + ID)));
+    }
+
+    @Test
+    public void importOffersReturnsReport() throws Exception {
+        given(offerImporter.importOffers(any(), eq(OfferImporter.Format.CSV))).willReturn(new OfferImportReport(
+                2, 1, 1, 10, Collections.singletonList(new OfferImportReport.Rejection(3, "overlapping"))));
+
+        mockMvc.perform(post(BASE_PATH + "/offers/import").contentType("text/csv")
+                .content("itemId,price,startDate,endDate\n1,1.5,2019-05-19,2019-05-20\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("rows", is(2)))
+                .andExpect(jsonPath("created", is(1)))
+                .andExpect(jsonPath("rejected", is(1)))
+                .andExpect(jsonPath("offersPerSecond", is(200)))
+                .andExpect(jsonPath("rejections[0].line", is(3)))
+                .andExpect(jsonPath("rejections[0].reason", is("overlapping")));
+
+        mockMvc.perform(post(BASE_PATH + "/offers/import").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    public void exportOffersStreamsNewlineDelimitedJson() throws Exception {
+        setupOffer();
+        willAnswer(invocation -> {
+            Consumer<Offer> action = invocation.getArgument(0);
+            action.accept(offer);
+            action.accept(offer);
+            return null;
+        }).given(offerService).forEachOffer(any());
+
+        MvcResult started = mockMvc.perform(get(BASE_PATH + "/offers/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String line = mapper.writeValueAsString(offer);
+        assertThat(body).isEqualTo(line + "\n" + line + "\n");
+    }
+
+    @Test
+    public void getItemPriceReturnsOfferInEffect() throws Exception {
+        setupOffer();
+        Instant at = Instant.parse("2030-01-01T10:00:00Z");
+
+        given(offerService.findActive(1L, at)).willReturn(offer);
+        given(offerService.findActive(2L, at)).willThrow(new ActiveOfferNotFoundException(2L, at));
+
+        mockMvc.perform(get(BASE_PATH + "/items/1/price?at=" + at))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("id", is(offer.getId().intValue())))
+                .andExpect(jsonPath("price", is(offer.getPrice())))
+                .andExpect(jsonPath("_links.self.href", is(BASE_PATH + "/offers/" + offer.getId().intValue())));
+        mockMvc.perform(get(BASE_PATH + "/items/2/price?at=" + at))
+                .andExpect(status().isNotFound());
+
+        // without an instant, the current one is left to the service, which answers it from memory
+        given(offerService.findActive(1L, null)).willReturn(offer);
+        mockMvc.perform(get(BASE_PATH + "/items/1/price"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("id", is(offer.getId().intValue())));
+    }
+
+    @Test
+    public void errorsReturnStructuredBodies() throws Exception {
+        given(offerService.findById(2L)).willThrow(new OfferNotFoundException(2L));
+        willThrow(new CancelNotAllowedException(3L, Offer.Status.CANCELLED)).given(offerService).cancel(3L, null);
+        given(offerService.cancelAll(any(OfferCancelQuery.class)))
+                .willThrow(new InvalidOfferRequestException("A \"filter\" is required"));
+
+        mockMvc.perform(get(BASE_PATH + "/offers/2"))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("status", is(404)))
+                .andExpect(jsonPath("error", is("Not Found")))
+                .andExpect(jsonPath("message", is("Could not find offer 2")));
+        mockMvc.perform(delete(BASE_PATH + "/offers/3/cancel"))
+                .andExpect(status().isMethodNotAllowed())
+                .andExpect(jsonPath("status", is(405)))
+                .andExpect(jsonPath("message", is("Cancellation is not allowed for offer 3 with status "
+                        + Offer.Status.CANCELLED.getTextualStatus())));
+        mockMvc.perform(delete(BASE_PATH + "/offers/cancel"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("status", is(400)))
+                .andExpect(jsonPath("message", is("A \"filter\" is required")));
+    }
+
+    @Test
+    public void getBasketPricesReturnsOfferPerItem() throws Exception {
+        setupOffer();
+        ItemPriceQuery query = new ItemPriceQuery();
+        query.setItemIds(Arrays.asList(2L, 1L));
+
+        // without a date, the current instant is left to the service, which answers it from memory
+        given(offerService.findActive(eq(Arrays.asList(2L, 1L)), isNull()))
+                .willReturn(Collections.singletonMap(1L, offer));
+
+        mockMvc.perform(
+                post(BASE_PATH + "/items/prices")
+                        .content(mapper.writeValueAsBytes(query))
+                        .contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].itemId", is(2)))
+                .andExpect(jsonPath("[0].offer", nullValue()))
+                .andExpect(jsonPath("[1].itemId", is(1)))
+                .andExpect(jsonPath("[1].offer.id", is(offer.getId().intValue())))
+                .andExpect(jsonPath("[1].offer.price", is(offer.getPrice())));
+    }
+
     @Test
     public void createNewOfferReturnsCorrectResponse() throws Exception {
        df.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -142,6 +364,60 @@ public class offersRestTest {
         ;
     }
 
+    @Test
+    public void createNewOfferWithIdempotencyKeyReplaysFirstResult() throws Exception {
+        setupOffer();
+
+        given(offerIdempotency.create("retry-1", offer)).willReturn(new OfferIdempotency.Creation(offer, true));
+        given(offerIdempotency.create("retry-2", offer)).willThrow(new IdempotencyKeyReusedException("retry-2"));
+        given(offerIdempotency.create("", offer)).willThrow(new InvalidIdempotencyKeyException(255));
+
+        mockMvc.perform(
+                post(BASE_PATH + "/offers")
+                        .header("Idempotency-Key", "retry-1")
+                        .content(mapper.writeValueAsBytes(offer))
+                        .contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Location", endsWith(BASE_PATH + "/offers/" + offer.getId())))
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("id", is(offer.getId().intValue())));
+        mockMvc.perform(
+                post(BASE_PATH + "/offers")
+                        .header("Idempotency-Key", "retry-2")
+                        .content(mapper.writeValueAsBytes(offer))
+                        .contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("status", is(422)))
+                .andExpect(jsonPath("message", is("The idempotency key retry-2 has already been used for another offer")));
+        mockMvc.perform(
+                post(BASE_PATH + "/offers")
+                        .header("Idempotency-Key", "")
+                        .content(mapper.writeValueAsBytes(offer))
+                        .contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("The Idempotency-Key header must have 1 to 255 characters")));
+        verify(offerService, never()).create(any(Offer.class));
+    }
+
+    @Test
+    public void createOffersBatchReturnsResultPerOffer() throws Exception {
+        setupOffer();
+
+        given(offerService.createAll(Arrays.asList(offer, offer))).willReturn(Arrays.asList(
+                OfferCreationResult.created(0, offer),
+                OfferCreationResult.rejected(1, offer, "There is already an active offer for item 1")));
+
+        mockMvc.perform(
+                post(BASE_PATH + "/offers/batch")
+                        .content(mapper.writeValueAsBytes(Arrays.asList(offer, offer)))
+                        .contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].created", is(true)))
+                .andExpect(jsonPath("[0].offer.id", is(offer.getId().intValue())))
+                .andExpect(jsonPath("[1].created", is(false)))
+                .andExpect(jsonPath("[1].error", is("There is already an active offer for item 1")));
+    }
+
     @Test
     public void cancelOfferReturnsCorrectResponse() throws Exception {
         df.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -154,6 +430,199 @@ public class offersRestTest {
                 .andExpect(content().string(""));
     }
 
+    @Test
+    public void getOfferReturnsNotModifiedWhenETagMatches() throws Exception {
+        setupOffer();
+        given(offerService.findById(ID)).willReturn(offer);
+
+        String etag = mockMvc.perform(get(BASE_PATH + "/offers/" + ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3.c\""))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get(BASE_PATH + "/offers/" + ID).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(content().string(""));
+
+        offer.setStatus(Offer.Status.ACTIVE);
+        mockMvc.perform(get(BASE_PATH + "/offers/" + ID).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3.a\""));
+    }
+
+    @Test
+    public void getAllOffersReturnsNotModifiedWhenETagMatches() throws Exception {
+        setupOffer();
+        given(offerService.findPage(any(OfferQuery.class)))
+                .willReturn(new OfferPage(new OfferQuery(), Arrays.asList(offer), false, false));
+
+        String etag = mockMvc.perform(get(BASE_PATH + "/offers"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertThat(etag).isNotNull();
+
+        mockMvc.perform(get(BASE_PATH + "/offers").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        offer.setVersion(4L);
+        mockMvc.perform(get(BASE_PATH + "/offers").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(etag)));
+    }
 
+    @Test
+    public void cancelOfferWithStaleETagReturnsPreconditionFailed() throws Exception {
+        willThrow(new OfferVersionMismatchException(ID, 2L, 3L)).given(offerService)
+                .cancel(ID, Collections.singleton(2L));
+
+        mockMvc.perform(delete(BASE_PATH + "/offers/" + ID + "/cancel").header("If-Match", "\"2.c\""))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete(BASE_PATH + "/offers/" + ID + "/cancel").header("If-Match", "\"3.c\""))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    public void cancelOfferWithListOfETagsChecksEveryVersion() throws Exception {
+        mockMvc.perform(delete(BASE_PATH + "/offers/" + ID + "/cancel").header("If-Match", "\"2.c\", W/\"4.a\",\"3.a\""))
+                .andExpect(status().isNoContent());
+        verify(offerService).cancel(ID, new TreeSet<>(Arrays.asList(-1L, 2L, 3L)));
+
+        mockMvc.perform(delete(BASE_PATH + "/offers/" + ID + "/cancel").header("If-Match", "\"2.c\", *"))
+                .andExpect(status().isNoContent());
+        verify(offerService).cancel(ID, null);
+    }
+
+    @Test
+    public void getItemHistoryReturnsOffersOfItem() throws Exception {
+        setupOffer();
+        given(offerService.findHistory(1L)).willReturn(Arrays.asList(offer));
+
+        mockMvc.perform(get(BASE_PATH + "/items/1/history"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("_embedded.offerList[0].id", is(offer.getId().intValue())))
+                .andExpect(jsonPath("_embedded.offerList[0]._links.self.href", is(BASE_PATH + "/offers/" + ID)))
+                .andExpect(jsonPath("_links.self.href", is(BASE_PATH + "/items/1/history")));
+    }
+
+    @Test
+    public void getItemTimelineReturnsOffersOfItemInWindow() throws Exception {
+        setupOffer();
+        Instant from = Instant.parse("2030-01-01T00:00:00Z");
+        Instant to = Instant.parse("2030-02-01T00:00:00Z");
+        willAnswer(invocation -> {
+            invocation.<Consumer<Offer>>getArgument(3).accept(offer);
+            return null;
+        }).given(offerService).forEachOfferOfItem(eq(1L), eq(from), eq(to), any());
+
+        mockMvc.perform(get(BASE_PATH + "/items/1/offers?from=" + from + "&to=" + to))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("_embedded.offerList[0].id", is(offer.getId().intValue())))
+                .andExpect(jsonPath("_embedded.offerList[0]._links.self.href", is(BASE_PATH + "/offers/" + ID)))
+                .andExpect(jsonPath("_links.self.href", startsWith(BASE_PATH + "/items/1/offers?from=")));
+
+        MvcResult started = mockMvc.perform(get(BASE_PATH + "/items/1/offers?from=" + from + "&to=" + to)
+                .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(body).isEqualTo(mapper.writeValueAsString(offer) + "\n");
+    }
+
+    @Test
+    public void getItemTimelineWithTooManyOffersForOnePageReturnsBadRequest() throws Exception {
+        setupOffer();
+        willAnswer(invocation -> {
+            for (int i = 0; i <= OfferQuery.MAX_SIZE; i++) {
+                invocation.<Consumer<Offer>>getArgument(3).accept(offer);
+            }
+            return null;
+        }).given(offerService).forEachOfferOfItem(eq(1L), any(), any(), any());
+
+        mockMvc.perform(get(BASE_PATH + "/items/1/offers?from=2030-01-01T00:00:00Z&to=2030-02-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getItemTimelineWithReversedWindowReturnsBadRequest() throws Exception {
+        mockMvc.perform(get(BASE_PATH + "/items/1/offers?from=2030-02-01T00:00:00Z&to=2030-01-01T00:00:00Z")
+                .accept("application/x-ndjson"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get(BASE_PATH + "/items/1/offers?from=2030-02-01T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+        verify(offerService, never()).forEachOfferOfItem(any(), any(), any(), any());
+    }
+
+    @Test
+    public void cancelOffersOfItemReturnsCancelledCount() throws Exception {
+        given(offerService.cancelAll(any(OfferCancelQuery.class))).willAnswer(invocation ->
+                invocation.<OfferCancelQuery>getArgument(0).getItemId() == 1L ? 3 : 0);
+
+        mockMvc.perform(delete(BASE_PATH + "/offers/cancel?itemId=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("cancelled", is(3)));
+    }
+
+    @Test
+    public void cancelOffersWithoutFilterReturnsBadRequest() throws Exception {
+        given(offerService.cancelAll(any(OfferCancelQuery.class))).willThrow(new InvalidOfferRequestException("no filter"));
+
+        mockMvc.perform(delete(BASE_PATH + "/offers/cancel"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void internalIllegalArgumentIsNotABadRequest() {
+        given(offerService.findById(4L)).willThrow(new IllegalArgumentException("internal"));
+
+        assertThatThrownBy(() -> mockMvc.perform(get(BASE_PATH + "/offers/4")))
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void offerChangesStreamsChangesAndResumesAfterLastEventId() throws Exception {
+        setupOffer();
+
+        MvcResult live = mockMvc.perform(get(BASE_PATH + "/offers/changes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        events.publishEvent(new OfferEvent(OfferEvent.Type.CREATED, offer));
+        events.publishEvent(new OfferEvent(OfferEvent.Type.CANCELLED, offer));
+
+        String stream = awaitContent(live, "event:cancelled");
+        assertThat(stream).contains("event:created", "\"itemId\":1");
+        String created = stream.substring(stream.indexOf("id:") + 3, stream.indexOf('\n', stream.indexOf("id:")));
+
+        MvcResult resumed = mockMvc.perform(get(BASE_PATH + "/offers/changes").header("Last-Event-ID", created))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(awaitContent(resumed, "event:cancelled"))
+                .doesNotContain("event:created")
+                .contains("id:" + (Long.parseLong(created) + 1),
+                        "data:{\"sequence\":" + (Long.parseLong(created) + 1) + ",\"type\":\"CANCELLED\"");
+    }
+
+    @Test
+    public void offerChangesSendsResetForUnknownSequence() throws Exception {
+        MvcResult result = mockMvc.perform(get(BASE_PATH + "/offers/changes?since=" + Long.MAX_VALUE / 2))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertThat(awaitContent(result, "event:reset")).contains("\"sequence\":");
+    }
+
+    private String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = result.getResponse().getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            content = result.getResponse().getContentAsString();
+        }
+        assertThat(content).contains(expected);
+        return content;
+    }
 
 }
\ No newline at end of file